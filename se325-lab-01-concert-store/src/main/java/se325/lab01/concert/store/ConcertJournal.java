@@ -0,0 +1,752 @@
+package se325.lab01.concert.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Durable record of changes to a collection of Concerts: an append-only journal of changes, plus periodic snapshots
+ * that bound how much of the journal must be replayed when the collection is restored.
+ * <p>
+ * Files are numbered by generation. snapshot-N.dat holds the Concerts as they were when journal-N.log was started,
+ * so the collection is restored by loading the latest snapshot and replaying journal-N.log, and any later journals,
+ * on top of it. Each journal record carries a checksum; a record left incomplete by a crash is discarded, along with
+ * anything after it. That can happen at the end of any journal, not just the last, since the committer may still be
+ * writing to a journal when appends move on to the next.
+ * <p>
+ * Records are group-committed: appending a record only buffers it, and a single committer thread writes and forces
+ * buffered records to disk in batches, so that concurrent sessions share the cost of each force. Callers that must
+ * not acknowledge a change until it's durable call awaitDurable() before responding.
+ * <p>
+ * Once snapshotInterval records have been appended, a snapshot is taken in the background without stopping changes.
+ * Each record sets a Concert's complete state, removes a Concert, or removes all Concerts, so replaying a change that
+ * a snapshot already reflects has no further effect. A snapshot therefore needn't be consistent with any single point
+ * in the journal; it need only have been started after its journal.
+ */
+class ConcertJournal<C> implements Closeable {
+    // Record types. PUT records, which lack the Concert's version, are only read, from journals written before
+    // Concerts had versions.
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+    private static final byte PUT_VERSIONED = 4;
+
+    // Each record is preceded by its length and checksum.
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    // Snapshots written before Concerts had versions start with UNVERSIONED_SNAPSHOT_MAGIC.
+    private static final int SNAPSHOT_MAGIC = 0x434E5332;
+    private static final int UNVERSIONED_SNAPSHOT_MAGIC = 0x434E5331;
+
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String JOURNAL_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+
+    /**
+     * The collection of Concerts that a ConcertJournal records changes to. The restore methods are called only while
+     * the journal is being opened, before the collection is in use.
+     */
+    interface Store<C> {
+        void restorePut(C concert);
+
+        void restoreRemove(long id);
+
+        void restoreClear();
+
+        /**
+         * Returns the id that the next Concert created will be given.
+         */
+        long nextId();
+
+        /**
+         * Returns the stored Concerts. Iteration needn't be consistent with concurrent changes.
+         */
+        Iterable<C> concerts();
+    }
+
+    private final Path directory;
+    private final boolean syncWrites;
+    private final int snapshotInterval;
+    private final ConcertType<C> type;
+    private final Store<C> store;
+    private final long recoveredNextId;
+
+    // Number of records appended when each thread last appended one.
+    private final ThreadLocal<long[]> appendedByThread;
+
+    private final Thread committer;
+    private final ExecutorService snapshotter;
+
+    // Guards the fields below.
+    private final Object lock = new Object();
+
+    // Journal currently being appended to, and its generation.
+    private FileChannel channel;
+    private long generation;
+
+    // Records waiting to be written, and a spare buffer to swap in while they are.
+    private ByteArrayOutputStream pending;
+    private ByteArrayOutputStream spare;
+
+    // Scratch space for encoding a record.
+    private final ByteArrayOutputStream recordBuffer;
+    private final DataOutputStream recordOut;
+    private final CRC32 checksum;
+
+    // Number of records appended, and the number known to be on disk.
+    private long appended;
+    private long durable;
+
+    // Futures returned by whenDurable() that are waiting for their records to reach the disk.
+    private final Queue<DurabilityWaiter> waiters;
+
+    private long recordsSinceSnapshot;
+    private IOException failure;
+    private boolean closed;
+
+    private ConcertJournal(Path directory, boolean syncWrites, int snapshotInterval, ConcertType<C> type,
+                           Store<C> store, long generation, FileChannel channel, long recoveredNextId) {
+        this.directory = directory;
+        this.syncWrites = syncWrites;
+        this.snapshotInterval = snapshotInterval;
+        this.type = type;
+        this.store = store;
+        this.generation = generation;
+        this.channel = channel;
+        this.recoveredNextId = recoveredNextId;
+
+        pending = new ByteArrayOutputStream(64 * 1024);
+        spare = new ByteArrayOutputStream(64 * 1024);
+        recordBuffer = new ByteArrayOutputStream(256);
+        recordOut = new DataOutputStream(recordBuffer);
+        checksum = new CRC32();
+        appendedByThread = ThreadLocal.withInitial(() -> new long[1]);
+        waiters = new ArrayDeque<>();
+
+        committer = new Thread(this::commit, "journal-committer");
+        committer.setDaemon(true);
+        committer.start();
+
+        snapshotter = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "journal-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the journal kept in a directory, first restoring the Concerts it records into a Store.
+     *
+     * @param syncWrites       whether awaitDurable() waits for appended records to reach the disk.
+     * @param snapshotInterval the number of records to append between snapshots.
+     * @throws IOException if the directory can't be read, or holds a damaged snapshot or journal.
+     */
+    static <C> ConcertJournal<C> open(Path directory, boolean syncWrites, int snapshotInterval, ConcertType<C> type,
+                                      Store<C> store) throws IOException {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("snapshotInterval must be positive");
+        }
+        Files.createDirectories(directory);
+
+        List<Long> snapshots = generations(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        long snapshotGeneration = snapshots.isEmpty() ? 1 : snapshots.get(snapshots.size() - 1);
+        long nextId = 1;
+        if (!snapshots.isEmpty()) {
+            nextId = readSnapshot(snapshotFile(directory, snapshotGeneration), type, store);
+        }
+
+        List<Long> journals = new ArrayList<>();
+        for (long journal : generations(directory, JOURNAL_PREFIX, JOURNAL_SUFFIX)) {
+            if (journal >= snapshotGeneration) {
+                journals.add(journal);
+            }
+        }
+        for (long journal : journals) {
+            long maxId = replay(journalFile(directory, journal), type, store);
+            nextId = Math.max(nextId, maxId + 1);
+        }
+
+        long generation = journals.isEmpty() ? snapshotGeneration : journals.get(journals.size() - 1);
+        FileChannel channel = openJournal(directory, generation);
+        return new ConcertJournal<>(directory, syncWrites, snapshotInterval, type, store, generation, channel,
+                nextId);
+    }
+
+    /**
+     * Returns the id to give the next Concert created, as recovered when the journal was opened.
+     */
+    long recoveredNextId() {
+        return recoveredNextId;
+    }
+
+    /**
+     * Records that a Concert has been stored, replacing any with the same id.
+     */
+    void logPut(C concert) {
+        synchronized (lock) {
+            try {
+                recordOut.writeByte(PUT_VERSIONED);
+                writeConcert(recordOut, type, concert);
+            } catch (IOException e) {
+                // Not thrown by a ByteArrayOutputStream.
+                throw new IllegalStateException(e);
+            }
+            append();
+        }
+    }
+
+    /**
+     * Records that the Concert with a given id has been removed.
+     */
+    void logRemove(long id) {
+        synchronized (lock) {
+            try {
+                recordOut.writeByte(REMOVE);
+                recordOut.writeLong(id);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            append();
+        }
+    }
+
+    /**
+     * Records that all Concerts have been removed.
+     */
+    void logClear() {
+        synchronized (lock) {
+            try {
+                recordOut.writeByte(CLEAR);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            append();
+        }
+    }
+
+    /**
+     * Waits until every record appended so far by the calling thread is on disk. Returns immediately if the journal
+     * was opened without syncWrites.
+     *
+     * @throws IOException if the journal could not be written.
+     */
+    void awaitDurable() throws IOException {
+        if (!syncWrites) {
+            return;
+        }
+        awaitDurable(appendedByThread.get()[0]);
+    }
+
+    /**
+     * Waits until every record appended so far, by any thread, is on disk. Returns immediately if the journal was
+     * opened without syncWrites.
+     *
+     * @throws IOException if the journal could not be written.
+     */
+    void awaitAllDurable() throws IOException {
+        if (!syncWrites) {
+            return;
+        }
+        long target;
+        synchronized (lock) {
+            target = appended;
+        }
+        awaitDurable(target);
+    }
+
+    /**
+     * Returns a future that completes once every record appended so far by the calling thread is on disk, or
+     * completes exceptionally if the journal could not be written. Unlike awaitDurable() it doesn't block; the
+     * future is completed by the committer thread, so actions that depend on it mustn't block either.
+     */
+    CompletableFuture<Void> whenDurable() {
+        long target = appendedByThread.get()[0];
+        synchronized (lock) {
+            if (!syncWrites || durable >= target) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            if (failure != null) {
+                future.completeExceptionally(new IOException("Journal could not be written", failure));
+            } else {
+                waiters.add(new DurabilityWaiter(target, future));
+            }
+            return future;
+        }
+    }
+
+    private void awaitDurable(long target) throws IOException {
+        synchronized (lock) {
+            while (durable < target && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (durable < target) {
+                throw new IOException("Journal could not be written", failure);
+            }
+        }
+    }
+
+    /**
+     * Writes any buffered records and closes the journal. Records can't be appended once the journal is closed.
+     */
+    @Override
+    public void close() throws IOException {
+        // Let any snapshot in progress finish first, since it needs to start a new journal.
+        snapshotter.shutdown();
+        try {
+            snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                lock.notifyAll();
+            }
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Starts a new journal and writes a snapshot to go with it, then deletes the older journals and snapshots.
+     */
+    synchronized void snapshot() throws IOException {
+        long snapshotGeneration = roll();
+
+        // The snapshot is written to a temporary file and renamed, so a partly written snapshot is never loaded.
+        Path temporary = directory.resolve(SNAPSHOT_PREFIX + snapshotGeneration + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(out), 64 * 1024);
+            CRC32 crc = new CRC32();
+            DataOutputStream data = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+
+            data.writeInt(SNAPSHOT_MAGIC);
+            data.writeLong(store.nextId());
+            for (C concert : store.concerts()) {
+                data.writeBoolean(true);
+                writeConcert(data, type, concert);
+            }
+            data.writeBoolean(false);
+            data.flush();
+
+            new DataOutputStream(buffered).writeInt((int) crc.getValue());
+            buffered.flush();
+            out.force(true);
+        }
+        Files.move(temporary, snapshotFile(directory, snapshotGeneration), StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+
+        for (long older : generations(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (older < snapshotGeneration) {
+                deleteQuietly(snapshotFile(directory, older));
+            }
+        }
+        for (long older : generations(directory, JOURNAL_PREFIX, JOURNAL_SUFFIX)) {
+            if (older < snapshotGeneration) {
+                deleteQuietly(journalFile(directory, older));
+            }
+        }
+    }
+
+    /**
+     * Frames the record in recordBuffer and adds it to the pending records. Called while holding lock.
+     */
+    private void append() {
+        if (closed) {
+            recordBuffer.reset();
+            throw new IllegalStateException("Journal is closed");
+        }
+        checksum.reset();
+        checksum.update(recordBuffer.toByteArray(), 0, recordBuffer.size());
+
+        writeInt(pending, recordBuffer.size());
+        writeInt(pending, (int) checksum.getValue());
+        try {
+            recordBuffer.writeTo(pending);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        recordBuffer.reset();
+
+        appended++;
+        appendedByThread.get()[0] = appended;
+        lock.notifyAll();
+
+        if (++recordsSinceSnapshot == snapshotInterval) {
+            try {
+                snapshotter.execute(this::snapshotInBackground);
+            } catch (RejectedExecutionException e) {
+                // The journal is being closed.
+            }
+        }
+    }
+
+    /**
+     * Switches appends to a new journal, returning its generation. Records still pending are written to the new
+     * journal, which is harmless since replaying them again has no further effect.
+     */
+    private long roll() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                throw new IOException("Journal is closed");
+            }
+            long nextGeneration = generation + 1;
+            channel = openJournal(directory, nextGeneration);
+            generation = nextGeneration;
+            recordsSinceSnapshot = 0;
+            lock.notifyAll();
+            return nextGeneration;
+        }
+    }
+
+    private void snapshotInBackground() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Run by the committer thread: repeatedly writes and forces whatever records are pending, until the journal is
+     * closed. Also closes each journal once appends have moved on to the next.
+     */
+    private void commit() {
+        FileChannel current;
+        synchronized (lock) {
+            current = channel;
+        }
+        try {
+            while (true) {
+                ByteArrayOutputStream batch;
+                long batchEnd;
+                FileChannel target;
+                synchronized (lock) {
+                    while (pending.size() == 0 && current == channel && !closed) {
+                        lock.wait();
+                    }
+                    batch = pending;
+                    pending = spare;
+                    spare = null;
+                    batchEnd = appended;
+                    target = channel;
+                }
+
+                if (target != current) {
+                    current.close();
+                    current = target;
+                }
+                if (batch.size() > 0) {
+                    OutputStream out = Channels.newOutputStream(target);
+                    batch.writeTo(out);
+                    target.force(false);
+                    batch.reset();
+                }
+
+                List<DurabilityWaiter> completed;
+                boolean finished;
+                synchronized (lock) {
+                    spare = batch;
+                    durable = batchEnd;
+                    lock.notifyAll();
+                    completed = removeWaiters(batchEnd);
+                    finished = closed && pending.size() == 0;
+                }
+
+                // Complete futures outside the lock, since completing them runs the actions that depend on them.
+                for (DurabilityWaiter waiter : completed) {
+                    waiter.future.complete(null);
+                }
+                if (finished) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            List<DurabilityWaiter> failed;
+            synchronized (lock) {
+                failure = e;
+                lock.notifyAll();
+                failed = removeWaiters(Long.MAX_VALUE);
+            }
+            for (DurabilityWaiter waiter : failed) {
+                waiter.future.completeExceptionally(new IOException("Journal could not be written", e));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Removes and returns the waiters whose records are among the first durable records. Called while holding
+     * lock.
+     */
+    private List<DurabilityWaiter> removeWaiters(long durable) {
+        if (waiters.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<DurabilityWaiter> removed = new ArrayList<>();
+        for (Iterator<DurabilityWaiter> i = waiters.iterator(); i.hasNext(); ) {
+            DurabilityWaiter waiter = i.next();
+            if (waiter.target <= durable) {
+                removed.add(waiter);
+                i.remove();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Loads a snapshot into a Store, returning the next id recorded in it.
+     */
+    private static <C> long readSnapshot(Path file, ConcertType<C> type, Store<C> store) throws IOException {
+        try (BufferedInputStream buffered = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            CRC32 crc = new CRC32();
+            DataInputStream data = new DataInputStream(new CheckedInputStream(buffered, crc));
+
+            int magic = data.readInt();
+            if (magic != SNAPSHOT_MAGIC && magic != UNVERSIONED_SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot: " + file);
+            }
+            long nextId = data.readLong();
+            while (data.readBoolean()) {
+                store.restorePut(readConcert(data, type, magic == SNAPSHOT_MAGIC));
+            }
+            long expected = crc.getValue();
+            if ((int) expected != new DataInputStream(buffered).readInt()) {
+                throw new IOException("Damaged snapshot: " + file);
+            }
+            return nextId;
+        }
+    }
+
+    /**
+     * Applies a journal's records to a Store, returning the largest Concert id found. An incomplete or damaged
+     * record is where a crash interrupted a write, so the journal is truncated there. The records lost were never
+     * durable, so no change they made was acknowledged.
+     */
+    private static <C> long replay(Path file, ConcertType<C> type, Store<C> store) throws IOException {
+        long maxId = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            DataInputStream data = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in), 64 * 1024));
+            CRC32 crc = new CRC32();
+            long size = in.size();
+            long position = 0;
+
+            while (size - position >= RECORD_HEADER_LENGTH) {
+                int length = data.readInt();
+                int expected = data.readInt();
+                if (length < 1 || length > size - position - RECORD_HEADER_LENGTH) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                data.readFully(record);
+                crc.reset();
+                crc.update(record, 0, length);
+                if ((int) crc.getValue() != expected) {
+                    break;
+                }
+
+                maxId = Math.max(maxId, apply(record, type, store));
+                position += RECORD_HEADER_LENGTH + length;
+            }
+
+            if (position < size) {
+                in.truncate(position);
+                in.force(true);
+            }
+        }
+        return maxId;
+    }
+
+    /**
+     * Applies a single record to a Store, returning the id of the Concert it puts (or 0).
+     */
+    private static <C> long apply(byte[] record, ConcertType<C> type, Store<C> store) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(record));
+        byte recordType = data.readByte();
+        switch (recordType) {
+            case PUT:
+            case PUT_VERSIONED: {
+                C concert = readConcert(data, type, recordType == PUT_VERSIONED);
+                store.restorePut(concert);
+                return type.id(concert);
+            }
+            case REMOVE: {
+                store.restoreRemove(data.readLong());
+                return 0;
+            }
+            case CLEAR: {
+                store.restoreClear();
+                return 0;
+            }
+            default:
+                throw new IOException("Unknown journal record type: " + recordType);
+        }
+    }
+
+    private static <C> void writeConcert(DataOutput out, ConcertType<C> type, C concert) throws IOException {
+        out.writeLong(type.id(concert));
+        out.writeLong(type.version(concert));
+
+        String title = type.title(concert);
+        if (title == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        LocalDateTime date = type.date(concert);
+        out.writeBoolean(date != null);
+        if (date != null) {
+            out.writeLong(date.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(date.getNano());
+        }
+    }
+
+    /**
+     * Reads a Concert written by writeConcert(), or, if it isn't versioned, one written without its version, which
+     * is then taken to be 0.
+     */
+    private static <C> C readConcert(DataInput in, ConcertType<C> type, boolean versioned) throws IOException {
+        long id = in.readLong();
+        long version = versioned ? in.readLong() : 0;
+
+        String title = null;
+        int length = in.readInt();
+        if (length >= 0) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            title = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        LocalDateTime date = null;
+        if (in.readBoolean()) {
+            long epochSecond = in.readLong();
+            int nano = in.readInt();
+            date = LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+        }
+        return type.make(id, title, date, version);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * Forces the directory's entries to disk, so that a snapshot renamed into place survives a crash before the
+     * journals it replaces are deleted. Not every platform can open a directory to force it; there, the rename is
+     * left to the file system.
+     */
+    private void forceDirectory() {
+        try (FileChannel entries = FileChannel.open(directory, StandardOpenOption.READ)) {
+            entries.force(true);
+        } catch (IOException e) {
+            // Directories can't be forced on this platform.
+        }
+    }
+
+    private static FileChannel openJournal(Path directory, long generation) throws IOException {
+        FileChannel channel = FileChannel.open(journalFile(directory, generation),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private static Path journalFile(Path directory, long generation) {
+        return directory.resolve(JOURNAL_PREFIX + generation + JOURNAL_SUFFIX);
+    }
+
+    private static Path snapshotFile(Path directory, long generation) {
+        return directory.resolve(SNAPSHOT_PREFIX + generation + SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Returns the generations of the files in a directory with a given prefix and suffix, in ascending order.
+     */
+    private static List<Long> generations(Path directory, String prefix, String suffix) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours.
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Left for the next snapshot to delete.
+        }
+    }
+
+    /**
+     * A future returned by whenDurable(), and the number of records that must be on disk before it completes.
+     */
+    private static final class DurabilityWaiter {
+        private final long target;
+        private final CompletableFuture<Void> future;
+
+        DurabilityWaiter(long target, CompletableFuture<Void> future) {
+            this.target = target;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package se325.lab01.concert.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A collection of Concerts keyed by id, which a server keeps its Concerts in. ConcertStores determines which
+ * implementation a server uses, so that servers can be configured and benchmarked against the same stores.
+ * <p>
+ * A ConcertStore is threadsafe and each operation is atomic, but a read-modify-write of a Concert isn't; callers
+ * that need one serialise their changes. Iteration is in ascending order of id and needn't be consistent with
+ * concurrent changes.
+ * <p>
+ * A store may make changes durable in the background. A server that mustn't acknowledge a change until it's
+ * durable calls awaitDurable() before responding.
+ *
+ * @param <C> the server's Concert class.
+ */
+public interface ConcertStore<C> extends Closeable {
+
+    /**
+     * Returns the Concert with a given id, or null if there is none.
+     */
+    C get(long id);
+
+    /**
+     * Stores a Concert, replacing any with the same id.
+     *
+     * @return the Concert replaced, or null if there was none.
+     */
+    C put(C concert);
+
+    /**
+     * Replaces the stored Concert with the same id, storing nothing if there is none.
+     *
+     * @return the Concert replaced, or null if there was none.
+     */
+    C replace(C concert);
+
+    /**
+     * Removes the Concert with a given id.
+     *
+     * @return the Concert removed, or null if there was none.
+     */
+    C remove(long id);
+
+    void clear();
+
+    long size();
+
+    /**
+     * Returns an iterator over the stored Concerts with ids greater than after, or over every Concert if after is
+     * null.
+     */
+    Iterator<C> iterator(Long after);
+
+    /**
+     * Reserves a contiguous range of ids for new Concerts, returning the first. Ids are never handed out twice, even
+     * after a Clear.
+     */
+    long allocateIds(int count);
+
+    /**
+     * Returns true if get() returns the Concerts that were stored, rather than copies. Only then can a server index
+     * Concerts by reference and tell whether an indexed Concert is still current.
+     */
+    boolean retainsConcerts();
+
+    /**
+     * Returns the locks the store holds while changing a Concert, or null if it doesn't lock. A caller that
+     * serialises its own changes holds the same locks, so that a change takes one lock rather than two.
+     */
+    default StripedLocks locks() {
+        return null;
+    }
+
+    /**
+     * Waits until the changes made so far by the calling thread are durable. Returns immediately if the store
+     * doesn't persist its Concerts.
+     *
+     * @throws IOException if the changes could not be persisted.
+     */
+    default void awaitDurable() throws IOException {
+    }
+
+    /**
+     * Returns a future that completes once the changes made so far by the calling thread are durable, or completes
+     * exceptionally if they could not be persisted. Unlike awaitDurable() it doesn't block, so a server that
+     * multiplexes many sessions on one thread can hold responses back without stalling the others. The future may be
+     * completed on one of the store's threads, so actions that depend on it mustn't block.
+     */
+    default CompletableFuture<Void> whenDurable() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Waits until the changes made so far by any thread are durable. Returns immediately if the store doesn't
+     * persist its Concerts.
+     *
+     * @throws IOException if the changes could not be persisted.
+     */
+    default void awaitAllDurable() throws IOException {
+    }
+
+    /**
+     * Releases the store's resources, persisting any outstanding changes. Called once the server has stopped
+     * processing requests.
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,53 @@
+package se325.lab01.concert.store;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Makes the ConcertStore that a server is configured to use, so that every server is configured the same way. The
+ * configuration is read from system properties:
+ * <ul>
+ * <li>se325.store: where Concerts are held, "heap" (the default), "hash" (see HashConcertStore) or "offheap" (see
+ * OffHeapConcertStore).</li>
+ * <li>se325.dataDir: a directory to journal Concerts in, so that they survive a restart (see
+ * JournaledConcertStore). By default, Concerts are kept only in memory.</li>
+ * <li>se325.journalSync: whether changes must reach the disk before they're acknowledged, true by default.</li>
+ * <li>se325.snapshotInterval: the number of changes to journal between snapshots.</li>
+ * </ul>
+ */
+public class ConcertStores {
+    // Default number of changes to journal between snapshots of the Concerts.
+    public static final int SNAPSHOT_INTERVAL = 100000;
+
+    private ConcertStores() {
+    }
+
+    /**
+     * Makes the ConcertStore described by the system properties, restoring its Concerts if it persists them.
+     *
+     * @throws IOException              if the store persists its Concerts and they can't be restored.
+     * @throws IllegalArgumentException if se325.store names no known store.
+     */
+    public static <C> ConcertStore<C> fromSystemProperties(ConcertType<C> type) throws IOException {
+        ConcertStore<C> store;
+        String storeType = System.getProperty("se325.store", "heap");
+        if (storeType.equals("offheap")) {
+            store = new OffHeapConcertStore<>(type);
+        } else if (storeType.equals("hash")) {
+            store = new HashConcertStore<>(type);
+        } else if (storeType.equals("heap")) {
+            store = new HeapConcertStore<>(type);
+        } else {
+            throw new IllegalArgumentException(
+                    "Unknown se325.store \"" + storeType + "\", expected \"heap\", \"hash\" or \"offheap\"");
+        }
+
+        String dataDirectory = System.getProperty("se325.dataDir");
+        if (dataDirectory != null) {
+            boolean syncWrites = !"false".equals(System.getProperty("se325.journalSync"));
+            int snapshotInterval = Integer.getInteger("se325.snapshotInterval", SNAPSHOT_INTERVAL);
+            store = JournaledConcertStore.open(type, store, Paths.get(dataDirectory), syncWrites, snapshotInterval);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,28 @@
+package se325.lab01.concert.store;
+
+import java.time.LocalDateTime;
+
+/**
+ * How a ConcertStore reads and makes a server's Concert objects. Each server has its own Concert class, so each
+ * supplies a ConcertType for it.
+ *
+ * @param <C> the server's Concert class.
+ */
+public interface ConcertType<C> {
+
+    long id(C concert);
+
+    String title(C concert);
+
+    LocalDateTime date(C concert);
+
+    /**
+     * Returns the Concert's version, which a server increments each time it updates the Concert.
+     */
+    long version(C concert);
+
+    /**
+     * Makes a Concert with the given fields. The title and date may be null.
+     */
+    C make(long id, String title, LocalDateTime date, long version);
+}
@@ -0,0 +1,123 @@
+package se325.lab01.concert.store;
+
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ConcertStore that holds Concerts on the heap, in a hash map keyed by id, so that gets and replacements take
+ * constant time. A sorted set of ids is kept alongside for iterating, so that a page starts without sorting, at the
+ * cost of updating the set whenever a Concert is added or removed.
+ * <p>
+ * The set is updated after the map, without a lock, so it may briefly hold the id of a Concert that has just been
+ * removed. Iterators skip such ids. It never lacks the id of a Concert that's in the map once the change that added
+ * the Concert has returned.
+ */
+public class HashConcertStore<C> implements ConcertStore<C> {
+    private final ConcertType<C> type;
+    private final ConcurrentMap<Long, C> concerts;
+    private final NavigableSet<Long> ids;
+    private final AtomicLong nextId;
+
+    public HashConcertStore(ConcertType<C> type) {
+        this.type = type;
+        concerts = new ConcurrentHashMap<>();
+        ids = new ConcurrentSkipListSet<>();
+        nextId = new AtomicLong(1);
+    }
+
+    @Override
+    public C get(long id) {
+        return concerts.get(id);
+    }
+
+    @Override
+    public C put(C concert) {
+        long id = type.id(concert);
+        C previous = concerts.put(id, concert);
+        if (previous == null) {
+            ids.add(id);
+        }
+        return previous;
+    }
+
+    @Override
+    public C replace(C concert) {
+        return concerts.replace(type.id(concert), concert);
+    }
+
+    @Override
+    public C remove(long id) {
+        C removed = concerts.remove(id);
+        if (removed != null) {
+            ids.remove(id);
+            // A put of the same id between the two removals found no Concert, so added the id before it was removed.
+            if (concerts.containsKey(id)) {
+                ids.add(id);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        // Clearing the ids first means a put made meanwhile leaves at most the id of a Concert the map no longer has.
+        ids.clear();
+        concerts.clear();
+    }
+
+    @Override
+    public long size() {
+        return concerts.size();
+    }
+
+    /**
+     * Returns an iterator over the Concerts whose ids are greater than after, in order of id. Concerts removed while
+     * iterating are skipped, and Concerts added may or may not be returned.
+     */
+    @Override
+    public Iterator<C> iterator(Long after) {
+        return new SortedIterator(after == null ? ids.iterator() : ids.tailSet(after, false).iterator());
+    }
+
+    @Override
+    public long allocateIds(int count) {
+        return nextId.getAndAdd(count);
+    }
+
+    @Override
+    public boolean retainsConcerts() {
+        return true;
+    }
+
+    private class SortedIterator implements Iterator<C> {
+        private final Iterator<Long> ids;
+        private C next;
+
+        SortedIterator(Iterator<Long> ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && ids.hasNext()) {
+                next = concerts.get(ids.next());
+            }
+            return next != null;
+        }
+
+        @Override
+        public C next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            C concert = next;
+            next = null;
+            return concert;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package se325.lab01.concert.store;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ConcertStore that holds Concerts on the heap, in a map keyed and ordered by id. Ordering allows pages of Concerts
+ * to be read off without copying.
+ */
+public class HeapConcertStore<C> implements ConcertStore<C> {
+    private final ConcertType<C> type;
+    private final ConcurrentNavigableMap<Long, C> concerts;
+    private final AtomicLong nextId;
+
+    public HeapConcertStore(ConcertType<C> type) {
+        this.type = type;
+        concerts = new ConcurrentSkipListMap<>();
+        nextId = new AtomicLong(1);
+    }
+
+    @Override
+    public C get(long id) {
+        return concerts.get(id);
+    }
+
+    @Override
+    public C put(C concert) {
+        return concerts.put(type.id(concert), concert);
+    }
+
+    @Override
+    public C replace(C concert) {
+        return concerts.replace(type.id(concert), concert);
+    }
+
+    @Override
+    public C remove(long id) {
+        return concerts.remove(id);
+    }
+
+    @Override
+    public void clear() {
+        concerts.clear();
+    }
+
+    @Override
+    public long size() {
+        return concerts.size();
+    }
+
+    @Override
+    public Iterator<C> iterator(Long after) {
+        return (after == null ? concerts : concerts.tailMap(after, false)).values().iterator();
+    }
+
+    @Override
+    public long allocateIds(int count) {
+        return nextId.getAndAdd(count);
+    }
+
+    @Override
+    public boolean retainsConcerts() {
+        return true;
+    }
+}
@@ -0,0 +1,184 @@
+package se325.lab01.concert.store;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ConcertStore that persists its Concerts in a ConcertJournal, so that they survive a restart. The Concerts are
+ * held in another ConcertStore, on or off the heap, and every change made to them is journaled.
+ * <p>
+ * Journal records are group-committed in the background, so a change returns before it's durable; callers that
+ * mustn't acknowledge a change until it's durable call awaitDurable() first. Changes to any one Concert are
+ * serialised, so that they're journaled in the order they're made.
+ */
+public class JournaledConcertStore<C> implements ConcertStore<C> {
+    private final ConcertType<C> type;
+    private final ConcertStore<C> concerts;
+    private final StripedLocks locks;
+    private final AtomicLong nextId;
+    private final ConcertJournal<C> journal;
+
+    private JournaledConcertStore(ConcertType<C> type, ConcertStore<C> concerts, Path directory, boolean syncWrites,
+                                  int snapshotInterval) throws IOException {
+        this.type = type;
+        this.concerts = concerts;
+        locks = new StripedLocks();
+        nextId = new AtomicLong();
+        journal = ConcertJournal.open(directory, syncWrites, snapshotInterval, type, new Restorer());
+        nextId.set(journal.recoveredNextId());
+    }
+
+    /**
+     * Opens the journal kept in a directory, restoring the Concerts it records into an empty ConcertStore.
+     *
+     * @param concerts         an empty store to hold the Concerts.
+     * @param syncWrites       whether awaitDurable() waits for changes to reach the disk.
+     * @param snapshotInterval the number of changes to journal between snapshots.
+     * @throws IOException if the directory can't be read, or holds a damaged snapshot or journal.
+     */
+    public static <C> JournaledConcertStore<C> open(ConcertType<C> type, ConcertStore<C> concerts, Path directory,
+                                                    boolean syncWrites, int snapshotInterval) throws IOException {
+        return new JournaledConcertStore<>(type, concerts, directory, syncWrites, snapshotInterval);
+    }
+
+    @Override
+    public C get(long id) {
+        return concerts.get(id);
+    }
+
+    @Override
+    public C put(C concert) {
+        synchronized (locks.lockFor(type.id(concert))) {
+            C previous = concerts.put(concert);
+            journal.logPut(concert);
+            return previous;
+        }
+    }
+
+    @Override
+    public C replace(C concert) {
+        synchronized (locks.lockFor(type.id(concert))) {
+            C previous = concerts.replace(concert);
+            if (previous != null) {
+                journal.logPut(concert);
+            }
+            return previous;
+        }
+    }
+
+    @Override
+    public C remove(long id) {
+        synchronized (locks.lockFor(id)) {
+            C previous = concerts.remove(id);
+            if (previous != null) {
+                journal.logRemove(id);
+            }
+            return previous;
+        }
+    }
+
+    /**
+     * Removes all Concerts. Every lock is held while doing so, so that the Clear is journaled in order with respect
+     * to every other change.
+     */
+    @Override
+    public void clear() {
+        locks.runHoldingAll(() -> {
+            concerts.clear();
+            journal.logClear();
+        });
+    }
+
+    @Override
+    public long size() {
+        return concerts.size();
+    }
+
+    @Override
+    public Iterator<C> iterator(Long after) {
+        return concerts.iterator(after);
+    }
+
+    /**
+     * Reserves ids from a sequence that's recovered from the journal, so that ids aren't reused after a restart.
+     */
+    @Override
+    public long allocateIds(int count) {
+        return nextId.getAndAdd(count);
+    }
+
+    @Override
+    public boolean retainsConcerts() {
+        return concerts.retainsConcerts();
+    }
+
+    /**
+     * Returns the locks that changes are journaled under, so that callers serialising their own changes needn't
+     * take a second lock.
+     */
+    @Override
+    public StripedLocks locks() {
+        return locks;
+    }
+
+    @Override
+    public void awaitDurable() throws IOException {
+        journal.awaitDurable();
+    }
+
+    @Override
+    public CompletableFuture<Void> whenDurable() {
+        return journal.whenDurable();
+    }
+
+    @Override
+    public void awaitAllDurable() throws IOException {
+        journal.awaitAllDurable();
+    }
+
+    /**
+     * Writes any buffered journal records, then closes the journal and the store holding the Concerts.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            journal.close();
+        } finally {
+            concerts.close();
+        }
+    }
+
+    /**
+     * The view of the Concerts given to the journal. Restoring happens before the store is in use, so needs no
+     * locking.
+     */
+    private final class Restorer implements ConcertJournal.Store<C> {
+        @Override
+        public void restorePut(C concert) {
+            concerts.put(concert);
+        }
+
+        @Override
+        public void restoreRemove(long id) {
+            concerts.remove(id);
+        }
+
+        @Override
+        public void restoreClear() {
+            concerts.clear();
+        }
+
+        @Override
+        public long nextId() {
+            return nextId.get();
+        }
+
+        @Override
+        public Iterable<C> concerts() {
+            return () -> concerts.iterator(null);
+        }
+    }
+}
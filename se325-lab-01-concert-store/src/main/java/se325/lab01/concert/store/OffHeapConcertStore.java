@@ -0,0 +1,506 @@
+package se325.lab01.concert.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A ConcertStore that keeps Concerts off the heap, for catalogues so large that holding each Concert as several heap
+ * objects would make garbage collection pauses long.
+ * <p>
+ * Each Concert is stored as a compact record in a segment of direct memory: its id, its version, its date as an
+ * epoch second and nanosecond in UTC, and its title encoded as UTF-8. Records are appended to the current segment. Replacing or
+ * removing a Concert leaves its old record as garbage, and once a segment is mostly garbage its live records are
+ * copied forward and the segment is released.
+ * <p>
+ * An id table, also held in direct memory, maps each id to the address of its record. The table is split into pages
+ * that are allocated as ids are used and released once empty. Since ids are handed out in sequence, the table is
+ * dense, and walking it visits Concerts in order of id.
+ * <p>
+ * The heap holds only the arrays of segments and pages, so its footprint stays flat as the catalogue grows. The
+ * Concerts returned are decoded copies. Reads share a lock, and changes take it exclusively.
+ */
+public class OffHeapConcertStore<C> implements ConcertStore<C> {
+    // Default size of each segment of records.
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    // Each page of the id table holds 2^PAGE_BITS addresses.
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SLOTS = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SLOTS - 1;
+
+    // Largest id that can be stored, which bounds the number of pages.
+    private static final long MAX_ID = (1L << 32) - 1;
+
+    // A segment is compacted once less than 1 / COMPACTION_RATIO of the bytes written to it are still live.
+    private static final int COMPACTION_RATIO = 4;
+
+    // Record layout: id, version, the date's epoch second and nanosecond (-1 if there's no date), the title's length
+    // in bytes (-1 if there's no title), then the title.
+    private static final int ID_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int EPOCH_SECOND_OFFSET = 16;
+    private static final int NANO_OFFSET = 24;
+    private static final int TITLE_LENGTH_OFFSET = 28;
+    private static final int HEADER_LENGTH = 32;
+
+    private final ConcertType<C> type;
+    private final int segmentSize;
+    private final ReadWriteLock lock;
+    private final AtomicLong nextId;
+
+    // Pages of the id table, indexed by id >>> PAGE_BITS, and the number of Concerts in each. A page is null if no
+    // Concert in its range is stored. Each slot holds the address of a record, or 0 if there's no Concert with that
+    // id.
+    private LongBuffer[] pages;
+    private int[] pageCounts;
+
+    // Segments of records, indexed by segment number, with the number of bytes written to each and the number of
+    // those bytes that still hold live records. A segment is null once released. Segment 0 is never used, so that
+    // no record's address is 0.
+    private ByteBuffer[] segments;
+    private int[] written;
+    private int[] live;
+
+    // Segment being appended to, or 0 if there is none.
+    private int current;
+
+    private volatile long size;
+
+    /**
+     * Creates an empty OffHeapConcertStore whose segments are DEFAULT_SEGMENT_SIZE bytes.
+     */
+    public OffHeapConcertStore(ConcertType<C> type) {
+        this(type, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates an empty OffHeapConcertStore.
+     *
+     * @param segmentSize the size of each segment of records. A record larger than this gets a segment of its own.
+     */
+    public OffHeapConcertStore(ConcertType<C> type, int segmentSize) {
+        if (segmentSize < HEADER_LENGTH) {
+            throw new IllegalArgumentException("segmentSize is too small");
+        }
+        this.type = type;
+        this.segmentSize = segmentSize;
+        lock = new ReentrantReadWriteLock();
+        nextId = new AtomicLong(1);
+        reset();
+    }
+
+    @Override
+    public C get(long id) {
+        if (id < 0 || id > MAX_ID) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            long address = addressOf(id);
+            return address == 0 ? null : read(address);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public C put(C concert) {
+        long id = type.id(concert);
+        if (id < 0 || id > MAX_ID) {
+            throw new IllegalArgumentException("Concert id out of range: " + id);
+        }
+        byte[] title = encodeTitle(type.title(concert));
+        lock.writeLock().lock();
+        try {
+            return store(id, type.version(concert), type.date(concert), title, true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public C replace(C concert) {
+        long id = type.id(concert);
+        if (id < 0 || id > MAX_ID) {
+            return null;
+        }
+        byte[] title = encodeTitle(type.title(concert));
+        lock.writeLock().lock();
+        try {
+            return store(id, type.version(concert), type.date(concert), title, false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public C remove(long id) {
+        if (id < 0 || id > MAX_ID) {
+            return null;
+        }
+        lock.writeLock().lock();
+        try {
+            long address = addressOf(id);
+            if (address == 0) {
+                return null;
+            }
+            C previous = read(address);
+            setAddress(id, 0);
+            size--;
+            release(address);
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            reset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns an iterator that walks the id table, taking the read lock each time it looks for the next Concert.
+     */
+    @Override
+    public Iterator<C> iterator(Long after) {
+        final long first = after == null || after < 0 ? 0 : after + 1;
+
+        return new Iterator<C>() {
+            private long cursor = first;
+            private C next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public C next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                C result = next;
+                next = advance();
+                return result;
+            }
+
+            private C advance() {
+                lock.readLock().lock();
+                try {
+                    // The cursor overflows past Long.MAX_VALUE, when after is the largest possible id.
+                    while (cursor >= 0 && cursor <= MAX_ID) {
+                        int page = (int) (cursor >>> PAGE_BITS);
+                        if (page >= pages.length) {
+                            break;
+                        }
+                        if (pages[page] == null) {
+                            cursor = (long) (page + 1) << PAGE_BITS;
+                            continue;
+                        }
+                        long address = pages[page].get((int) (cursor & PAGE_MASK));
+                        cursor++;
+                        if (address != 0) {
+                            return read(address);
+                        }
+                    }
+                    return null;
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    @Override
+    public long allocateIds(int count) {
+        return nextId.getAndAdd(count);
+    }
+
+    @Override
+    public boolean retainsConcerts() {
+        return false;
+    }
+
+    /**
+     * Drops the store's pages and segments. Their direct memory is freed once the buffers are garbage collected.
+     */
+    @Override
+    public void close() {
+        clear();
+    }
+
+    /**
+     * Returns the number of segments that haven't been released, for tests.
+     */
+    int segmentCount() {
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (ByteBuffer segment : segments) {
+                if (segment != null) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of pages of the id table that haven't been released, for tests.
+     */
+    int pageCount() {
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (LongBuffer page : pages) {
+                if (page != null) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores a record for a Concert, returning the Concert it replaces. Called holding the write lock.
+     *
+     * @param create whether to store the Concert if there's none with its id already.
+     */
+    private C store(long id, long version, LocalDateTime date, byte[] title, boolean create) {
+        long previousAddress = addressOf(id);
+        if (previousAddress == 0 && !create) {
+            return null;
+        }
+        C previous = previousAddress == 0 ? null : read(previousAddress);
+
+        long address = append(id, version, date, title);
+        setAddress(id, address);
+        if (previousAddress == 0) {
+            size++;
+        } else {
+            release(previousAddress);
+        }
+        return previous;
+    }
+
+    private long append(long id, long version, LocalDateTime date, byte[] title) {
+        int length = HEADER_LENGTH + (title == null ? 0 : title.length);
+        long address = reserve(length);
+        ByteBuffer segment = segments[segmentOf(address)];
+        int offset = offsetOf(address);
+
+        segment.putLong(offset + ID_OFFSET, id);
+        segment.putLong(offset + VERSION_OFFSET, version);
+        if (date == null) {
+            segment.putLong(offset + EPOCH_SECOND_OFFSET, 0);
+            segment.putInt(offset + NANO_OFFSET, -1);
+        } else {
+            segment.putLong(offset + EPOCH_SECOND_OFFSET, date.toEpochSecond(ZoneOffset.UTC));
+            segment.putInt(offset + NANO_OFFSET, date.getNano());
+        }
+        segment.putInt(offset + TITLE_LENGTH_OFFSET, title == null ? -1 : title.length);
+        if (title != null) {
+            // Readers only use absolute gets, so moving the position is safe while holding the write lock.
+            segment.position(offset + HEADER_LENGTH);
+            segment.put(title);
+        }
+        return address;
+    }
+
+    /**
+     * Reserves space for a record of a given length, starting a new segment if the current one is full.
+     */
+    private long reserve(int length) {
+        if (current == 0 || segments[current].capacity() - written[current] < length) {
+            int full = current;
+            current = allocateSegment(Math.max(segmentSize, length));
+            if (full != 0 && live[full] == 0) {
+                segments[full] = null;
+            }
+        }
+        int offset = written[current];
+        written[current] += length;
+        live[current] += length;
+        return addressOf(current, offset);
+    }
+
+    /**
+     * Accounts for a record that's no longer referenced, compacting its segment if it's now mostly garbage.
+     */
+    private void release(long address) {
+        int segment = segmentOf(address);
+        live[segment] -= recordLength(segments[segment], offsetOf(address));
+        if (segment == current) {
+            return;
+        }
+        if (live[segment] == 0) {
+            segments[segment] = null;
+        } else if (live[segment] < written[segment] / COMPACTION_RATIO) {
+            compact(segment);
+        }
+    }
+
+    /**
+     * Copies the live records of a segment to the current segment, then releases it.
+     */
+    private void compact(int segment) {
+        ByteBuffer source = segments[segment];
+        for (int offset = 0; offset < written[segment]; offset += recordLength(source, offset)) {
+            long id = source.getLong(offset + ID_OFFSET);
+            if (addressOf(id) != addressOf(segment, offset)) {
+                continue;
+            }
+            int length = recordLength(source, offset);
+            long address = reserve(length);
+
+            ByteBuffer record = source.duplicate();
+            record.limit(offset + length).position(offset);
+            ByteBuffer target = segments[segmentOf(address)];
+            target.position(offsetOf(address));
+            target.put(record);
+            setAddress(id, address);
+        }
+        segments[segment] = null;
+    }
+
+    private int allocateSegment(int capacity) {
+        int segment = 1;
+        while (segment < segments.length && segments[segment] != null) {
+            segment++;
+        }
+        if (segment == segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+            written = Arrays.copyOf(written, segments.length);
+            live = Arrays.copyOf(live, segments.length);
+        }
+        segments[segment] = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        written[segment] = 0;
+        live[segment] = 0;
+        return segment;
+    }
+
+    private C read(long address) {
+        ByteBuffer segment = segments[segmentOf(address)];
+        int offset = offsetOf(address);
+
+        long id = segment.getLong(offset + ID_OFFSET);
+        long version = segment.getLong(offset + VERSION_OFFSET);
+        LocalDateTime date = null;
+        int nano = segment.getInt(offset + NANO_OFFSET);
+        if (nano >= 0) {
+            date = LocalDateTime.ofEpochSecond(segment.getLong(offset + EPOCH_SECOND_OFFSET), nano, ZoneOffset.UTC);
+        }
+
+        String title = null;
+        int titleLength = segment.getInt(offset + TITLE_LENGTH_OFFSET);
+        if (titleLength >= 0) {
+            byte[] bytes = new byte[titleLength];
+            for (int i = 0; i < titleLength; i++) {
+                bytes[i] = segment.get(offset + HEADER_LENGTH + i);
+            }
+            title = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return type.make(id, title, date, version);
+    }
+
+    private static int recordLength(ByteBuffer segment, int offset) {
+        return HEADER_LENGTH + Math.max(0, segment.getInt(offset + TITLE_LENGTH_OFFSET));
+    }
+
+    /**
+     * Returns the address of the record for a given id, or 0 if there is none.
+     */
+    private long addressOf(long id) {
+        int page = (int) (id >>> PAGE_BITS);
+        if (page >= pages.length || pages[page] == null) {
+            return 0;
+        }
+        return pages[page].get((int) (id & PAGE_MASK));
+    }
+
+    /**
+     * Sets the address of the record for a given id, or removes the id if address is 0, allocating and releasing
+     * pages of the id table as needed.
+     */
+    private void setAddress(long id, long address) {
+        int page = (int) (id >>> PAGE_BITS);
+        if (page >= pages.length) {
+            if (address == 0) {
+                return;
+            }
+            int length = Math.max(page + 1, pages.length * 2);
+            pages = Arrays.copyOf(pages, length);
+            pageCounts = Arrays.copyOf(pageCounts, length);
+        }
+        if (pages[page] == null) {
+            if (address == 0) {
+                return;
+            }
+            pages[page] = ByteBuffer.allocateDirect(PAGE_SLOTS * Long.BYTES).order(ByteOrder.nativeOrder())
+                    .asLongBuffer();
+        }
+
+        int slot = (int) (id & PAGE_MASK);
+        long previous = pages[page].get(slot);
+        pages[page].put(slot, address);
+        if (previous == 0 && address != 0) {
+            pageCounts[page]++;
+        } else if (previous != 0 && address == 0 && --pageCounts[page] == 0) {
+            pages[page] = null;
+        }
+    }
+
+    /**
+     * Drops every page and segment. Called from the constructor, or holding the write lock.
+     */
+    private void reset() {
+        pages = new LongBuffer[16];
+        pageCounts = new int[pages.length];
+        segments = new ByteBuffer[16];
+        written = new int[segments.length];
+        live = new int[segments.length];
+        current = 0;
+        size = 0;
+    }
+
+    private static long addressOf(int segment, int offset) {
+        return (long) segment << 32 | offset;
+    }
+
+    private static int segmentOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offsetOf(long address) {
+        return (int) address;
+    }
+
+    private static byte[] encodeTitle(String title) {
+        return title == null ? null : title.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,61 @@
+package se325.lab01.concert.store;
+
+/**
+ * A fixed set of locks that changes to Concerts are striped across by id, so that changes to any one Concert are
+ * serialised without serialising changes to others. Each lock is a monitor, used with synchronized.
+ * <p>
+ * A ConcertStore that serialises its own changes exposes its StripedLocks through ConcertStore.locks(), so that a
+ * server making a read-modify-write of a Concert can hold the same lock the store takes, rather than stacking a
+ * second set of locks on top of the store's.
+ */
+public final class StripedLocks {
+    // Default number of stripes.
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final Object[] locks;
+
+    /**
+     * Creates DEFAULT_STRIPES locks.
+     */
+    public StripedLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes the number of locks, a power of two.
+     */
+    public StripedLocks(int stripes) {
+        if (stripes <= 0 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("stripes must be a power of two");
+        }
+        locks = new Object[stripes];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the lock guarding changes to the Concert with a given id.
+     */
+    public Object lockFor(long id) {
+        return locks[(int) (id & (locks.length - 1))];
+    }
+
+    /**
+     * Runs an action holding every lock, making it atomic with respect to all other changes, such as a Clear. The
+     * locks are taken in order, so this can't deadlock with another thread doing the same.
+     */
+    public void runHoldingAll(Runnable action) {
+        runHolding(0, action);
+    }
+
+    private void runHolding(int stripe, Runnable action) {
+        if (stripe == locks.length) {
+            action.run();
+            return;
+        }
+        synchronized (locks[stripe]) {
+            runHolding(stripe + 1, action);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package se325.lab01.concert.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that ConcertStores makes the store named by se325.store, and rejects names it doesn't know.
+ */
+public class ConcertStoresTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty("se325.store");
+    }
+
+    @Test
+    public void testHeapIsTheDefault() throws IOException {
+        System.clearProperty("se325.store");
+        assertEquals(HeapConcertStore.class, ConcertStores.fromSystemProperties(TestConcert.TYPE).getClass());
+    }
+
+    @Test
+    public void testNamedStoresAreMade() throws IOException {
+        assertEquals(HeapConcertStore.class, storeNamed("heap").getClass());
+        assertEquals(HashConcertStore.class, storeNamed("hash").getClass());
+
+        ConcertStore<TestConcert> offHeap = storeNamed("offheap");
+        assertEquals(OffHeapConcertStore.class, offHeap.getClass());
+        offHeap.close();
+    }
+
+    @Test
+    public void testUnknownStoreIsRejected() throws IOException {
+        try {
+            storeNamed("off-heap");
+            fail("Made a store of an unknown type");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("off-heap"));
+            assertTrue(e.getMessage().contains("offheap"));
+        }
+    }
+
+    private static ConcertStore<TestConcert> storeNamed(String name) throws IOException {
+        System.setProperty("se325.store", name);
+        return ConcertStores.fromSystemProperties(TestConcert.TYPE);
+    }
+}
@@ -0,0 +1,288 @@
+package se325.lab01.concert.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that a JournaledConcertStore restores its Concerts, and the id sequence, after being closed or after a crash
+ * left a journal with a torn or damaged tail, including across snapshots.
+ */
+public class JournaledConcertStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private JournaledConcertStore<TestConcert> store;
+
+    // The Concerts the store should hold, by id.
+    private Map<Long, TestConcert> expected;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("journal").toPath();
+        expected = new TreeMap<>();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testReopenRestoresConcertsAndNextId() throws IOException {
+        store = open(directory, 1000);
+        assertEquals(1, store.allocateIds(3));
+        put(TestConcert.of(1, 1));
+        put(TestConcert.of(2, 1));
+        put(TestConcert.of(3, 1));
+        put(TestConcert.of(2, 2));
+        remove(1);
+        reopen(1000);
+
+        assertRestored();
+        assertEquals(4, store.allocateIds(1));
+    }
+
+    @Test
+    public void testClearIsRestored() throws IOException {
+        store = open(directory, 1000);
+        put(TestConcert.of(1, 1));
+        put(TestConcert.of(2, 1));
+        store.clear();
+        expected.clear();
+        put(TestConcert.of(3, 1));
+        reopen(1000);
+
+        assertRestored();
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws IOException {
+        store = open(directory, 1000);
+        put(TestConcert.of(1, 1));
+        put(TestConcert.of(2, 1));
+        close();
+
+        Path journal = directory.resolve("journal-1.log");
+        long intact = Files.size(journal);
+        appendTornRecord(journal);
+
+        store = open(directory, 1000);
+        assertRestored();
+        assertEquals(intact, Files.size(journal));
+
+        // Records appended after the truncation are replayed on the next restore.
+        put(TestConcert.of(3, 1));
+        reopen(1000);
+        assertRestored();
+    }
+
+    @Test
+    public void testDamagedRecordIsDiscardedWithEverythingAfterIt() throws IOException {
+        store = open(directory, 1000);
+        put(TestConcert.of(1, 1));
+        put(TestConcert.of(2, 1));
+        close();
+
+        Path journal = directory.resolve("journal-1.log");
+        long intact = Files.size(journal);
+
+        store = open(directory, 1000);
+        store.put(TestConcert.of(2, 2));
+        store.put(TestConcert.of(3, 1));
+        close();
+
+        // Damage the update to Concert 2; Concert 3's record follows it, so is lost too.
+        flipByte(journal, intact + 9);
+
+        store = open(directory, 1000);
+        assertRestored();
+        assertEquals(intact, Files.size(journal));
+        assertEquals(3, store.allocateIds(1));
+    }
+
+    @Test
+    public void testTornTailOfEarlierJournalIsTruncated() throws IOException {
+        // Journal 2 is written in another directory, and copied in once journal 1 has been torn, as if the
+        // committer had still been writing journal 1 when a snapshot moved appends on to journal 2.
+        Path other = folder.newFolder("other").toPath();
+        store = open(other, 1000);
+        put(TestConcert.of(3, 1));
+        close();
+
+        store = open(directory, 1000);
+        put(TestConcert.of(1, 1));
+        put(TestConcert.of(2, 1));
+        close();
+
+        Path first = directory.resolve("journal-1.log");
+        long intact = Files.size(first);
+        appendTornRecord(first);
+        Files.copy(other.resolve("journal-1.log"), directory.resolve("journal-2.log"));
+
+        store = open(directory, 1000);
+        assertRestored();
+        assertEquals(intact, Files.size(first));
+        assertEquals(4, store.allocateIds(1));
+    }
+
+    @Test
+    public void testSnapshotRollRestoresConcertsAndNextId() throws IOException {
+        store = open(directory, 10);
+        assertEquals(1, store.allocateIds(30));
+        // Ids allocated but never used are only remembered by snapshots.
+        assertEquals(31, store.allocateIds(50));
+
+        for (long id = 1; id <= 30; id++) {
+            put(TestConcert.of(id, 1));
+        }
+        for (long id = 1; id <= 30; id += 3) {
+            put(TestConcert.of(id, 2));
+        }
+        for (long id = 2; id <= 30; id += 5) {
+            remove(id);
+        }
+        close();
+
+        List<Long> snapshots = generations("snapshot-", ".dat");
+        assertEquals(1, snapshots.size());
+        assertTrue(snapshots.get(0) > 1);
+        for (long journal : generations("journal-", ".log")) {
+            assertTrue(journal >= snapshots.get(0));
+        }
+
+        store = open(directory, 10);
+        assertRestored();
+        assertEquals(81, store.allocateIds(1));
+    }
+
+    @Test
+    public void testTornTailAfterSnapshotRollIsTruncated() throws IOException {
+        store = open(directory, 10);
+        for (long id = 1; id <= 25; id++) {
+            put(TestConcert.of(id, 1));
+        }
+        close();
+
+        List<Long> journals = generations("journal-", ".log");
+        Path latest = directory.resolve("journal-" + journals.get(journals.size() - 1) + ".log");
+        appendTornRecord(latest);
+
+        store = open(directory, 10);
+        assertRestored();
+        put(TestConcert.of(26, 1));
+        reopen(10);
+        assertRestored();
+        assertEquals(27, store.allocateIds(1));
+    }
+
+    @Test
+    public void testDamagedSnapshotIsRejected() throws IOException {
+        store = open(directory, 10);
+        for (long id = 1; id <= 15; id++) {
+            put(TestConcert.of(id, 1));
+        }
+        close();
+
+        List<Long> snapshots = generations("snapshot-", ".dat");
+        assertFalse(snapshots.isEmpty());
+        flipByte(directory.resolve("snapshot-" + snapshots.get(0) + ".dat"), 20);
+
+        try {
+            store = open(directory, 10);
+            fail("Opened a store with a damaged snapshot");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    private static JournaledConcertStore<TestConcert> open(Path directory, int snapshotInterval) throws IOException {
+        return JournaledConcertStore.open(TestConcert.TYPE, new HeapConcertStore<>(TestConcert.TYPE), directory,
+                true, snapshotInterval);
+    }
+
+    private void reopen(int snapshotInterval) throws IOException {
+        close();
+        store = open(directory, snapshotInterval);
+    }
+
+    private void close() throws IOException {
+        store.awaitAllDurable();
+        store.close();
+        store = null;
+    }
+
+    private void put(TestConcert concert) {
+        store.put(concert);
+        expected.put(concert.id, concert);
+    }
+
+    private void remove(long id) {
+        store.remove(id);
+        expected.remove(id);
+    }
+
+    private void assertRestored() {
+        assertEquals(new ArrayList<>(expected.values()), TestConcert.list(store, null));
+        assertEquals(expected.size(), store.size());
+        assertNull(store.get(0));
+    }
+
+    /**
+     * Appends a record header whose length runs past the end of the file, as a crash mid-write leaves.
+     */
+    private static void appendTornRecord(Path journal) throws IOException {
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer torn = ByteBuffer.allocate(12);
+            torn.putInt(64).putInt(0x12345678).putInt(0x01000000);
+            torn.flip();
+            channel.write(torn);
+        }
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, position);
+            b.put(0, (byte) ~b.get(0));
+            b.rewind();
+            channel.write(b, position);
+        }
+    }
+
+    private List<Long> generations(String prefix, String suffix) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+            }
+        }
+        generations.sort(null);
+        return generations;
+    }
+}
@@ -0,0 +1,216 @@
+package se325.lab01.concert.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that an OffHeapConcertStore agrees with a HeapConcertStore through churn that compacts segments, grows the
+ * id table and releases its pages.
+ */
+public class OffHeapConcertStoreTest {
+
+    // Small enough that churn fills, and compacts, many segments.
+    private static final int SEGMENT_SIZE = 2048;
+
+    // The number of ids in each page of the id table.
+    private static final int PAGE_SLOTS = 4096;
+
+    // Ids are spread over more pages than the id table starts with.
+    private static final int PAGES_USED = 40;
+
+    private OffHeapConcertStore<TestConcert> store;
+    private HeapConcertStore<TestConcert> oracle;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        store = new OffHeapConcertStore<>(TestConcert.TYPE, SEGMENT_SIZE);
+        oracle = new HeapConcertStore<>(TestConcert.TYPE);
+        random = new Random(325);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void testChurnMatchesHeapStore() {
+        long bytesWritten = 0;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 1000; i++) {
+                long id = randomId();
+                TestConcert concert = concert(id);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        assertEquals(oracle.put(concert), store.put(concert));
+                        bytesWritten += recordLength(concert);
+                        break;
+                    case 1:
+                    case 2:
+                        TestConcert previous = oracle.replace(concert);
+                        assertEquals(previous, store.replace(concert));
+                        bytesWritten += previous == null ? 0 : recordLength(concert);
+                        break;
+                    default:
+                        assertEquals(oracle.remove(id), store.remove(id));
+                        break;
+                }
+            }
+
+            // Replace about half of the Concerts, leaving garbage scattered through every segment.
+            for (TestConcert previous : TestConcert.list(oracle, null)) {
+                if (random.nextBoolean()) {
+                    TestConcert concert = concert(previous.id);
+                    bytesWritten += recordLength(concert);
+                    assertEquals(oracle.replace(concert), store.replace(concert));
+                }
+            }
+            assertMatches();
+        }
+
+        // The churn wrote many times more segments' worth of records than are kept, and compaction keeps
+        // the segments that are left well filled with live records.
+        long liveBytes = 0;
+        for (TestConcert concert : TestConcert.list(oracle, null)) {
+            liveBytes += recordLength(concert);
+        }
+        assertTrue(store.segmentCount() * 3L < bytesWritten / SEGMENT_SIZE);
+        assertTrue(store.segmentCount() < 2 * liveBytes / SEGMENT_SIZE + 4);
+        assertTrue(store.pageCount() > 16);
+    }
+
+    @Test
+    public void testRemovingEverythingReleasesPagesAndSegments() {
+        for (int i = 0; i < 5000; i++) {
+            TestConcert concert = concert(randomId());
+            store.put(concert);
+            oracle.put(concert);
+        }
+        assertTrue(store.pageCount() > 16);
+
+        for (TestConcert concert : TestConcert.list(oracle, null)) {
+            assertEquals(concert, store.remove(concert.id));
+        }
+        oracle.clear();
+        assertMatches();
+        assertEquals(0, store.pageCount());
+        // Only the segment being appended to is kept.
+        assertTrue(store.segmentCount() <= 1);
+
+        // The store is usable once drained.
+        for (int i = 0; i < 1000; i++) {
+            TestConcert concert = concert(randomId());
+            store.put(concert);
+            oracle.put(concert);
+        }
+        assertMatches();
+    }
+
+    @Test
+    public void testRecordsLargerThanSegments() {
+        char[] characters = new char[SEGMENT_SIZE * 3];
+        Arrays.fill(characters, '\u266B');
+        String title = new String(characters);
+
+        for (long id = 1; id <= 20; id++) {
+            TestConcert concert = new TestConcert(id, id % 2 == 0 ? title : "Small " + id,
+                    LocalDateTime.of(2018, 1, 25, 20, 0), 1);
+            store.put(concert);
+            oracle.put(concert);
+        }
+        for (long id = 1; id <= 20; id += 3) {
+            TestConcert concert = new TestConcert(id, title + id, null, 2);
+            store.replace(concert);
+            oracle.replace(concert);
+        }
+        for (long id = 2; id <= 20; id += 4) {
+            store.remove(id);
+            oracle.remove(id);
+        }
+        assertMatches();
+    }
+
+    @Test
+    public void testClearReleasesEverything() {
+        for (int i = 0; i < 2000; i++) {
+            store.put(concert(randomId()));
+        }
+        store.clear();
+
+        assertMatches();
+        assertEquals(0, store.pageCount());
+        assertEquals(0, store.segmentCount());
+    }
+
+    /**
+     * Makes a Concert with a title of random length, which is sometimes null, as is its date.
+     */
+    private TestConcert concert(long id) {
+        long version = random.nextInt(1000);
+        int choice = random.nextInt(10);
+        if (choice == 0) {
+            return new TestConcert(id, null, null, version);
+        }
+        char[] title = new char[random.nextInt(200)];
+        Arrays.fill(title, choice == 1 ? '\u00E9' : 'a');
+        LocalDateTime date = choice == 2 ? null
+                : LocalDateTime.of(1960, 1, 1, 0, 0).plusSeconds(random.nextInt(Integer.MAX_VALUE))
+                        .plusNanos(random.nextInt(1000000000));
+        return new TestConcert(id, new String(title), date, version);
+    }
+
+    /**
+     * Returns an id that's usually in the first few pages of the id table, but sometimes far beyond them.
+     */
+    private long randomId() {
+        if (random.nextInt(4) == 0) {
+            return random.nextInt(PAGES_USED * PAGE_SLOTS);
+        }
+        return random.nextInt(3 * PAGE_SLOTS);
+    }
+
+    /**
+     * Returns the length of a Concert's record, as laid out by OffHeapConcertStore.
+     */
+    private static int recordLength(TestConcert concert) {
+        return 32 + (concert.title == null ? 0 : concert.title.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    private void assertMatches() {
+        List<TestConcert> expected = TestConcert.list(oracle, null);
+        assertEquals(expected, TestConcert.list(store, null));
+        assertEquals(oracle.size(), store.size());
+
+        List<Long> afters = new ArrayList<>(Arrays.asList(-1L, 0L, (long) PAGE_SLOTS - 1, (long) PAGE_SLOTS,
+                (long) PAGES_USED * PAGE_SLOTS, Long.MAX_VALUE));
+        for (int i = 0; i < 20; i++) {
+            afters.add(randomId());
+        }
+        for (Long after : afters) {
+            assertEquals(TestConcert.list(oracle, after), TestConcert.list(store, after));
+        }
+
+        for (int i = 0; i < 500; i++) {
+            long id = randomId();
+            assertEquals(oracle.get(id), store.get(id));
+        }
+        for (TestConcert concert : expected) {
+            assertEquals(concert, store.get(concert.id));
+        }
+        assertNull(store.get(-1));
+        assertNull(store.get(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,71 @@
+package se325.lab01.concert.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests that StripedLocks map ids to locks consistently and that runHoldingAll() holds every one of them.
+ */
+public class StripedLocksTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIdsMapToStripes() {
+        StripedLocks locks = new StripedLocks(8);
+
+        assertSame(locks.lockFor(3), locks.lockFor(11));
+        assertSame(locks.lockFor(-1), locks.lockFor(7));
+        assertNotSame(locks.lockFor(3), locks.lockFor(4));
+    }
+
+    @Test
+    public void testRunHoldingAllHoldsEveryLock() {
+        StripedLocks locks = new StripedLocks();
+        AtomicBoolean ran = new AtomicBoolean();
+
+        locks.runHoldingAll(() -> {
+            for (long id = 0; id < StripedLocks.DEFAULT_STRIPES; id++) {
+                assertTrue(Thread.holdsLock(locks.lockFor(id)));
+            }
+            ran.set(true);
+        });
+
+        assertTrue(ran.get());
+        assertFalse(Thread.holdsLock(locks.lockFor(0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStripesMustBeAPowerOfTwo() {
+        new StripedLocks(48);
+    }
+
+    /**
+     * Tests that a JournaledConcertStore shares its locks, so that callers serialising their own changes take the
+     * same lock as the store.
+     */
+    @Test
+    public void testJournaledStoreSharesItsLocks() throws IOException {
+        assertEquals(null, new HeapConcertStore<>(TestConcert.TYPE).locks());
+
+        try (JournaledConcertStore<TestConcert> store = JournaledConcertStore.open(TestConcert.TYPE,
+                new HeapConcertStore<>(TestConcert.TYPE), folder.getRoot().toPath(), false, 1000)) {
+            StripedLocks locks = store.locks();
+            synchronized (locks.lockFor(1)) {
+                store.put(TestConcert.of(1, 1));
+            }
+            assertEquals(TestConcert.of(1, 1), store.get(1));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package se325.lab01.concert.store;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A minimal Concert class for testing stores, compared by all of its fields.
+ */
+final class TestConcert {
+
+    static final ConcertType<TestConcert> TYPE = new ConcertType<TestConcert>() {
+        @Override
+        public long id(TestConcert concert) {
+            return concert.id;
+        }
+
+        @Override
+        public String title(TestConcert concert) {
+            return concert.title;
+        }
+
+        @Override
+        public LocalDateTime date(TestConcert concert) {
+            return concert.date;
+        }
+
+        @Override
+        public long version(TestConcert concert) {
+            return concert.version;
+        }
+
+        @Override
+        public TestConcert make(long id, String title, LocalDateTime date, long version) {
+            return new TestConcert(id, title, date, version);
+        }
+    };
+
+    final long id;
+    final String title;
+    final LocalDateTime date;
+    final long version;
+
+    TestConcert(long id, String title, LocalDateTime date, long version) {
+        this.id = id;
+        this.title = title;
+        this.date = date;
+        this.version = version;
+    }
+
+    /**
+     * Makes a Concert whose title and date are derived from its id and version.
+     */
+    static TestConcert of(long id, long version) {
+        return new TestConcert(id, "Concert " + id + " v" + version,
+                LocalDateTime.of(2018, 1, 25, 20, 0).plusDays(id).plusNanos(version), version);
+    }
+
+    /**
+     * Returns every Concert a store's iterator yields after an id (or from the start, if after is null).
+     */
+    static List<TestConcert> list(ConcertStore<TestConcert> store, Long after) {
+        List<TestConcert> concerts = new ArrayList<>();
+        for (Iterator<TestConcert> i = store.iterator(after); i.hasNext(); ) {
+            concerts.add(i.next());
+        }
+        return concerts;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TestConcert)) {
+            return false;
+        }
+        TestConcert rhs = (TestConcert) other;
+        return id == rhs.id && version == rhs.version && Objects.equals(title, rhs.title)
+                && Objects.equals(date, rhs.date);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, title, date, version);
+    }
+
+    @Override
+    public String toString() {
+        return "TestConcert[" + id + ", " + title + ", " + date + ", v" + version + "]";
+    }
+}
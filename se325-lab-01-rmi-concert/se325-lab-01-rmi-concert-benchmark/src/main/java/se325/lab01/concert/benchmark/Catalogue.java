@@ -0,0 +1,36 @@
+package se325.lab01.concert.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import se325.lab01.concert.common.Concert;
+
+/**
+ * Generates Concerts to populate benchmarks with.
+ */
+public class Catalogue {
+    private static final LocalDateTime FIRST_DATE = LocalDateTime.of(2020, 1, 1, 20, 0);
+
+    private Catalogue() {
+    }
+
+    /**
+     * Returns count Concerts without ids, ready to be created, with distinct titles and dates a day apart.
+     */
+    public static List<Concert> newConcerts(int count) {
+        List<Concert> concerts = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            concerts.add(new Concert(title(i), date(i)));
+        }
+        return concerts;
+    }
+
+    public static String title(long i) {
+        return "Concert " + i;
+    }
+
+    public static LocalDateTime date(long i) {
+        return FIRST_DATE.plusDays(i);
+    }
+}
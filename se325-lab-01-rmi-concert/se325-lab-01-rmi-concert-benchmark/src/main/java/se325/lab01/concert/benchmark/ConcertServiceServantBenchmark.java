@@ -0,0 +1,112 @@
+package se325.lab01.concert.benchmark;
+
+import java.io.IOException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se325.lab01.concert.common.Concert;
+import se325.lab01.concert.common.ConcertPage;
+import se325.lab01.concert.common.ConcertServiceServant;
+import se325.lab01.concert.common.ConcertStoreType;
+import se325.lab01.concert.store.ConcertStore;
+import se325.lab01.concert.store.HashConcertStore;
+import se325.lab01.concert.store.HeapConcertStore;
+import se325.lab01.concert.store.OffHeapConcertStore;
+
+/**
+ * Measures the ConcertServiceServant's operations called directly, without RMI, over each of the stores that the
+ * server can be configured with. Run with -t to have several threads call the servant concurrently, as RMI does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcertServiceServantBenchmark {
+    // Number of Concerts in the catalogue.
+    @Param({"1000", "100000"})
+    private int catalogueSize;
+
+    // The store: "heap", "hash" or "offheap".
+    @Param({"heap", "hash", "offheap"})
+    private String store;
+
+    private ConcertStore<Concert> concerts;
+    private ConcertServiceServant servant;
+    private long firstId;
+
+    @Setup
+    public void setUp() throws IOException {
+        switch (store) {
+            case "hash":
+                concerts = new HashConcertStore<>(ConcertStoreType.INSTANCE);
+                break;
+            case "offheap":
+                concerts = new OffHeapConcertStore<>(ConcertStoreType.INSTANCE);
+                break;
+            default:
+                concerts = new HeapConcertStore<>(ConcertStoreType.INSTANCE);
+        }
+        servant = new ConcertServiceServant(concerts);
+        firstId = servant.createConcerts(Catalogue.newConcerts(catalogueSize)).get(0).getId();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        UnicastRemoteObject.unexportObject(servant, true);
+        concerts.close();
+    }
+
+    @Benchmark
+    public Concert getConcert() throws IOException {
+        return servant.getConcert(randomId());
+    }
+
+    @Benchmark
+    public boolean updateConcert() throws IOException {
+        long id = randomId();
+        return servant.updateConcert(new Concert(id, Catalogue.title(id), Catalogue.date(id)));
+    }
+
+    /**
+     * Creates a Concert and deletes it again, so that the size of the catalogue stays the same.
+     */
+    @Benchmark
+    public boolean createAndDeleteConcert() throws IOException {
+        Concert concert = servant.createConcert(new Concert("Extra", Catalogue.date(0)));
+        return servant.deleteConcert(concert.getId());
+    }
+
+    /**
+     * Reads a page of 100 Concerts.
+     */
+    @Benchmark
+    public ConcertPage getConcerts() throws IOException {
+        return servant.getConcerts(randomId(), 100);
+    }
+
+    @Benchmark
+    public List<Concert> getAllConcerts() throws IOException {
+        return servant.getAllConcerts();
+    }
+
+    private long randomId() {
+        return firstId + ThreadLocalRandom.current().nextLong(catalogueSize);
+    }
+}
@@ -0,0 +1,275 @@
+package se325.lab01.concert.benchmark;
+
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import se325.lab01.concert.common.Concert;
+import se325.lab01.concert.common.ConcertService;
+import se325.lab01.concert.common.ConcertServiceServant;
+import se325.lab01.concert.common.ConcertStoreType;
+import se325.lab01.concert.common.Config;
+import se325.lab01.concert.common.TunedClientSocketFactory;
+import se325.lab01.concert.common.TunedServerSocketFactory;
+import se325.lab01.concert.store.ConcertStore;
+import se325.lab01.concert.store.ConcertStores;
+
+/**
+ * Drives a ConcertService over RMI from a number of client threads, and reports the throughput and latency
+ * percentiles of the remote calls for each combination of catalogue size and thread count. Unlike the JMH
+ * benchmarks, every call goes through a stub looked up in the RMI registry, so the measurements include
+ * serialization and the network stack.
+ * <p>
+ * By default the service is exported in the load generator's JVM, configured with the same system properties as
+ * the server (see ConcertStores and TunedClientSocketFactory), and listens on Config.SERVER_PORT, so no other server
+ * may be running. The load is configured with system properties:
+ * <ul>
+ * <li>se325.host: the host of an already running server to drive instead.</li>
+ * <li>se325.catalogueSizes: comma-separated catalogue sizes, "1000,100000" by default.</li>
+ * <li>se325.threads: comma-separated numbers of client threads, "1,4,16" by default.</li>
+ * <li>se325.workload: the calls each thread makes (see Workload), Mixed by default.</li>
+ * <li>se325.warmup and se325.duration: the seconds to run before and while measuring, 3 and 10 by default.</li>
+ * </ul>
+ * For example:
+ * <pre>
+ *     java -Dse325.threads=1,8,32 -Dse325.store=hash -cp target/benchmarks.jar \
+ *         se325.lab01.concert.benchmark.LoadGenerator
+ * </pre>
+ */
+public class LoadGenerator {
+
+    /**
+     * The calls that each client thread makes. Each call is timed separately.
+     */
+    public enum Workload {
+        // getConcert with a random id.
+        Get,
+        // updateConcert with a random id.
+        Update,
+        // createConcert, then deleteConcert of the new Concert, so that the catalogue size stays the same.
+        Create,
+        // getConcerts for a page of 100 Concerts, from a random id.
+        Page,
+        // getAllConcerts.
+        All,
+        // 80% Get, 10% Update, 5% Page and 5% Create.
+        Mixed
+    }
+
+    private final ConcertService service;
+    private final Workload workload;
+    private long firstId;
+    private int catalogueSize;
+
+    LoadGenerator(ConcertService service, Workload workload) {
+        this.service = service;
+        this.workload = workload;
+    }
+
+    public static void main(String[] args) throws IOException, NotBoundException, InterruptedException {
+        int[] catalogueSizes = integers(System.getProperty("se325.catalogueSizes", "1000,100000"));
+        int[] threadCounts = integers(System.getProperty("se325.threads", "1,4,16"));
+        Workload workload = Workload.valueOf(System.getProperty("se325.workload", Workload.Mixed.name()));
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger("se325.warmup", 3));
+        long durationNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger("se325.duration", 10));
+        String host = System.getProperty("se325.host");
+
+        ConcertStore<Concert> store = null;
+        Registry registry = null;
+        ConcertServiceServant servant = null;
+        if (host == null) {
+            store = ConcertStores.fromSystemProperties(ConcertStoreType.INSTANCE);
+            TunedClientSocketFactory socketFactory = TunedClientSocketFactory.fromSystemProperties();
+            servant = new ConcertServiceServant(store, socketFactory, new TunedServerSocketFactory(socketFactory));
+            registry = LocateRegistry.createRegistry(Config.SERVER_PORT);
+            registry.rebind(Config.SERVICE_NAME, servant);
+            host = "localhost";
+        }
+
+        try {
+            ConcertService service = (ConcertService) LocateRegistry.getRegistry(host, Config.SERVER_PORT)
+                    .lookup(Config.SERVICE_NAME);
+            LoadGenerator generator = new LoadGenerator(service, workload);
+
+            System.out.println("Workload " + workload + ", latencies in microseconds");
+            System.out.printf("%10s %7s %10s %8s %8s %8s %8s %8s %8s%n",
+                    "catalogue", "threads", "calls/s", "mean", "p50", "p90", "p99", "p99.9", "max");
+            for (int catalogueSize : catalogueSizes) {
+                generator.populate(catalogueSize);
+                for (int threads : threadCounts) {
+                    generator.run(threads, warmupNanos);
+                    Result result = generator.run(threads, durationNanos);
+                    System.out.printf("%10d %7d %s%n", catalogueSize, threads, result);
+                }
+            }
+        } finally {
+            if (servant != null) {
+                UnicastRemoteObject.unexportObject(servant, true);
+                UnicastRemoteObject.unexportObject(registry, true);
+                store.close();
+            }
+        }
+    }
+
+    /**
+     * Replaces the service's Concerts with a new catalogue, created a page at a time.
+     */
+    void populate(int size) throws RemoteException {
+        service.clear();
+        List<Concert> catalogue = Catalogue.newConcerts(size);
+        for (int i = 0; i < size; i += Config.MAX_PAGE_SIZE) {
+            List<Concert> created = service.createConcerts(
+                    new ArrayList<>(catalogue.subList(i, Math.min(i + Config.MAX_PAGE_SIZE, size))));
+            if (i == 0) {
+                firstId = created.get(0).getId();
+            }
+        }
+        catalogueSize = size;
+    }
+
+    /**
+     * Runs the workload on a number of threads for a given time, and returns the latencies of their calls.
+     */
+    Result run(int threads, long durationNanos) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Client[] clients = new Client[threads];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            clients[i] = new Client(start, durationNanos);
+            workers[i] = new Thread(clients[i], "load-" + i);
+            workers[i].start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        long[][] latencies = new long[threads][];
+        for (int i = 0; i < threads; i++) {
+            if (clients[i].failure != null) {
+                throw new IllegalStateException("Call failed", clients[i].failure);
+            }
+            latencies[i] = Arrays.copyOf(clients[i].latencies, clients[i].calls);
+        }
+        return new Result(latencies, elapsed);
+    }
+
+    private long randomId(ThreadLocalRandom random) {
+        return firstId + random.nextLong(catalogueSize);
+    }
+
+    private static int[] integers(String list) {
+        return Arrays.stream(list.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    /**
+     * A client thread, which makes calls until its time is up and records how long each took.
+     */
+    private class Client implements Runnable {
+        private final CountDownLatch start;
+        private final long durationNanos;
+        private long[] latencies;
+        private int calls;
+        private Exception failure;
+
+        Client(CountDownLatch start, long durationNanos) {
+            this.start = start;
+            this.durationNanos = durationNanos;
+            latencies = new long[1024];
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            try {
+                start.await();
+                long deadline = System.nanoTime() + durationNanos;
+                while (System.nanoTime() < deadline) {
+                    Workload next = workload;
+                    if (next == Workload.Mixed) {
+                        int choice = random.nextInt(100);
+                        next = choice < 80 ? Workload.Get : choice < 90 ? Workload.Update
+                                : choice < 95 ? Workload.Page : Workload.Create;
+                    }
+                    call(next, random);
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+
+        private void call(Workload call, ThreadLocalRandom random) throws RemoteException {
+            long started = System.nanoTime();
+            switch (call) {
+                case Get:
+                    service.getConcert(randomId(random));
+                    break;
+                case Update:
+                    long id = randomId(random);
+                    service.updateConcert(new Concert(id, Catalogue.title(id), Catalogue.date(id)));
+                    break;
+                case Page:
+                    service.getConcerts(randomId(random), 100);
+                    break;
+                case All:
+                    service.getAllConcerts();
+                    break;
+                default:
+                    Concert concert = service.createConcert(new Concert("Extra", Catalogue.date(0)));
+                    record(System.nanoTime() - started);
+                    started = System.nanoTime();
+                    service.deleteConcert(concert.getId());
+            }
+            record(System.nanoTime() - started);
+        }
+
+        private void record(long nanos) {
+            if (calls == latencies.length) {
+                latencies = Arrays.copyOf(latencies, calls * 2);
+            }
+            latencies[calls++] = nanos;
+        }
+    }
+
+    /**
+     * The latencies of all the calls made during a run, from which exact percentiles are read.
+     */
+    static class Result {
+        private final long[] latencies;
+        private final long elapsedNanos;
+
+        Result(long[][] perThread, long elapsedNanos) {
+            latencies = Arrays.stream(perThread).flatMapToLong(Arrays::stream).sorted().toArray();
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        long percentile(double percentile) {
+            int rank = (int) Math.ceil(latencies.length * percentile / 100.0);
+            return latencies[Math.max(rank, 1) - 1];
+        }
+
+        @Override
+        public String toString() {
+            if (latencies.length == 0) {
+                return "no calls completed";
+            }
+            double mean = Arrays.stream(latencies).average().getAsDouble();
+            return String.format("%10.0f %8.1f %8.1f %8.1f %8.1f %8.1f %8.1f",
+                    latencies.length * 1e9 / elapsedNanos, mean / 1e3, percentile(50) / 1e3,
+                    percentile(90) / 1e3, percentile(99) / 1e3, percentile(99.9) / 1e3,
+                    latencies[latencies.length - 1] / 1e3);
+        }
+    }
+}
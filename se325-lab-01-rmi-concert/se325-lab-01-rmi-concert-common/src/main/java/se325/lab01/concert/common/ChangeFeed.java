@@ -0,0 +1,176 @@
+package se325.lab01.concert.common;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import se325.lab01.concert.common.ConcertChange.Type;
+import se325.lab01.concert.store.ConcertStore;
+
+/**
+ * Numbers the changes made by a ConcertServiceServant and delivers them to subscribed ConcertListeners.
+ * <p>
+ * Publishing a change only queues it for each subscriber, so a change never waits on a listener. Each subscriber
+ * has a bounded queue of pending changes, keyed by Concert id so that a Concert changed again before the previous
+ * change was delivered is reported once. A pool of delivery threads sends each subscriber its pending changes as a
+ * batch, one batch at a time, once the changes are durable. If a subscriber's queue fills, its pending changes are
+ * replaced by a single Reset.
+ */
+class ChangeFeed {
+    // Stands for Cleared and Reset changes in a subscriber's queue. Concert ids are never negative.
+    private static final long NO_ID = -1;
+
+    private final ConcertStore<?> store;
+    private final int queueCapacity;
+    private final Map<ConcertListener, Subscription> subscriptions;
+    private final ThreadPoolExecutor delivery;
+    private long sequence;
+
+    /**
+     * @param store         the store whose changes must be durable before they're delivered.
+     * @param queueCapacity the number of changes that can be pending for a subscriber before they're replaced by a
+     *                      Reset.
+     * @param threads       the number of threads delivering changes, and so the number of listeners that can be
+     *                      called at once.
+     */
+    ChangeFeed(ConcertStore<?> store, int queueCapacity, int threads) {
+        this.store = store;
+        this.queueCapacity = queueCapacity;
+        subscriptions = new ConcurrentHashMap<>();
+        delivery = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "change-delivery");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        delivery.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Subscribes a listener, returning the sequence number of the latest change it won't be told about.
+     */
+    synchronized long subscribe(ConcertListener listener) {
+        subscriptions.putIfAbsent(listener, new Subscription(listener));
+        return sequence;
+    }
+
+    void unsubscribe(ConcertListener listener) {
+        subscriptions.remove(listener);
+    }
+
+    /**
+     * Publishes the creation, update or deletion of a Concert. Called once the change has been made, while holding
+     * the lock that orders changes to the Concert, so that changes to a Concert are numbered in the order they were
+     * made.
+     *
+     * @param concert the Concert's new state, or null if it was deleted.
+     */
+    void publish(Type type, long id, Concert concert) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        // Numbering and queueing together keeps every subscriber's queue in order of sequence number.
+        synchronized (this) {
+            ConcertChange change = new ConcertChange(type, ++sequence, id, concert);
+            for (Subscription subscription : subscriptions.values()) {
+                subscription.queue(change);
+            }
+        }
+    }
+
+    /**
+     * Publishes the deletion of every Concert. Called once the change has been made, while holding every lock.
+     */
+    void publishClear() {
+        publish(Type.Cleared, NO_ID, null);
+    }
+
+    /**
+     * A subscribed listener and its pending changes.
+     */
+    private class Subscription {
+        private final ConcertListener listener;
+        // Pending changes, keyed by Concert id (or NO_ID), in order of sequence number. Guarded by this.
+        private final LinkedHashMap<Long, ConcertChange> pending;
+        // True while a delivery is queued or in progress. Guarded by this.
+        private boolean delivering;
+
+        Subscription(ConcertListener listener) {
+            this.listener = listener;
+            pending = new LinkedHashMap<>();
+        }
+
+        synchronized void queue(ConcertChange change) {
+            ConcertChange previous = pending.remove(change.getId());
+            if (change.getType() == Type.Cleared) {
+                pending.clear();
+            } else if (previous != null && previous.getType() == Type.Created) {
+                if (change.getType() == Type.Deleted) {
+                    // The listener never needs to know about the Concert.
+                    return;
+                }
+                change = new ConcertChange(Type.Created, change.getSequence(), change.getId(), change.getConcert());
+            }
+
+            if (pending.size() >= queueCapacity) {
+                pending.clear();
+                change = new ConcertChange(Type.Reset, change.getSequence(), NO_ID, null);
+            }
+            pending.put(change.getId(), change);
+
+            if (!delivering) {
+                delivering = true;
+                delivery.execute(this::deliver);
+            }
+        }
+
+        /**
+         * Run by a delivery thread: sends the pending changes as a batch, and schedules another delivery if more
+         * changes were queued meanwhile.
+         */
+        private void deliver() {
+            List<ConcertChange> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    // A Concert was created and deleted before the delivery ran.
+                    delivering = false;
+                    return;
+                }
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+            }
+
+            try {
+                try {
+                    store.awaitAllDurable();
+                } catch (IOException e) {
+                    // The changes may be lost, and the clients that made them are being told so. Whatever the
+                    // listener holds of the changed Concerts may no longer match the store.
+                    long latest = batch.get(batch.size() - 1).getSequence();
+                    batch = Collections.singletonList(new ConcertChange(Type.Reset, latest, NO_ID, null));
+                }
+                listener.concertsChanged(batch);
+            } catch (RemoteException e) {
+                // The listener has gone away.
+                subscriptions.remove(listener, this);
+            } finally {
+                // Changes queued meanwhile are still delivered if the listener failed unexpectedly.
+                synchronized (this) {
+                    if (pending.isEmpty() || subscriptions.get(listener) != this) {
+                        delivering = false;
+                    } else {
+                        delivery.execute(this::deliver);
+                    }
+                }
+            }
+        }
+    }
+}
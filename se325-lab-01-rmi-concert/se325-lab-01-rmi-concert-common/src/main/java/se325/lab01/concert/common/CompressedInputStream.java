@@ -0,0 +1,148 @@
+package se325.lab01.concert.common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An input stream that reads the frames written by a CompressedOutputStream, inflating those that were compressed.
+ */
+class CompressedInputStream extends InputStream {
+    private final InputStream in;
+    private final byte[] frame;
+    private int position;
+    private int count;
+    private Inflater inflater;
+    private byte[] compressed;
+
+    CompressedInputStream(InputStream in) {
+        this.in = in;
+        frame = new byte[CompressedOutputStream.FRAME_SIZE];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == count && !readFrame()) {
+            return -1;
+        }
+        return frame[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == count && !readFrame()) {
+            return -1;
+        }
+        int chunk = Math.min(len, count - position);
+        System.arraycopy(frame, position, b, off, chunk);
+        position += chunk;
+        return chunk;
+    }
+
+    @Override
+    public int available() {
+        return count - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Reads the next frame into the frame buffer, returning false if the stream ended cleanly before it. Empty frames
+     * are skipped.
+     */
+    private boolean readFrame() throws IOException {
+        do {
+            int first = in.read();
+            if (first < 0) {
+                return false;
+            }
+            int length = first << 24 | readBytes(3);
+            if (length >= 0) {
+                count = readFully(frame, checkLength(length));
+            } else {
+                int uncompressedLength = checkLength(readBytes(4));
+                if (compressed == null) {
+                    compressed = new byte[CompressedOutputStream.FRAME_SIZE];
+                }
+                readFully(compressed, checkLength(-length));
+                count = inflate(-length, uncompressedLength);
+            }
+            position = 0;
+        } while (count == 0);
+        return true;
+    }
+
+    // Frames are never larger than FRAME_SIZE, compressed or not, so a larger length means the stream is corrupt.
+    private static int checkLength(int length) throws IOException {
+        if (length < 0 || length > CompressedOutputStream.FRAME_SIZE) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    private int inflate(int compressedLength, int length) throws IOException {
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        inflater.setInput(compressed, 0, compressedLength);
+        try {
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int n = inflater.inflate(frame, inflated, length - inflated);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new IOException("Truncated compressed frame");
+                }
+                inflated += n;
+            }
+            if (inflated != length) {
+                throw new IOException("Compressed frame inflated to " + inflated + " bytes, not " + length);
+            }
+            return inflated;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed frame", e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    /**
+     * Reads a big-endian integer of a given number of bytes.
+     */
+    private int readBytes(int length) throws IOException {
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value = value << 8 | b;
+        }
+        return value;
+    }
+
+    private int readFully(byte[] b, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int n = in.read(b, total, length - total);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            total += n;
+        }
+        return total;
+    }
+}
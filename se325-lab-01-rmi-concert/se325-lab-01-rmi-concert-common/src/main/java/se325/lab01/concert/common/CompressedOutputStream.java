@@ -0,0 +1,120 @@
+package se325.lab01.concert.common;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream that writes data as a series of frames, each holding the bytes written between flushes (or up to
+ * FRAME_SIZE of them). A frame of at least compressionThreshold bytes is deflated, unless that doesn't make it any
+ * smaller. RMI flushes once per call and reply, so frames correspond to messages, and a large reply is compressed as
+ * it's streamed out without holding the whole of it in memory.
+ * <p>
+ * A frame starts with an int: if it's positive or zero, it's the length of the uncompressed bytes that follow;
+ * otherwise it's the negated length of the compressed bytes, which follow the length of the bytes they inflate to.
+ * CompressedInputStream reads the frames back.
+ */
+class CompressedOutputStream extends FilterOutputStream {
+    // Largest number of bytes held before a frame is written.
+    static final int FRAME_SIZE = 64 * 1024;
+
+    // Space reserved at the start of the buffers for the frame header, so that a frame is written in one call.
+    private static final int HEADER_SIZE = 8;
+
+    private final int compressionThreshold;
+    private final byte[] frame;
+    private int count;
+    private Deflater deflater;
+    private byte[] compressed;
+
+    CompressedOutputStream(OutputStream out, int compressionThreshold) {
+        super(out);
+        this.compressionThreshold = compressionThreshold;
+        frame = new byte[HEADER_SIZE + FRAME_SIZE];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == FRAME_SIZE) {
+            writeFrame();
+        }
+        frame[HEADER_SIZE + count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == FRAME_SIZE) {
+                writeFrame();
+            }
+            int chunk = Math.min(len, FRAME_SIZE - count);
+            System.arraycopy(b, off, frame, HEADER_SIZE + count, chunk);
+            count += chunk;
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            writeFrame();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    private void writeFrame() throws IOException {
+        int compressedLength = count >= compressionThreshold ? deflate() : count;
+        if (compressedLength < count) {
+            putInt(compressed, 0, -compressedLength);
+            putInt(compressed, 4, count);
+            out.write(compressed, 0, HEADER_SIZE + compressedLength);
+        } else {
+            putInt(frame, HEADER_SIZE - 4, count);
+            out.write(frame, HEADER_SIZE - 4, 4 + count);
+        }
+        count = 0;
+    }
+
+    /**
+     * Deflates the frame into the compressed buffer, after its header, returning the number of compressed bytes.
+     */
+    private int deflate() {
+        if (deflater == null) {
+            // Favour speed: a large reply is compressed on the thread that would otherwise be sending it.
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            compressed = new byte[HEADER_SIZE + FRAME_SIZE];
+        }
+        deflater.setInput(frame, HEADER_SIZE, count);
+        deflater.finish();
+        int length = HEADER_SIZE;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        deflater.reset();
+        return length - HEADER_SIZE;
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
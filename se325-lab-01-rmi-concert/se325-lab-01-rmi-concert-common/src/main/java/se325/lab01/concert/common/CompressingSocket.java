@@ -0,0 +1,37 @@
+package se325.lab01.concert.common;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * A socket whose streams compress the messages written to it (see CompressedOutputStream). Both ends of a connection
+ * must use a CompressingSocket.
+ */
+class CompressingSocket extends Socket {
+    private final int compressionThreshold;
+    private InputStream in;
+    private OutputStream out;
+
+    CompressingSocket(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() throws IOException {
+        if (in == null) {
+            in = new CompressedInputStream(new BufferedInputStream(super.getInputStream()));
+        }
+        return in;
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() throws IOException {
+        if (out == null) {
+            out = new CompressedOutputStream(super.getOutputStream(), compressionThreshold);
+        }
+        return out;
+    }
+}
@@ -1,38 +1,70 @@
 package se325.lab01.concert.common;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
+import java.time.ZoneOffset;
+import java.util.Objects;
 
 /**
  * Class to represent a music concert.
+ * <p>
+ * A stored Concert has a version, which the ConcertService increments each time it updates the Concert. A client
+ * that read a Concert can update it with ConcertService.updateConcertIfVersion(), which fails if the version has
+ * changed.
+ * <p>
+ * Concert is Externalizable, so that Concerts passed in RMI calls are written field by field rather than by
+ * reflection, and their dates as epoch seconds (taken at UTC) and nanoseconds rather than as LocalDateTime objects.
+ * Nullable values are preceded by a presence byte, and titles are written as a length and UTF-8 bytes.
+ * <p>
+ * Two Concerts are equal if they have the same id and title. Their hash code is computed without allocating, and
+ * cached until either changes.
  */
-public class Concert implements Serializable {
+public class Concert implements Externalizable {
 
-    private static final long serialVersionUID = 1L;
+    // Changed from 1 when Concert became Externalizable, so that a peer with the old form fails fast.
+    private static final long serialVersionUID = 2L;
 
     private long id;
     private String title;
     private LocalDateTime date;
+    private long version;
+
+    // Hash of the id and title, or 0 if it's yet to be computed.
+    private int hash;
 
     public Concert(long id, String title, LocalDateTime date) {
+        this(id, title, date, 0);
+    }
+
+    public Concert(long id, String title, LocalDateTime date, long version) {
         this.id = id;
         this.title = title;
         this.date = date;
+        this.version = version;
     }
 
     public Concert(String title, LocalDateTime date) {
         this(-1, title, date);
     }
 
+    /**
+     * Creates an empty Concert, for deserialisation only.
+     */
+    public Concert() {
+    }
+
     public long getId() {
         return id;
     }
 
     public void setId(int id) {
         this.id = id;
+        hash = 0;
     }
 
     public String getTitle() {
@@ -41,6 +73,7 @@ public class Concert implements Serializable {
 
     public void setTitle(String title) {
         this.title = title;
+        hash = 0;
     }
 
     public LocalDateTime getDate() {
@@ -51,27 +84,70 @@ public class Concert implements Serializable {
         this.date = date;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeLong(id);
+        if (title == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeBoolean(date != null);
+        if (date != null) {
+            out.writeLong(date.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(date.getNano());
+        }
+        out.writeLong(version);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        id = in.readLong();
+        int length = in.readInt();
+        if (length < -1) {
+            throw new StreamCorruptedException("Invalid title length: " + length);
+        }
+        if (length >= 0) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            title = new String(bytes, StandardCharsets.UTF_8);
+        }
+        if (in.readBoolean()) {
+            long epochSecond = in.readLong();
+            int nano = in.readInt();
+            date = LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+        }
+        version = in.readLong();
+    }
+
     @Override
     public boolean equals(Object other) {
-        if (!(other instanceof Concert))
-            return false;
         if (other == this)
             return true;
+        if (!(other instanceof Concert))
+            return false;
 
         Concert rhs = (Concert) other;
-        return new EqualsBuilder().
-                append(id, rhs.getId()).
-                append(title, rhs.getTitle()).
-
-                isEquals();
+        return id == rhs.id && Objects.equals(title, rhs.title);
     }
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(getClass().getName()).
-                append(id).
-                append(title).
-                toHashCode();
+        int h = hash;
+        if (h == 0) {
+            h = 31 * Long.hashCode(id) + Objects.hashCode(title);
+            hash = h;
+        }
+        return h;
     }
 }
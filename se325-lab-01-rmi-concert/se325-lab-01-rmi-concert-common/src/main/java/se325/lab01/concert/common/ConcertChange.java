@@ -0,0 +1,69 @@
+package se325.lab01.concert.common;
+
+import java.io.Serializable;
+
+/**
+ * A change to the ConcertService's Concerts, delivered to ConcertListeners. Each change has a sequence number, which
+ * increases with every change the service makes.
+ * <p>
+ * Changes queued for a listener are coalesced: a listener receives at most one change per Concert in each batch,
+ * carrying the Concert's latest state. A Concert that was created and then updated is reported as Created, and one
+ * created and deleted within a batch isn't reported at all, so sequence numbers may skip.
+ */
+public class ConcertChange implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        // A Concert was created; getConcert() returns it.
+        Created,
+        // A Concert was updated; getConcert() returns its new state.
+        Updated,
+        // A Concert was deleted; getConcert() returns null.
+        Deleted,
+        // All Concerts were deleted.
+        Cleared,
+        // Changes were dropped because the listener fell too far behind. The listener should reload every Concert,
+        // with getConcerts(), and then apply the changes that follow.
+        Reset
+    }
+
+    private final Type type;
+    private final long sequence;
+    private final long id;
+    private final Concert concert;
+
+    public ConcertChange(Type type, long sequence, long id, Concert concert) {
+        this.type = type;
+        this.sequence = sequence;
+        this.id = id;
+        this.concert = concert;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the id of the changed Concert, or -1 for Cleared and Reset changes.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the Concert's new state for Created and Updated changes, or null otherwise.
+     */
+    public Concert getConcert() {
+        return concert;
+    }
+
+    @Override
+    public String toString() {
+        return type + " #" + sequence + (id < 0 ? "" : " id=" + id);
+    }
+}
@@ -0,0 +1,23 @@
+package se325.lab01.concert.common;
+
+/**
+ * Thrown by ConcertService.updateConcertIfVersion() when the Concert has been updated since it was read.
+ */
+public class ConcertConflictException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Concert current;
+
+    public ConcertConflictException(Concert current) {
+        super("Concert " + current.getId() + " has been updated since it was read");
+        this.current = current;
+    }
+
+    /**
+     * Returns the Concert as stored, with its current version, against which the update can be retried.
+     */
+    public Concert getCurrent() {
+        return current;
+    }
+}
@@ -0,0 +1,23 @@
+package se325.lab01.concert.common;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * A remote callback through which the ConcertService tells a subscribed client about changes to its Concerts. The
+ * client exports its ConcertListener (e.g. with UnicastRemoteObject.exportObject()) and passes it to
+ * ConcertService.subscribe().
+ */
+public interface ConcertListener extends Remote {
+
+    /**
+     * Receives a batch of changes, in ascending order of sequence number. Batches are delivered one at a time, and
+     * the service doesn't send the next until this call returns, so a listener that's slow to return receives
+     * larger, coalesced batches rather than holding up the service.
+     *
+     * @param changes the changes made since the previous batch.
+     * @throws RemoteException if the listener can't be reached, in which case it's unsubscribed.
+     */
+    void concertsChanged(List<ConcertChange> changes) throws RemoteException;
+}
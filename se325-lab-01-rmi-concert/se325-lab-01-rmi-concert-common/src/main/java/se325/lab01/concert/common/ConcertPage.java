@@ -0,0 +1,32 @@
+package se325.lab01.concert.common;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of Concerts returned by ConcertService.getConcerts(), in ascending order of id, together with the cursor
+ * with which to request the following page.
+ */
+public class ConcertPage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Concert> concerts;
+    private final Long nextCursor;
+
+    public ConcertPage(List<Concert> concerts, Long nextCursor) {
+        this.concerts = concerts;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Concert> getConcerts() {
+        return concerts;
+    }
+
+    /**
+     * Returns the cursor with which to request the following page, or null if this is the last page.
+     */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+}
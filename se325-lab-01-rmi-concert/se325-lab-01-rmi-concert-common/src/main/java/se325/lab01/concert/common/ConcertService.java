@@ -35,6 +35,18 @@ public interface ConcertService extends Remote {
      */
     boolean updateConcert(Concert concert) throws RemoteException;
 
+    /**
+     * Updates an existing Concert only if it hasn't been updated since it was read, i.e. if the stored Concert's
+     * version is the given Concert's version. Concurrent editors of a Concert can then detect that their changes
+     * conflict, rather than one silently overwriting the other.
+     *
+     * @param concert the Concert to update, with the version that was read.
+     * @return The Concert as stored, with its new version, or null if the Concert doesn't exist.
+     * @throws ConcertConflictException if the Concert has been updated since it was read. Nothing is stored.
+     * @throws RemoteException
+     */
+    Concert updateConcertIfVersion(Concert concert) throws ConcertConflictException, RemoteException;
+
     /**
      * Deletes a Concert with a specified id.
      *
@@ -52,6 +64,66 @@ public interface ConcertService extends Remote {
      */
     List<Concert> getAllConcerts() throws RemoteException;
 
+    /**
+     * Returns one page of Concerts, in ascending order of id. Pages let a client read a large catalogue in a few
+     * calls that each return a bounded number of Concerts, rather than in a single call.
+     *
+     * @param cursor the nextCursor of the previous page, or null to request the first page.
+     * @param limit  the maximum number of Concerts to return. The service returns at most Config.MAX_PAGE_SIZE.
+     * @return The page of Concerts.
+     * @throws RemoteException
+     */
+    ConcertPage getConcerts(Long cursor, int limit) throws RemoteException;
+
+    /**
+     * Creates and stores a number of new Concerts in a single call.
+     *
+     * @param concerts the new Concerts to create, as for createConcert().
+     * @return The new Concerts, with their generated ids, in the order in which they were given.
+     * @throws RemoteException
+     */
+    List<Concert> createConcerts(List<Concert> concerts) throws RemoteException;
+
+    /**
+     * Updates a number of existing Concerts in a single call. Each Concert is updated individually, so the Concerts
+     * that exist are updated even if others don't.
+     *
+     * @param concerts the Concerts to update.
+     * @return The ids of the Concerts that don't exist, and so weren't stored.
+     * @throws RemoteException
+     */
+    List<Long> updateConcerts(List<Concert> concerts) throws RemoteException;
+
+    /**
+     * Deletes a number of Concerts in a single call. Each Concert is deleted individually, as for updateConcerts().
+     *
+     * @param ids the unique ids of the Concerts to delete.
+     * @return The ids of the Concerts that weren't found.
+     * @throws RemoteException
+     */
+    List<Long> deleteConcerts(List<Long> ids) throws RemoteException;
+
+    /**
+     * Subscribes a listener to changes to the Concerts. The listener is called with every change made after the
+     * subscription, as a series of batches of ConcertChanges (see ConcertListener). To mirror the Concerts, a client
+     * subscribes, reads every Concert with getConcerts(), and applies each change as it arrives; changes that were
+     * made before a Concert was read carry no older state than was read, so applying them is harmless.
+     *
+     * @param listener the client's exported listener.
+     * @return The sequence number of the latest change made before the subscription, which the listener isn't told
+     * about.
+     * @throws RemoteException
+     */
+    long subscribe(ConcertListener listener) throws RemoteException;
+
+    /**
+     * Stops calling a listener. Changes already being delivered may still arrive.
+     *
+     * @param listener the listener passed to subscribe().
+     * @throws RemoteException
+     */
+    void unsubscribe(ConcertListener listener) throws RemoteException;
+
     /**
      * removes all Concerts stored b the service.
      *
@@ -1,104 +1,271 @@
 package se325.lab01.concert.common;
 
+import java.io.IOException;
 import java.rmi.RemoteException;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
+import se325.lab01.concert.store.ConcertStore;
+import se325.lab01.concert.store.HashConcertStore;
+import se325.lab01.concert.store.StripedLocks;
+
+/**
+ * Implementation of ConcertService that keeps its Concerts in a ConcertStore, the same storage as the sockets server
+ * uses. The store is chosen by the server (see ConcertStores), and may persist the Concerts.
+ * <p>
+ * ConcertServiceServant is threadsafe, since RMI may dispatch concurrent invocations on separate threads. Each
+ * change is a single atomic operation on the store, and isn't acknowledged until the store has made it durable.
+ * Changes are published to subscribed ConcertListeners through a ChangeFeed; changes to the same Concert are made
+ * and published under a lock, striped by id, so that they're numbered in the order they were made. The same lock
+ * makes updateConcertIfVersion()'s check of the Concert's version atomic with its update, without serialising
+ * updates to other Concerts.
+ */
 public class ConcertServiceServant extends UnicastRemoteObject implements ConcertService {
-	List<Concert> ConcertList;
-
-	public ConcertServiceServant() throws RemoteException {
-		
-	}
-	/**
-     * Creates and stores a new Concert.
-     *
-     * @param concert the new Concert to create. The concert's fields should be
-     *                filled in except for the id field, whose value is generated by the service.
-     * @throws RemoteException
+    private final ConcertStore<Concert> concerts;
+    private final StripedLocks locks;
+    private final ChangeFeed changes;
+
+    /**
+     * Creates a ConcertServiceServant that keeps its Concerts only in memory, in a hash map, so that getting,
+     * updating and deleting a Concert take constant time however many Concerts there are.
      */
-	@Override
-    public Concert createConcert(Concert concert) throws RemoteException{
-		if(ConcertList.contains(concert)){
-			return concert;
-		} else {
-			ConcertList.add(concert);
-			concert.setId(ConcertList.indexOf(concert));
-		}
-		return concert;
-
-	}
-		
+    public ConcertServiceServant() throws RemoteException {
+        this(new HashConcertStore<>(ConcertStoreType.INSTANCE));
+    }
+
     /**
-     * Retrieves a Concert based on a specified id.
-     *
-     * @param id the id of the requested Concert.
-     * @return The matching Concert object, or null if there is no match.
-     * @throws RemoteException
+     * Creates a ConcertServiceServant that serves the Concerts in a ConcertStore, which may already hold Concerts
+     * restored from disk.
      */
-	@Override
-    public Concert getConcert(Long id) throws RemoteException{
-		Concert temp = ConcertList.get(id.intValue());
-		if(temp != null){
-			return temp;
-		} else {
-			return null;
-		}
-	}
+    public ConcertServiceServant(ConcertStore<Concert> concerts) throws RemoteException {
+        this.concerts = concerts;
+        locks = newLocks(concerts);
+        changes = newChangeFeed(concerts);
+    }
 
     /**
-     * Updates an existing Concert.
-     *
-     * @param concert the Concert to update.
-     * @return true if the Concert exists, false otherwise. Where false is
-     * returned the state of the service is not changed (i.e. the Concert isn't
-     * stored).
-     * @throws RemoteException
+     * Creates a ConcertServiceServant that serves the Concerts in a ConcertStore, exported on an anonymous port with
+     * custom socket factories, such as a TunedClientSocketFactory and TunedServerSocketFactory.
      */
-	@Override
-    public boolean updateConcert(Concert concert) throws RemoteException{
-		if (ConcertList.contains(concert)){
-			return true;
-		} else {
-			return false;
-		}
-	}
+    public ConcertServiceServant(ConcertStore<Concert> concerts, RMIClientSocketFactory clientSocketFactory,
+                                 RMIServerSocketFactory serverSocketFactory) throws RemoteException {
+        super(0, clientSocketFactory, serverSocketFactory);
+        this.concerts = concerts;
+        locks = newLocks(concerts);
+        changes = newChangeFeed(concerts);
+    }
 
     /**
-     * Deletes a Concert with a specified id.
-     *
-     * @param id the unique id of the Concert to delete.
-     * @return true if the Concert is found and deleted, false otherwise.
-     * @throws RemoteException
+     * Returns the store's own locks if it has any, so that a change takes one lock rather than two.
      */
-	@Override
-    public boolean deleteConcert(Long id) throws RemoteException{
-		if (getConcert(id) != null) {
-			ConcertList.remove(id);
-			return true;
-		} else {
-			return false;
-		}
-	}
+    private static StripedLocks newLocks(ConcertStore<Concert> concerts) {
+        return concerts.locks() != null ? concerts.locks() : new StripedLocks();
+    }
+
+    private static ChangeFeed newChangeFeed(ConcertStore<Concert> concerts) {
+        return new ChangeFeed(concerts, Config.LISTENER_QUEUE_CAPACITY, Config.CHANGE_DELIVERY_THREADS);
+    }
 
     /**
-     * Returns all Concerts known to the service.
-     *
-     * @return A List of Concerts.
-     * @throws RemoteException
+     * Stores a copy of the Concert with a newly allocated id, and returns the copy.
      */
-	@Override
-    public List<Concert> getAllConcerts() throws RemoteException{
-		return ConcertList;
-	}
+    @Override
+    public Concert createConcert(Concert concert) throws RemoteException {
+        Concert created = new Concert(concerts.allocateIds(1), concert.getTitle(), concert.getDate());
+        insert(created);
+        awaitDurable();
+        return created;
+    }
+
+    @Override
+    public Concert getConcert(Long id) throws RemoteException {
+        return id == null ? null : concerts.get(id);
+    }
+
+    @Override
+    public boolean updateConcert(Concert concert) throws RemoteException {
+        if (concert == null || !replace(concert)) {
+            return false;
+        }
+        awaitDurable();
+        return true;
+    }
+
+    @Override
+    public Concert updateConcertIfVersion(Concert concert) throws ConcertConflictException, RemoteException {
+        Concert updated;
+        synchronized (locks.lockFor(concert.getId())) {
+            Concert current = concerts.get(concert.getId());
+            if (current == null) {
+                return null;
+            }
+            if (current.getVersion() != concert.getVersion()) {
+                throw new ConcertConflictException(current);
+            }
+            updated = update(current, concert);
+        }
+        awaitDurable();
+        return updated;
+    }
+
+    @Override
+    public boolean deleteConcert(Long id) throws RemoteException {
+        if (id == null || !remove(id)) {
+            return false;
+        }
+        awaitDurable();
+        return true;
+    }
 
     /**
-     * removes all Concerts stored b the service.
-     *
-     * @throws RemoteException
+     * Returns the Concerts in order of id.
      */
-	@Override
-	public void clear() throws RemoteException{
-		ConcertList.clear();
-	}
+    @Override
+    public List<Concert> getAllConcerts() throws RemoteException {
+        List<Concert> all = new ArrayList<>();
+        concerts.iterator(null).forEachRemaining(all::add);
+        return all;
+    }
+
+    /**
+     * Returns at most Config.MAX_PAGE_SIZE Concerts, and at least one if any remain.
+     */
+    @Override
+    public ConcertPage getConcerts(Long cursor, int limit) throws RemoteException {
+        int pageSize = Math.max(1, Math.min(limit, Config.MAX_PAGE_SIZE));
+        Iterator<Concert> remaining = concerts.iterator(cursor);
+
+        List<Concert> page = new ArrayList<>(Math.min(pageSize, 64));
+        while (page.size() < pageSize && remaining.hasNext()) {
+            page.add(remaining.next());
+        }
+        Long nextCursor = remaining.hasNext() ? page.get(page.size() - 1).getId() : null;
+        return new ConcertPage(page, nextCursor);
+    }
+
+    /**
+     * Stores copies of the Concerts with a contiguous range of newly allocated ids, and returns the copies. The call
+     * waits once for all of the new Concerts to be made durable.
+     */
+    @Override
+    public List<Concert> createConcerts(List<Concert> batch) throws RemoteException {
+        List<Concert> created = new ArrayList<>(batch.size());
+
+        long id = concerts.allocateIds(batch.size());
+        for (Concert concert : batch) {
+            Concert newConcert = new Concert(id++, concert.getTitle(), concert.getDate());
+            insert(newConcert);
+            created.add(newConcert);
+        }
+        awaitDurable();
+        return created;
+    }
+
+    @Override
+    public List<Long> updateConcerts(List<Concert> batch) throws RemoteException {
+        List<Long> failedIds = new ArrayList<>();
+        for (Concert concert : batch) {
+            if (!replace(concert)) {
+                failedIds.add(concert.getId());
+            }
+        }
+        awaitDurable();
+        return failedIds;
+    }
+
+    @Override
+    public List<Long> deleteConcerts(List<Long> ids) throws RemoteException {
+        List<Long> failedIds = new ArrayList<>();
+        for (Long id : ids) {
+            if (id == null || !remove(id)) {
+                failedIds.add(id);
+            }
+        }
+        awaitDurable();
+        return failedIds;
+    }
+
+    /**
+     * Removes all Concerts, holding every lock so that the Clear is atomic with respect to other changes.
+     */
+    @Override
+    public void clear() throws RemoteException {
+        locks.runHoldingAll(() -> {
+            concerts.clear();
+            changes.publishClear();
+        });
+        awaitDurable();
+    }
+
+    /**
+     * Subscribes a listener to changes. Changes are delivered by a pool of Config.CHANGE_DELIVERY_THREADS threads,
+     * with up to Config.LISTENER_QUEUE_CAPACITY changes pending for each listener.
+     */
+    @Override
+    public long subscribe(ConcertListener listener) throws RemoteException {
+        return changes.subscribe(listener);
+    }
+
+    @Override
+    public void unsubscribe(ConcertListener listener) throws RemoteException {
+        changes.unsubscribe(listener);
+    }
+
+    private void insert(Concert concert) {
+        synchronized (locks.lockFor(concert.getId())) {
+            concerts.put(concert);
+            changes.publish(ConcertChange.Type.Created, concert.getId(), concert);
+        }
+    }
+
+    /**
+     * Replaces the stored Concert with the same id, returning false (and storing nothing) if there is none.
+     */
+    private boolean replace(Concert concert) {
+        synchronized (locks.lockFor(concert.getId())) {
+            Concert previous = concerts.get(concert.getId());
+            if (previous == null) {
+                return false;
+            }
+            update(previous, concert);
+            return true;
+        }
+    }
+
+    /**
+     * Stores a Concert's new title and date as its next version, returning the Concert stored. Called holding the
+     * Concert's lock, having read its current version.
+     */
+    private Concert update(Concert previous, Concert concert) {
+        Concert updated = new Concert(previous.getId(), concert.getTitle(), concert.getDate(),
+                previous.getVersion() + 1);
+        concerts.replace(updated);
+        changes.publish(ConcertChange.Type.Updated, updated.getId(), updated);
+        return updated;
+    }
+
+    /**
+     * Removes the Concert with a given id, returning false if there is none.
+     */
+    private boolean remove(long id) {
+        synchronized (locks.lockFor(id)) {
+            if (concerts.remove(id) == null) {
+                return false;
+            }
+            changes.publish(ConcertChange.Type.Deleted, id, null);
+            return true;
+        }
+    }
+
+    private void awaitDurable() throws RemoteException {
+        try {
+            concerts.awaitDurable();
+        } catch (IOException e) {
+            throw new RemoteException("Concerts could not be stored", e);
+        }
+    }
 }
@@ -0,0 +1,40 @@
+package se325.lab01.concert.common;
+
+import java.time.LocalDateTime;
+
+import se325.lab01.concert.store.ConcertType;
+
+/**
+ * The ConcertType through which the service's ConcertStore reads and makes Concerts.
+ */
+public final class ConcertStoreType implements ConcertType<Concert> {
+    public static final ConcertStoreType INSTANCE = new ConcertStoreType();
+
+    private ConcertStoreType() {
+    }
+
+    @Override
+    public long id(Concert concert) {
+        return concert.getId();
+    }
+
+    @Override
+    public String title(Concert concert) {
+        return concert.getTitle();
+    }
+
+    @Override
+    public LocalDateTime date(Concert concert) {
+        return concert.getDate();
+    }
+
+    @Override
+    public long version(Concert concert) {
+        return concert.getVersion();
+    }
+
+    @Override
+    public Concert make(long id, String title, LocalDateTime date, long version) {
+        return new Concert(id, title, date, version);
+    }
+}
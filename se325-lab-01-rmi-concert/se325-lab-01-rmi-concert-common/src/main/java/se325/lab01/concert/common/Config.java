@@ -7,4 +7,23 @@ package se325.lab01.concert.common;
 public class Config {
     // Port number that the Server listens on for accepting connections.
     public static final int SERVER_PORT = 10000;
+
+    // Name used to advertise/register the ConcertService in the RMI Registry.
+    public static final String SERVICE_NAME = "concert-service";
+
+    // Largest number of Concerts that the ConcertService returns in a single page.
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    // Size in bytes from which calls and replies to the ConcertService are compressed. A negative value disables
+    // compression.
+    public static final int COMPRESSION_THRESHOLD = 8 * 1024;
+
+    // Send and receive buffer size in bytes of the ConcertService's sockets. 0 leaves the OS default.
+    public static final int SOCKET_BUFFER_SIZE = 0;
+
+    // Number of changes that can be pending for a ConcertListener before they're replaced by a Reset.
+    public static final int LISTENER_QUEUE_CAPACITY = 10000;
+
+    // Number of threads delivering changes to ConcertListeners, and so the number called at once.
+    public static final int CHANGE_DELIVERY_THREADS = 4;
 }
@@ -0,0 +1,98 @@
+package se325.lab01.concert.common;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.rmi.server.RMIClientSocketFactory;
+import java.util.Objects;
+
+/**
+ * Makes the sockets through which clients call a remote object exported with a TunedServerSocketFactory. The factory
+ * is serialized into the object's stub, so a client uses the same socket options and compression as the server
+ * without being configured itself.
+ * <p>
+ * Compression applies to each message (the bytes written between flushes) of at least compressionThreshold bytes, so
+ * that large replies such as lists of Concerts shrink while small calls don't pay for it.
+ */
+public class TunedClientSocketFactory implements RMIClientSocketFactory, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean tcpNoDelay;
+    private final int bufferSize;
+    private final int compressionThreshold;
+
+    /**
+     * @param tcpNoDelay           whether to disable Nagle's algorithm, so that small calls aren't delayed.
+     * @param bufferSize           the socket send and receive buffer size in bytes, or 0 to use the OS default.
+     * @param compressionThreshold the size in bytes from which messages are compressed, or a negative number to
+     *                             never compress.
+     */
+    public TunedClientSocketFactory(boolean tcpNoDelay, int bufferSize, int compressionThreshold) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.bufferSize = bufferSize;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Makes a factory configured by the system properties se325.tcpNoDelay (true by default), se325.socketBufferSize
+     * and se325.compressionThreshold, defaulting to the values in Config.
+     */
+    public static TunedClientSocketFactory fromSystemProperties() {
+        return new TunedClientSocketFactory(
+                !"false".equals(System.getProperty("se325.tcpNoDelay")),
+                Integer.getInteger("se325.socketBufferSize", Config.SOCKET_BUFFER_SIZE),
+                Integer.getInteger("se325.compressionThreshold", Config.COMPRESSION_THRESHOLD));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        Socket socket = newSocket();
+        try {
+            // Set the options before connecting, so that buffer sizes take effect before the TCP window is
+            // negotiated.
+            configure(socket);
+            socket.connect(new InetSocketAddress(host, port));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    /**
+     * Makes an unconnected socket, which compresses messages if the factory is configured to.
+     */
+    Socket newSocket() {
+        return compressionThreshold < 0 ? new Socket() : new CompressingSocket(compressionThreshold);
+    }
+
+    void configure(Socket socket) throws IOException {
+        socket.setTcpNoDelay(tcpNoDelay);
+        if (bufferSize > 0) {
+            socket.setSendBufferSize(bufferSize);
+            socket.setReceiveBufferSize(bufferSize);
+        }
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+
+    // RMI reuses a connection only for calls through an equal factory, so factories with the same settings are equal.
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TunedClientSocketFactory)) {
+            return false;
+        }
+        TunedClientSocketFactory rhs = (TunedClientSocketFactory) other;
+        return tcpNoDelay == rhs.tcpNoDelay && bufferSize == rhs.bufferSize
+                && compressionThreshold == rhs.compressionThreshold;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tcpNoDelay, bufferSize, compressionThreshold);
+    }
+}
@@ -0,0 +1,50 @@
+package se325.lab01.concert.common;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMIServerSocketFactory;
+
+/**
+ * Makes the server sockets on which a remote object accepts calls, with the same socket options and compression as
+ * the TunedClientSocketFactory that the object is exported with. Pass both factories to
+ * UnicastRemoteObject.exportObject(), or to the constructor of a UnicastRemoteObject.
+ */
+public class TunedServerSocketFactory implements RMIServerSocketFactory {
+    private final TunedClientSocketFactory clientFactory;
+
+    public TunedServerSocketFactory(TunedClientSocketFactory clientFactory) {
+        this.clientFactory = clientFactory;
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket() {
+            @Override
+            public Socket accept() throws IOException {
+                Socket socket = clientFactory.newSocket();
+                implAccept(socket);
+                clientFactory.configure(socket);
+                return socket;
+            }
+        };
+        // Accepted sockets inherit the receive buffer size, which has to be set before the socket is bound.
+        if (clientFactory.bufferSize() > 0) {
+            serverSocket.setReceiveBufferSize(clientFactory.bufferSize());
+        }
+        serverSocket.bind(new InetSocketAddress(port));
+        return serverSocket;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof TunedServerSocketFactory
+                && clientFactory.equals(((TunedServerSocketFactory) other).clientFactory);
+    }
+
+    @Override
+    public int hashCode() {
+        return clientFactory.hashCode();
+    }
+}
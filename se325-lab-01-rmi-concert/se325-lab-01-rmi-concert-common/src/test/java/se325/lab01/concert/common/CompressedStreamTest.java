@@ -0,0 +1,93 @@
+package se325.lab01.concert.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that CompressedInputStream reads back what CompressedOutputStream wrote, across frame boundaries, with and
+ * without compression.
+ */
+public class CompressedStreamTest {
+
+    private static final int THRESHOLD = 1024;
+
+    /**
+     * Tests that a compressible message longer than FRAME_SIZE is split into frames that are each compressed.
+     */
+    @Test
+    public void testLargeMessageIsCompressedAcrossFrames() throws IOException {
+        byte[] message = new byte[CompressedOutputStream.FRAME_SIZE * 3 + 1234];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) ("concert ".charAt(i % 8));
+        }
+
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        CompressedOutputStream out = new CompressedOutputStream(sent, THRESHOLD);
+        // Writes of odd sizes straddle the frame boundaries.
+        for (int offset = 0; offset < message.length; offset += 1000) {
+            out.write(message, offset, Math.min(1000, message.length - offset));
+        }
+        out.flush();
+
+        assertTrue(sent.size() < message.length / 10);
+        assertArrayEquals(message, readAll(sent.toByteArray(), message.length));
+    }
+
+    /**
+     * Tests that small messages, and ones that don't compress, are sent as they are.
+     */
+    @Test
+    public void testSmallAndIncompressibleMessagesAreSentUncompressed() throws IOException {
+        byte[] small = "A small call".getBytes("UTF-8");
+        byte[] random = new byte[CompressedOutputStream.FRAME_SIZE + 10];
+        new Random(325).nextBytes(random);
+
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        CompressedOutputStream out = new CompressedOutputStream(sent, THRESHOLD);
+        out.write(small);
+        out.flush();
+        assertEquals(4 + small.length, sent.size());
+
+        out.write(random);
+        out.flush();
+        // Two uncompressed frames, each with a 4 byte header.
+        assertEquals(4 + small.length + 8 + random.length, sent.size());
+
+        byte[] expected = Arrays.copyOf(small, small.length + random.length);
+        System.arraycopy(random, 0, expected, small.length, random.length);
+        assertArrayEquals(expected, readAll(sent.toByteArray(), expected.length));
+    }
+
+    @Test(expected = IOException.class)
+    public void testOversizedFrameIsRejected() throws IOException {
+        byte[] frame = {0, 2, 0, 0};
+        new CompressedInputStream(new ByteArrayInputStream(frame)).read();
+    }
+
+    /**
+     * Reads a given number of bytes, one byte and then a varying number at a time, and checks the stream then ends.
+     */
+    private static byte[] readAll(byte[] sent, int length) throws IOException {
+        InputStream in = new CompressedInputStream(new ByteArrayInputStream(sent));
+        byte[] received = new byte[length];
+        int total = 0;
+        received[total++] = (byte) in.read();
+        while (total < length) {
+            int n = in.read(received, total, Math.min(length - total, 777 + total % 5000));
+            assertTrue(n > 0);
+            total += n;
+        }
+        assertEquals(-1, in.read());
+        return received;
+    }
+}
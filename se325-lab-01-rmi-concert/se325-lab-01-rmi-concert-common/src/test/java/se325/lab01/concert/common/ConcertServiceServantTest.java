@@ -0,0 +1,246 @@
+package se325.lab01.concert.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.rmi.RemoteException;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.UnicastRemoteObject;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import se325.lab01.concert.store.HashConcertStore;
+
+/**
+ * Tests a ConcertServiceServant through RMI within the JVM, exported on an anonymous port with a
+ * TunedClientSocketFactory and TunedServerSocketFactory as the server exports it, so that every call and reply
+ * crosses a loopback connection through the compressing sockets.
+ */
+public class ConcertServiceServantTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2018, 1, 25, 20, 0);
+
+    private HashConcertStore<Concert> store;
+    private ConcertServiceServant servant;
+    private ConcertService service;
+    private List<BlockingListener> listeners;
+
+    @BeforeClass
+    public static void useLoopback() {
+        // Stubs connect to the address they're exported with, which must be reachable without a network.
+        System.setProperty("java.rmi.server.hostname", "127.0.0.1");
+    }
+
+    @Before
+    public void export() throws RemoteException {
+        store = new HashConcertStore<>(ConcertStoreType.INSTANCE);
+        TunedClientSocketFactory socketFactory = new TunedClientSocketFactory(true, 0, Config.COMPRESSION_THRESHOLD);
+        servant = new ConcertServiceServant(store, socketFactory, new TunedServerSocketFactory(socketFactory));
+        service = (ConcertService) RemoteObject.toStub(servant);
+        listeners = new ArrayList<>();
+    }
+
+    @After
+    public void unexport() throws Exception {
+        for (BlockingListener listener : listeners) {
+            listener.release();
+            UnicastRemoteObject.unexportObject(listener, true);
+        }
+        UnicastRemoteObject.unexportObject(servant, true);
+        store.close();
+    }
+
+    @Test
+    public void testPageWalkVisitsEveryConcertOnce() throws RemoteException {
+        List<Concert> created = createConcerts(2500, "Concert");
+
+        List<Concert> walked = new ArrayList<>();
+        int pages = 0;
+        Long cursor = null;
+        do {
+            ConcertPage page = service.getConcerts(cursor, Config.MAX_PAGE_SIZE);
+            walked.addAll(page.getConcerts());
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(created, walked);
+        assertEquals(created, service.getAllConcerts());
+    }
+
+    @Test
+    public void testPageSizeIsClamped() throws RemoteException {
+        createConcerts(Config.MAX_PAGE_SIZE + 10, "Concert");
+
+        ConcertPage page = service.getConcerts(null, Integer.MAX_VALUE);
+        assertEquals(Config.MAX_PAGE_SIZE, page.getConcerts().size());
+
+        page = service.getConcerts(page.getNextCursor(), 0);
+        assertEquals(1, page.getConcerts().size());
+        assertEquals(Long.valueOf(page.getConcerts().get(0).getId()), page.getNextCursor());
+    }
+
+    @Test
+    public void testConditionalUpdateConflicts() throws Exception {
+        Concert concert = service.createConcert(new Concert("Original", DATE));
+        assertEquals(0, concert.getVersion());
+
+        Concert updated = service.updateConcertIfVersion(new Concert(concert.getId(), "First", DATE, 0));
+        assertEquals(1, updated.getVersion());
+        assertEquals("First", updated.getTitle());
+
+        // A second update from the same read loses.
+        try {
+            service.updateConcertIfVersion(new Concert(concert.getId(), "Second", DATE, 0));
+            fail("Stale update succeeded");
+        } catch (ConcertConflictException e) {
+            assertEquals(1, e.getCurrent().getVersion());
+            assertEquals("First", e.getCurrent().getTitle());
+        }
+        assertEquals("First", service.getConcert(concert.getId()).getTitle());
+
+        Concert retried = service.updateConcertIfVersion(new Concert(concert.getId(), "Second", DATE, 1));
+        assertEquals(2, retried.getVersion());
+
+        assertNull(service.updateConcertIfVersion(new Concert(concert.getId() + 1, "Missing", DATE, 0)));
+    }
+
+    /**
+     * Tests that changes made while a listener is busy are coalesced: a Concert created and then updated is reported
+     * once as Created with its latest state, and one updated twice is reported once.
+     */
+    @Test
+    public void testListenerReceivesCoalescedChanges() throws Exception {
+        BlockingListener listener = subscribe();
+        Concert first = service.createConcert(new Concert("First", DATE));
+        List<ConcertChange> batch = listener.awaitBatch();
+        assertChange(batch.get(0), ConcertChange.Type.Created, first.getId(), 0);
+
+        // The listener is still busy with the first batch.
+        Concert second = service.createConcert(new Concert("Second", DATE));
+        assertTrue(service.updateConcert(new Concert(second.getId(), "Second, rescheduled", DATE)));
+        assertTrue(service.updateConcert(new Concert(first.getId(), "First, rescheduled", DATE)));
+        assertTrue(service.updateConcert(new Concert(first.getId(), "First, moved", DATE)));
+        listener.release();
+
+        batch = listener.awaitBatch();
+        assertEquals(2, batch.size());
+        assertChange(batch.get(0), ConcertChange.Type.Created, second.getId(), 1);
+        assertEquals("Second, rescheduled", batch.get(0).getConcert().getTitle());
+        assertChange(batch.get(1), ConcertChange.Type.Updated, first.getId(), 2);
+        assertEquals("First, moved", batch.get(1).getConcert().getTitle());
+        assertTrue(batch.get(0).getSequence() < batch.get(1).getSequence());
+    }
+
+    /**
+     * Tests that a listener that falls more than Config.LISTENER_QUEUE_CAPACITY changes behind is sent a Reset in
+     * place of them, followed by the changes made since.
+     */
+    @Test
+    public void testListenerThatFallsBehindIsReset() throws Exception {
+        BlockingListener listener = subscribe();
+        service.createConcert(new Concert("First", DATE));
+        listener.awaitBatch();
+
+        List<Concert> created = createConcerts(Config.LISTENER_QUEUE_CAPACITY + 5, "Concert");
+        listener.release();
+
+        List<ConcertChange> batch = listener.awaitBatch();
+        assertEquals(5, batch.size());
+        assertEquals(ConcertChange.Type.Reset, batch.get(0).getType());
+        for (int i = 1; i < batch.size(); i++) {
+            Concert concert = created.get(created.size() - batch.size() + i);
+            assertChange(batch.get(i), ConcertChange.Type.Created, concert.getId(), 0);
+        }
+    }
+
+    /**
+     * Tests that a reply spanning several CompressedOutputStream frames, each compressed, arrives intact.
+     */
+    @Test
+    public void testLargeCompressedReply() throws IOException {
+        List<Concert> created = createConcerts(5000, "A concert with a title long enough to fill frames quickly");
+
+        List<Concert> all = service.getAllConcerts();
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(reply)) {
+            out.writeObject(all);
+        }
+        assertTrue(reply.size() > 2 * CompressedOutputStream.FRAME_SIZE);
+
+        assertEquals(created, all);
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(created.get(i).getDate(), all.get(i).getDate());
+            assertEquals(created.get(i).getVersion(), all.get(i).getVersion());
+        }
+    }
+
+    private List<Concert> createConcerts(int count, String title) throws RemoteException {
+        List<Concert> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(new Concert(title + " " + i, DATE.plusSeconds(i).plusNanos(i)));
+        }
+        List<Concert> created = service.createConcerts(batch);
+        assertEquals(count, created.size());
+        return created;
+    }
+
+    private BlockingListener subscribe() throws RemoteException {
+        BlockingListener listener = new BlockingListener();
+        ConcertListener stub = (ConcertListener) UnicastRemoteObject.exportObject(listener, 0);
+        listeners.add(listener);
+        service.subscribe(stub);
+        return listener;
+    }
+
+    private static void assertChange(ConcertChange change, ConcertChange.Type type, long id, long version) {
+        assertEquals(type, change.getType());
+        assertEquals(id, change.getId());
+        assertEquals(id, change.getConcert().getId());
+        assertEquals(version, change.getConcert().getVersion());
+    }
+
+    /**
+     * A listener that doesn't return until the test releases it, so that changes pile up meanwhile.
+     */
+    private static class BlockingListener implements ConcertListener {
+        private final BlockingQueue<List<ConcertChange>> batches = new LinkedBlockingQueue<>();
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public void concertsChanged(List<ConcertChange> changes) throws RemoteException {
+            batches.add(changes);
+            try {
+                released.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        List<ConcertChange> awaitBatch() throws InterruptedException {
+            List<ConcertChange> batch = batches.poll(10, TimeUnit.SECONDS);
+            assertTrue("No changes delivered", batch != null);
+            return batch;
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+}
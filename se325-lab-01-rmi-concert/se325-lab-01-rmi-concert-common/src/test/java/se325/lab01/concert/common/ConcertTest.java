@@ -0,0 +1,86 @@
+package se325.lab01.concert.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests that Concert's Externalizable form preserves every field, as RMI calls rely on.
+ */
+public class ConcertTest {
+
+    @Test
+    public void testRoundTripPreservesFields() throws IOException, ClassNotFoundException {
+        List<Concert> concerts = Arrays.asList(
+                new Concert(1, "One Night of Queen", LocalDateTime.of(2017, 8, 4, 20, 0), 3),
+                new Concert(2, "Nanoseconds", LocalDateTime.of(2018, 1, 25, 20, 0, 15, 123456789), Long.MAX_VALUE),
+                new Concert(3, "Before the epoch", LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999999999), 0),
+                new Concert(4, "The year 1", LocalDateTime.of(1, 1, 1, 0, 0, 0, 1), 1),
+                new Concert(5, "\u014Ctautahi \u2014 \u266B", LocalDateTime.of(2018, 3, 1, 19, 30), 2),
+                new Concert(6, "", LocalDateTime.of(2018, 1, 25, 20, 0), 0),
+                new Concert(7, null, LocalDateTime.of(2018, 1, 25, 20, 0), 0),
+                new Concert(8, "No date", null, 5),
+                new Concert(-1, null, null, 0),
+                new Concert());
+
+        List<Concert> copies = roundTrip(concerts);
+
+        assertEquals(concerts.size(), copies.size());
+        for (int i = 0; i < concerts.size(); i++) {
+            assertFieldsEqual(concerts.get(i), copies.get(i));
+        }
+    }
+
+    @Test
+    public void testRoundTripOfNullFields() throws IOException, ClassNotFoundException {
+        Concert copy = roundTrip(Arrays.asList(new Concert(9, null, null, 4))).get(0);
+
+        assertEquals(9, copy.getId());
+        assertNull(copy.getTitle());
+        assertNull(copy.getDate());
+        assertEquals(4, copy.getVersion());
+    }
+
+    /**
+     * Tests that a deserialised Concert's cached hash code matches one computed afresh.
+     */
+    @Test
+    public void testRoundTripPreservesEqualityAndHashCode() throws IOException, ClassNotFoundException {
+        Concert concert = new Concert(10, "Hashed", LocalDateTime.of(2018, 1, 25, 20, 0), 1);
+        concert.hashCode();
+
+        Concert copy = roundTrip(Arrays.asList(concert)).get(0);
+
+        assertEquals(concert, copy);
+        assertEquals(concert.hashCode(), copy.hashCode());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Concert> roundTrip(List<Concert> concerts) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new ArrayList<>(concerts));
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (List<Concert>) in.readObject();
+        }
+    }
+
+    private static void assertFieldsEqual(Concert expected, Concert actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getDate(), actual.getDate());
+        assertEquals(expected.getVersion(), actual.getVersion());
+    }
+}
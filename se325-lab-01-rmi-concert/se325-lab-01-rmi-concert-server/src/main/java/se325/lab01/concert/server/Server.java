@@ -0,0 +1,76 @@
+package se325.lab01.concert.server;
+
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+
+import se325.lab01.concert.common.Concert;
+import se325.lab01.concert.common.ConcertServiceServant;
+import se325.lab01.concert.common.ConcertStoreType;
+import se325.lab01.concert.common.Config;
+import se325.lab01.concert.common.TunedClientSocketFactory;
+import se325.lab01.concert.common.TunedServerSocketFactory;
+import se325.lab01.concert.store.ConcertStore;
+import se325.lab01.concert.store.ConcertStores;
+
+/**
+ * Simple Java RMI server that creates a remotely accessible ConcertService object and registers it with RMI's Naming
+ * service.
+ * <p>
+ * The service keeps its Concerts in a ConcertStore, chosen at startup with the same system properties as the sockets
+ * server (see ConcertStores): se325.store, se325.dataDir, se325.journalSync and se325.snapshotInterval.
+ * <p>
+ * The service is exported with tuned sockets that compress large calls and replies (see TunedClientSocketFactory),
+ * configured with se325.tcpNoDelay, se325.socketBufferSize and se325.compressionThreshold.
+ */
+public class Server {
+
+    public static void main(String[] args) {
+        ConcertStore<Concert> store;
+        try {
+            store = ConcertStores.fromSystemProperties(ConcertStoreType.INSTANCE);
+        } catch (IOException e) {
+            System.out.println("Error restoring concerts");
+            e.printStackTrace();
+            return;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        try {
+            // Create the Registry on the localhost.
+            Registry lookupService = LocateRegistry.createRegistry(Config.SERVER_PORT);
+
+            // Instantiate ConcertServiceServant, exported with the configured socket factories.
+            TunedClientSocketFactory socketFactory = TunedClientSocketFactory.fromSystemProperties();
+            ConcertServiceServant service = new ConcertServiceServant(store, socketFactory,
+                    new TunedServerSocketFactory(socketFactory));
+
+            // Advertise the ConcertService using the Registry.
+            lookupService.rebind(Config.SERVICE_NAME, service);
+
+            Keyboard.prompt("Press Enter to shutdown the server ");
+            lookupService.unbind(Config.SERVICE_NAME);
+            UnicastRemoteObject.unexportObject(service, true);
+            UnicastRemoteObject.unexportObject(lookupService, true);
+
+            System.out.println("The Concert service is no longer bound in the RMI registry.");
+
+        } catch (RemoteException e) {
+            System.out.println("Unable to start or register proxy with the RMI Registry");
+            e.printStackTrace();
+        } catch (NotBoundException e) {
+            System.out.println("Unable to remove proxy from the  RMI Registry");
+        }
+
+        try {
+            store.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
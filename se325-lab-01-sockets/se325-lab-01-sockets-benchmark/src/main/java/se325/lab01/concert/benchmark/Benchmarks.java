@@ -0,0 +1,42 @@
+package se325.lab01.concert.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks JAR. Accepts the usual JMH command line options (run with -h to list them), and
+ * unless told otherwise writes results as JSON to jmh-results.json, so that they can be compared between releases.
+ * <p>
+ * For example, to run only the codec benchmarks and write results to codec.json:
+ * <pre>
+ *     java -jar target/benchmarks.jar CodecBenchmark -rff codec.json
+ * </pre>
+ */
+public class Benchmarks {
+    // File that results are written to if the command line doesn't name one.
+    public static final String DEFAULT_RESULTS_FILE = "jmh-results.json";
+
+    public static void main(String[] args) throws CommandLineOptionException, IOException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result(DEFAULT_RESULTS_FILE);
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,43 @@
+package se325.lab01.concert.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import se325.lab01.concert.common.Concert;
+
+/**
+ * Generates Concerts to populate benchmarks with.
+ */
+public class Catalogue {
+    private static final LocalDateTime FIRST_DATE = LocalDateTime.of(2020, 1, 1, 20, 0);
+
+    private Catalogue() {
+    }
+
+    /**
+     * Returns count Concerts with ids 1 to count, distinct titles, and dates a day apart.
+     */
+    public static List<Concert> concerts(int count) {
+        List<Concert> concerts = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            concerts.add(new Concert((long) i, title(i), FIRST_DATE.plusDays(i)));
+        }
+        return concerts;
+    }
+
+    /**
+     * Returns count Concerts without ids, ready to be created.
+     */
+    public static List<Concert> newConcerts(int count) {
+        List<Concert> concerts = concerts(count);
+        for (Concert concert : concerts) {
+            concert.setId(null);
+        }
+        return concerts;
+    }
+
+    public static String title(int i) {
+        return "Concert " + i;
+    }
+}
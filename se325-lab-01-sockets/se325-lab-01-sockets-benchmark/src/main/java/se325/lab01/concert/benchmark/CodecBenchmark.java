@@ -0,0 +1,79 @@
+package se325.lab01.concert.benchmark;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se325.lab01.concert.common.Concert;
+import se325.lab01.concert.common.Encoding;
+import se325.lab01.concert.common.MessageCodec;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResponseMessage;
+
+/**
+ * Measures the cost of encoding and decoding messages, for each Encoding and for responses carrying varying numbers
+ * of Concerts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"Serialization", "Binary"})
+    private Encoding encoding;
+
+    // Number of Concerts in a List response.
+    @Param({"1", "100", "1000"})
+    private int concertCount;
+
+    private MessageCodec codec;
+    private RequestMessage createRequest;
+    private ResponseMessage listResponse;
+    private byte[] encodedCreateRequest;
+    private byte[] encodedListResponse;
+
+    @Setup
+    public void setUp() throws IOException {
+        codec = encoding.getCodec();
+        createRequest = RequestMessage.makeCreate(new Concert("One Night Only", LocalDateTime.of(2020, 1, 1, 20, 0)))
+                .setRequestId(1L);
+        listResponse = ResponseMessage.makeListResponse(Catalogue.concerts(concertCount));
+        encodedCreateRequest = codec.encodeRequest(createRequest);
+        encodedListResponse = codec.encodeResponse(listResponse);
+    }
+
+    @Benchmark
+    public byte[] encodeCreateRequest() throws IOException {
+        return codec.encodeRequest(createRequest);
+    }
+
+    @Benchmark
+    public RequestMessage decodeCreateRequest() throws IOException {
+        return codec.decodeRequest(encodedCreateRequest);
+    }
+
+    @Benchmark
+    public byte[] encodeListResponse() throws IOException {
+        return codec.encodeResponse(listResponse);
+    }
+
+    @Benchmark
+    public ResponseMessage decodeListResponse() throws IOException {
+        return codec.decodeResponse(encodedListResponse);
+    }
+}
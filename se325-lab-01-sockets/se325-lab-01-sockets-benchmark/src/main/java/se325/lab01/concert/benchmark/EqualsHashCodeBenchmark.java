@@ -0,0 +1,135 @@
+package se325.lab01.concert.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se325.lab01.concert.common.Concert;
+
+/**
+ * Compares Concert's equals() and hashCode() with the commons-lang3 builders they were once written with, alone and
+ * in the lookups that call them. Run with -prof gc to compare how much garbage each generates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EqualsHashCodeBenchmark {
+    // Number of Concerts in the List and Set that are searched.
+    private static final int CONCERT_COUNT = 100;
+    private static final LocalDateTime FIRST_DATE = LocalDateTime.of(2020, 1, 1, 20, 0);
+
+    // "Concert" for Concert's own methods, or "Builders" for BuilderConcert's.
+    @Param({"Concert", "Builders"})
+    private String implementation;
+
+    private List<Concert> list;
+    private Set<Concert> set;
+    private Concert stored;
+    private Concert key;
+
+    @Setup
+    public void setUp() {
+        list = new ArrayList<>(CONCERT_COUNT);
+        for (int i = 1; i <= CONCERT_COUNT; i++) {
+            list.add(newConcert(i));
+        }
+        set = new HashSet<>(list);
+
+        // An equal but distinct Concert from the middle of the List, as a client would send.
+        stored = list.get(CONCERT_COUNT / 2);
+        key = newConcert(stored.getId());
+    }
+
+    /**
+     * Hashes a Concert that has been hashed before.
+     */
+    @Benchmark
+    public int hashCodeCached() {
+        return key.hashCode();
+    }
+
+    /**
+     * Hashes a Concert whose title has just been set, so that its hash code isn't cached.
+     */
+    @Benchmark
+    public int hashCodeAfterChange() {
+        key.setTitle(stored.getTitle());
+        return key.hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsCopy() {
+        return key.equals(stored);
+    }
+
+    @Benchmark
+    public boolean setContains() {
+        return set.contains(key);
+    }
+
+    @Benchmark
+    public int listIndexOf() {
+        return list.indexOf(key);
+    }
+
+    private Concert newConcert(long i) {
+        if (implementation.equals("Builders")) {
+            return new BuilderConcert(i, Catalogue.title((int) i), FIRST_DATE.plusDays(i));
+        }
+        return new Concert(i, Catalogue.title((int) i), FIRST_DATE.plusDays(i));
+    }
+
+    /**
+     * A Concert with equals() and hashCode() as they were written before, which allocate a builder on each call.
+     */
+    static class BuilderConcert extends Concert {
+        private static final long serialVersionUID = 1L;
+
+        BuilderConcert(Long id, String title, LocalDateTime date) {
+            super(id, title, date);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Concert))
+                return false;
+            if (other == this)
+                return true;
+
+            Concert rhs = (Concert) other;
+            return new EqualsBuilder().
+                    append(getId(), rhs.getId()).
+                    append(getTitle(), rhs.getTitle()).
+                    isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 31).
+                    append(getClass().getName()).
+                    append(getId()).
+                    append(getTitle()).
+                    toHashCode();
+        }
+    }
+}
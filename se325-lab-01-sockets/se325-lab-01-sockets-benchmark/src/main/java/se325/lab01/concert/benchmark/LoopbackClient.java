@@ -0,0 +1,99 @@
+package se325.lab01.concert.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import se325.lab01.concert.common.Config;
+import se325.lab01.concert.common.Encoding;
+import se325.lab01.concert.common.MessageCodec;
+import se325.lab01.concert.common.MessageFrames;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResponseMessage;
+
+/**
+ * A session with a server on the local host, which sends one request at a time and waits for its response.
+ */
+public class LoopbackClient implements Closeable {
+
+    /**
+     * Variant of the protocol, and Encoding, that a LoopbackClient uses.
+     */
+    public enum Transport {
+        ObjectStream, Framed, FramedBinary
+    }
+
+    private final Socket socket;
+    private ObjectOutputStream objectOut;
+    private ObjectInputStream objectIn;
+    private OutputStream framedOut;
+    private InputStream framedIn;
+    private MessageCodec codec;
+
+    /**
+     * Connects to the server and performs the Hello handshake.
+     */
+    public LoopbackClient(Transport transport) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), Config.SERVER_PORT);
+        socket.setTcpNoDelay(true);
+
+        ResponseMessage hello;
+        if (transport == Transport.ObjectStream) {
+            objectOut = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            objectOut.flush();
+            objectIn = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            hello = send(RequestMessage.makeHello());
+        } else {
+            framedOut = new BufferedOutputStream(socket.getOutputStream());
+            framedIn = new BufferedInputStream(socket.getInputStream());
+            codec = Encoding.Serialization.getCodec();
+            Encoding encoding = transport == Transport.FramedBinary ? Encoding.Binary : Encoding.Serialization;
+            hello = send(RequestMessage.makeHello(encoding));
+            codec = hello.getEncoding().getCodec();
+        }
+
+        if (hello.getStatus() != ResponseMessage.Status.Success) {
+            socket.close();
+            throw new IOException("Server rejected Hello");
+        }
+    }
+
+    /**
+     * Sends a request and returns the server's response.
+     */
+    public ResponseMessage send(RequestMessage request) throws IOException {
+        if (objectOut != null) {
+            objectOut.writeObject(request);
+            objectOut.flush();
+            try {
+                return (ResponseMessage) objectIn.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new InvalidObjectException(e.getMessage());
+            }
+        }
+
+        MessageFrames.writeFrame(framedOut, codec.encodeRequest(request));
+        framedOut.flush();
+        return codec.decodeResponse(MessageFrames.readFrame(framedIn));
+    }
+
+    /**
+     * Ends the session with a Goodbye and closes the connection.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            send(RequestMessage.makeGoodbye());
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package se325.lab01.concert.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se325.lab01.concert.common.Concert;
+
+/**
+ * Measures writing a Concert to a long-lived ObjectOutputStream, as sessions using the object stream variant of the
+ * protocol do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectStreamBenchmark {
+    private Concert concert;
+    private ByteArrayOutputStream buffer;
+    private ObjectOutputStream objectStream;
+
+    @Setup
+    public void setUp() throws IOException {
+        concert = new Concert(1L, "One Night Only", LocalDateTime.of(2020, 1, 1, 20, 0));
+        buffer = new ByteArrayOutputStream();
+        objectStream = new ObjectOutputStream(buffer);
+    }
+
+    /**
+     * Writes a Concert, resetting the stream afterwards so that each write carries the Concert in full rather than
+     * a back-reference.
+     */
+    @Benchmark
+    public int writeConcert() throws IOException {
+        objectStream.writeObject(concert);
+        objectStream.reset();
+        int size = buffer.size();
+        buffer.reset();
+        return size;
+    }
+
+    /**
+     * Writes a new Concert each time without resetting the stream, so the stream's handle table grows as it would
+     * over a long session.
+     */
+    @Benchmark
+    public int writeNewConcertWithoutReset() throws IOException {
+        objectStream.writeObject(new Concert(concert.getId(), concert.getTitle(), concert.getDate()));
+        int size = buffer.size();
+        buffer.reset();
+        return size;
+    }
+}
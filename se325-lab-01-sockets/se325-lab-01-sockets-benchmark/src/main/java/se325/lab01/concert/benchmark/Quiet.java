@@ -0,0 +1,37 @@
+package se325.lab01.concert.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Silences the server's console output about each message it handles, which would otherwise dominate the
+ * benchmarks. Call start() when setting up a trial and stop() when tearing it down.
+ */
+public class Quiet {
+    private static PrintStream original;
+
+    private Quiet() {
+    }
+
+    public static synchronized void start() {
+        if (original == null) {
+            original = System.out;
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }));
+        }
+    }
+
+    public static synchronized void stop() {
+        if (original != null) {
+            System.setOut(original);
+            original = null;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package se325.lab01.concert.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se325.lab01.concert.common.Concert;
+
+/**
+ * Measures serialising and deserialising a list of Concerts, as a List response does with the Serialization
+ * encoding, comparing Concert's Externalizable form with the reflective form that default serialisation gives a
+ * class with the same fields. Each operation uses a new stream, so class descriptors are written every time.
+ * <p>
+ * The serialised size of each form is printed when the trial is set up.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    // "Externalizable" for Concert, or "Reflective" for ReflectiveConcert.
+    @Param({"Externalizable", "Reflective"})
+    private String form;
+
+    @Param({"1", "100"})
+    private int concertCount;
+
+    private ArrayList<Serializable> concerts;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        concerts = new ArrayList<>(concertCount);
+        for (Concert concert : Catalogue.concerts(concertCount)) {
+            concerts.add(form.equals("Reflective") ? new ReflectiveConcert(concert) : concert);
+        }
+        serialized = serialize();
+        System.out.println(form + ": " + serialized.length + " bytes for " + concertCount + " Concerts");
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(concerts);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+
+    /**
+     * A Concert as it was before it became Externalizable, serialised by reflection over its fields.
+     */
+    static class ReflectiveConcert implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Long id;
+        private final String title;
+        private final LocalDateTime date;
+        private final long version;
+
+        ReflectiveConcert(Concert concert) {
+            id = concert.getId();
+            title = concert.getTitle();
+            date = concert.getDate();
+            version = concert.getVersion();
+        }
+    }
+}
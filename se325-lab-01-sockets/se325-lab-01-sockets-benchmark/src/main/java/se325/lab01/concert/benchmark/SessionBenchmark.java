@@ -0,0 +1,205 @@
+package se325.lab01.concert.benchmark;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se325.lab01.concert.common.Concert;
+import se325.lab01.concert.common.Config;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResponseMessage;
+import se325.lab01.concert.server.NioServer;
+import se325.lab01.concert.server.Server;
+import se325.lab01.concert.server.ServerEngine;
+
+/**
+ * Measures request round trips over loopback connections to a server running in the benchmark's JVM, with each
+ * benchmark thread acting as a separate client session. Round trips are measured with 1, 4 and 16 concurrent
+ * sessions, against catalogues of different sizes.
+ * <p>
+ * The server listens on Config.SERVER_PORT, so no other server may be running. By default the blocking engine is
+ * measured; pass "-p engine=nio -p transport=Framed,FramedBinary" to measure the non-blocking engine, which doesn't
+ * support the object stream protocol.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionBenchmark {
+
+    /**
+     * The server, started once per trial and populated with a catalogue of Concerts.
+     */
+    @State(Scope.Benchmark)
+    public static class ServerState {
+        @Param({"blocking"})
+        private String engine;
+
+        // Number of Concerts in the catalogue.
+        @Param({"100", "10000"})
+        private int catalogueSize;
+
+        private ServerEngine server;
+        private Thread serviceThread;
+
+        @Setup
+        public void setUp() throws IOException, InterruptedException {
+            Quiet.start();
+            server = "nio".equals(engine)
+                    ? new NioServer(Runtime.getRuntime().availableProcessors(), Config.MAX_NIO_CONNECTIONS,
+                    Config.ACCEPT_BACKLOG)
+                    : new Server();
+            serviceThread = new Thread(() -> {
+                try {
+                    server.start();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+            serviceThread.start();
+            awaitListening();
+
+            try (LoopbackClient client = new LoopbackClient(LoopbackClient.Transport.Framed)) {
+                client.send(RequestMessage.makeBatchCreate(Catalogue.newConcerts(catalogueSize)));
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws InterruptedException {
+            server.shutdown();
+            serviceThread.join();
+            Quiet.stop();
+        }
+
+        long randomId() {
+            return ThreadLocalRandom.current().nextLong(1, catalogueSize + 1);
+        }
+
+        private void awaitListening() throws IOException, InterruptedException {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    // Close straight away; the server sees the session end before a Hello arrives.
+                    new Socket(InetAddress.getLoopbackAddress(), Config.SERVER_PORT).close();
+                    return;
+                } catch (ConnectException e) {
+                    if (attempt == 100) {
+                        throw e;
+                    }
+                    Thread.sleep(50);
+                }
+            }
+        }
+    }
+
+    /**
+     * A client session, one per benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class SessionState {
+        @Param({"ObjectStream", "Framed", "FramedBinary"})
+        private LoopbackClient.Transport transport;
+
+        private LoopbackClient client;
+
+        @Setup
+        public void setUp(ServerState server) throws IOException {
+            client = new LoopbackClient(transport);
+        }
+
+        @TearDown
+        public void tearDown() {
+            try {
+                client.close();
+            } catch (IOException e) {
+                // Another thread's teardown may already have shut the server down.
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ResponseMessage retrieveOneClient(ServerState server, SessionState session) throws IOException {
+        return retrieve(server, session);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ResponseMessage retrieveFourClients(ServerState server, SessionState session) throws IOException {
+        return retrieve(server, session);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public ResponseMessage retrieveSixteenClients(ServerState server, SessionState session) throws IOException {
+        return retrieve(server, session);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ResponseMessage createAndDeleteOneClient(SessionState session) throws IOException {
+        return createAndDelete(session);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ResponseMessage createAndDeleteFourClients(SessionState session) throws IOException {
+        return createAndDelete(session);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public ResponseMessage createAndDeleteSixteenClients(SessionState session) throws IOException {
+        return createAndDelete(session);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ResponseMessage listPageOneClient(ServerState server, SessionState session) throws IOException {
+        return listPage(server, session);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public ResponseMessage listPageSixteenClients(ServerState server, SessionState session) throws IOException {
+        return listPage(server, session);
+    }
+
+    private static ResponseMessage retrieve(ServerState server, SessionState session) throws IOException {
+        return session.client.send(RequestMessage.makeRetrieve(server.randomId()));
+    }
+
+    /**
+     * Creates a Concert and deletes it again (two round trips), so that the size of the catalogue stays the same.
+     */
+    private static ResponseMessage createAndDelete(SessionState session) throws IOException {
+        Concert concert = new Concert("Extra", LocalDateTime.of(2021, 1, 1, 20, 0));
+        ResponseMessage created = session.client.send(RequestMessage.makeCreate(concert));
+        return session.client.send(RequestMessage.makeDelete(created.getConcert().getId()));
+    }
+
+    /**
+     * Fetches a page of up to 100 Concerts from a random point in the catalogue.
+     */
+    private static ResponseMessage listPage(ServerState server, SessionState session) throws IOException {
+        return session.client.send(RequestMessage.makeListPage(server.randomId(), 100));
+    }
+}
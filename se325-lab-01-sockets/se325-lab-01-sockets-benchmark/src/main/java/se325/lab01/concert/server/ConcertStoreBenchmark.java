@@ -0,0 +1,130 @@
+package se325.lab01.concert.server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import se325.lab01.concert.benchmark.Catalogue;
+import se325.lab01.concert.common.Concert;
+import se325.lab01.concert.store.ConcertStore;
+import se325.lab01.concert.store.HashConcertStore;
+import se325.lab01.concert.store.HeapConcertStore;
+import se325.lab01.concert.store.JournaledConcertStore;
+import se325.lab01.concert.store.OffHeapConcertStore;
+
+/**
+ * Measures the ConcertStores that the sockets and RMI servers can be configured with, called directly. Run with -t to
+ * have several threads share the store, and with -prof gc to compare the stores' allocation rates.
+ * <p>
+ * The journaled store keeps its Concerts on the heap and journals them to a temporary directory without waiting for
+ * the disk, so it measures the cost of recording changes rather than of forcing them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcertStoreBenchmark {
+    // Number of Concerts in the store.
+    @Param({"1000", "100000"})
+    private int catalogueSize;
+
+    // The store: "heap", "hash", "offheap" or "journaled".
+    @Param({"heap", "hash", "offheap", "journaled"})
+    private String store;
+
+    private ConcertStore<Concert> concerts;
+    private Path dataDirectory;
+
+    @Setup
+    public void setUp() throws IOException {
+        switch (store) {
+            case "hash":
+                concerts = new HashConcertStore<>(ConcertStoreType.INSTANCE);
+                break;
+            case "offheap":
+                concerts = new OffHeapConcertStore<>(ConcertStoreType.INSTANCE);
+                break;
+            case "journaled":
+                dataDirectory = Files.createTempDirectory("concert-store-benchmark");
+                concerts = JournaledConcertStore.open(ConcertStoreType.INSTANCE,
+                        new HeapConcertStore<>(ConcertStoreType.INSTANCE), dataDirectory, false, 100000);
+                break;
+            default:
+                concerts = new HeapConcertStore<>(ConcertStoreType.INSTANCE);
+        }
+        for (Concert concert : Catalogue.newConcerts(catalogueSize)) {
+            concert.setId(concerts.allocateIds(1));
+            concerts.put(concert);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        concerts.close();
+        if (dataDirectory != null) {
+            try (Stream<Path> files = Files.list(dataDirectory)) {
+                for (Iterator<Path> i = files.iterator(); i.hasNext(); ) {
+                    Files.delete(i.next());
+                }
+            }
+            Files.delete(dataDirectory);
+        }
+    }
+
+    @Benchmark
+    public Concert get() {
+        return concerts.get(randomId());
+    }
+
+    @Benchmark
+    public Concert replace() {
+        long id = randomId();
+        return concerts.replace(new Concert(id, Catalogue.title((int) id), LocalDateTime.of(2021, 1, 1, 20, 0)));
+    }
+
+    /**
+     * Adds a Concert and removes it again, so that the size of the store stays the same.
+     */
+    @Benchmark
+    public Concert putAndRemove() {
+        long id = concerts.allocateIds(1);
+        concerts.put(new Concert(id, "Extra", LocalDateTime.of(2021, 1, 1, 20, 0)));
+        return concerts.remove(id);
+    }
+
+    /**
+     * Reads a page of 100 Concerts, as a ListPage request does.
+     */
+    @Benchmark
+    public void iteratePage(Blackhole blackhole) {
+        Iterator<Concert> page = concerts.iterator(randomId());
+        for (int i = 0; i < 100 && page.hasNext(); i++) {
+            blackhole.consume(page.next());
+        }
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, catalogueSize + 1);
+    }
+}
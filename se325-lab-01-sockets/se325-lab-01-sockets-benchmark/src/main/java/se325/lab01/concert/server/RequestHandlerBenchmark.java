@@ -0,0 +1,109 @@
+package se325.lab01.concert.server;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se325.lab01.concert.benchmark.Catalogue;
+import se325.lab01.concert.benchmark.Quiet;
+import se325.lab01.concert.common.Concert;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResponseMessage;
+import se325.lab01.concert.store.ConcertStore;
+import se325.lab01.concert.store.HeapConcertStore;
+import se325.lab01.concert.store.OffHeapConcertStore;
+
+/**
+ * Measures the server's in-memory store operations, applied through a ConcertRequestHandler without any networking
+ * or encoding, with Concerts held on the heap or off it. Run with -t to have several threads share the store, and
+ * with -prof gc to compare the stores' allocation rates.
+ * <p>
+ * This benchmark lives in the server's package because ConcertRequestHandler isn't public.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestHandlerBenchmark {
+    // Number of Concerts in the store.
+    @Param({"1000", "100000"})
+    private int catalogueSize;
+
+    // Where the Concerts are held: "heap" or "offheap".
+    @Param({"heap", "offheap"})
+    private String store;
+
+    private ConcertRequestHandler handler;
+
+    @Setup
+    public void setUp() {
+        Quiet.start();
+        ConcertStore<Concert> concerts = "offheap".equals(store)
+                ? new OffHeapConcertStore<>(ConcertStoreType.INSTANCE)
+                : new HeapConcertStore<>(ConcertStoreType.INSTANCE);
+        handler = new ConcertRequestHandler(concerts);
+        handler.handle(RequestMessage.makeBatchCreate(Catalogue.newConcerts(catalogueSize)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        Quiet.stop();
+    }
+
+    @Benchmark
+    public ResponseMessage retrieve() {
+        return handler.handle(RequestMessage.makeRetrieve(randomId()));
+    }
+
+    @Benchmark
+    public ResponseMessage update() {
+        long id = randomId();
+        Concert concert = new Concert(id, Catalogue.title((int) id), LocalDateTime.of(2021, 1, 1, 20, 0));
+        return handler.handle(RequestMessage.makeUpdate(concert));
+    }
+
+    /**
+     * Creates a Concert and deletes it again, so that the size of the store stays the same.
+     */
+    @Benchmark
+    public ResponseMessage createAndDelete() {
+        Concert concert = new Concert("Extra", LocalDateTime.of(2021, 1, 1, 20, 0));
+        ResponseMessage created = handler.handle(RequestMessage.makeCreate(concert));
+        return handler.handle(RequestMessage.makeDelete(created.getConcert().getId()));
+    }
+
+    @Benchmark
+    public ResponseMessage listPage() {
+        return handler.handle(RequestMessage.makeListPage(randomId(), 100));
+    }
+
+    @Benchmark
+    public ResponseMessage queryByDate() {
+        LocalDateTime from = LocalDateTime.of(2020, 1, 1, 0, 0).plusDays(randomId());
+        return handler.handle(RequestMessage.makeQueryByDate(from, from.plusDays(30), 100));
+    }
+
+    @Benchmark
+    public ResponseMessage queryByTitle() {
+        return handler.handle(RequestMessage.makeQueryByTitle(Catalogue.title((int) randomId()), 100));
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, catalogueSize + 1);
+    }
+}
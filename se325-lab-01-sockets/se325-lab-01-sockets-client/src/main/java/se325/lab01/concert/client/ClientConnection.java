@@ -0,0 +1,260 @@
+package se325.lab01.concert.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import se325.lab01.concert.common.Encoding;
+import se325.lab01.concert.common.MessageCodec;
+import se325.lab01.concert.common.MessageFrames;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResponseMessage;
+
+/**
+ * A session with the server over the framed protocol, shared by any number of threads.
+ * <p>
+ * Requests are pipelined: each is written as soon as it's sent, tagged with a requestId, and a reader thread
+ * completes the matching future as each response arrives. If the connection fails, every outstanding request fails
+ * with the IOException that broke it, and the connection stays closed.
+ * <p>
+ * A connection can also subscribe to invalidations, which the server pushes among its responses. These are passed
+ * to an InvalidationListener, which is told when the subscription ends, including when the listener itself throws.
+ */
+class ClientConnection {
+
+    /**
+     * Receives the invalidations pushed to a subscribed connection. Called by the connection's reader thread, or by
+     * whichever thread notices that the connection has failed.
+     */
+    interface InvalidationListener {
+        /**
+         * @param ids the ids of changed Concerts, or null if any Concert may have changed.
+         */
+        void invalidated(ClientConnection connection, List<Long> ids);
+
+        /**
+         * Called once, when a subscribed connection fails or is closed. Invalidations may have been missed.
+         */
+        void subscriptionEnded(ClientConnection connection);
+    }
+
+    private static final AtomicInteger READER_COUNT = new AtomicInteger();
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final InputStream in;
+    private final MessageCodec codec;
+
+    private final Map<Long, CompletableFuture<ResponseMessage>> pending;
+    private final AtomicLong nextRequestId;
+    private final AtomicReference<InvalidationListener> listener;
+
+    // Time, from System.nanoTime(), at which a request was last sent.
+    private volatile long lastUsed;
+    private volatile boolean closed;
+
+    private ClientConnection(Socket socket, MessageCodec codec) throws IOException {
+        this.socket = socket;
+        this.codec = codec;
+        out = new BufferedOutputStream(socket.getOutputStream());
+        in = new BufferedInputStream(socket.getInputStream());
+        pending = new ConcurrentHashMap<>();
+        nextRequestId = new AtomicLong();
+        listener = new AtomicReference<>();
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Connects to the server, performs the Hello handshake and starts reading responses.
+     *
+     * @throws IOException if the server can't be reached or rejects the Hello.
+     */
+    static ClientConnection open(InetSocketAddress address, Encoding encoding, int connectTimeoutMillis)
+            throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(address, connectTimeoutMillis);
+            socket.setTcpNoDelay(true);
+
+            // The Hello and its reply are always encoded with Java serialisation.
+            OutputStream helloOut = new BufferedOutputStream(socket.getOutputStream());
+            MessageCodec helloCodec = Encoding.Serialization.getCodec();
+            MessageFrames.writeFrame(helloOut, helloCodec.encodeRequest(RequestMessage.makeHello(encoding)));
+            helloOut.flush();
+            ResponseMessage hello = helloCodec.decodeResponse(MessageFrames.readFrame(socket.getInputStream()));
+            if (hello.getStatus() != ResponseMessage.Status.Success || hello.getEncoding() == null) {
+                throw new IOException("Server rejected Hello");
+            }
+
+            ClientConnection connection = new ClientConnection(socket, hello.getEncoding().getCodec());
+            Thread reader = new Thread(connection::readResponses,
+                    "concert-client-reader-" + READER_COUNT.incrementAndGet());
+            reader.setDaemon(true);
+            reader.start();
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a request, returning a future for its response. The future is completed by the connection's reader
+     * thread, so dependent actions that block should be attached with the async variants of CompletableFuture's
+     * methods.
+     */
+    CompletableFuture<ResponseMessage> send(RequestMessage request) {
+        CompletableFuture<ResponseMessage> response = new CompletableFuture<>();
+        long requestId = nextRequestId.incrementAndGet();
+        request.setRequestId(requestId);
+        pending.put(requestId, response);
+
+        // A connection that failed after the request was added may already have failed every outstanding request.
+        if (closed) {
+            pending.remove(requestId);
+            response.completeExceptionally(new IOException("Connection is closed"));
+            return response;
+        }
+
+        try {
+            byte[] payload = codec.encodeRequest(request);
+            synchronized (out) {
+                MessageFrames.writeFrame(out, payload);
+                out.flush();
+            }
+            lastUsed = System.nanoTime();
+        } catch (IOException e) {
+            fail(e);
+        }
+        return response;
+    }
+
+    /**
+     * Subscribes the connection to invalidations, returning a future for the server's acknowledgement. Invalidations
+     * pushed from then on are passed to the listener.
+     */
+    CompletableFuture<ResponseMessage> subscribe(InvalidationListener listener) {
+        this.listener.set(listener);
+        if (closed) {
+            // The connection may have failed without seeing the listener.
+            endSubscription();
+        }
+        return send(RequestMessage.makeSubscribe());
+    }
+
+    /**
+     * Returns the number of requests sent but not yet answered.
+     */
+    int inFlight() {
+        return pending.size();
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Ends the session with a Goodbye and closes the connection. Requests still outstanding fail.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            byte[] payload = codec.encodeRequest(RequestMessage.makeGoodbye());
+            synchronized (out) {
+                MessageFrames.writeFrame(out, payload);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The connection is being closed anyway.
+        }
+        fail(new IOException("Connection closed"));
+    }
+
+    /**
+     * Closes the connection and fails every outstanding request.
+     */
+    private void fail(IOException cause) {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing further can be done.
+        }
+
+        for (Long requestId : pending.keySet()) {
+            CompletableFuture<ResponseMessage> response = pending.remove(requestId);
+            if (response != null) {
+                response.completeExceptionally(cause);
+            }
+        }
+        endSubscription();
+    }
+
+    private void endSubscription() {
+        InvalidationListener subscribed = listener.getAndSet(null);
+        if (subscribed != null) {
+            subscribed.subscriptionEnded(this);
+        }
+    }
+
+    /**
+     * Run by the reader thread: completes each request's future as its response arrives.
+     */
+    private void readResponses() {
+        try {
+            while (true) {
+                ResponseMessage response = codec.decodeResponse(MessageFrames.readFrame(in));
+                if (response.isInvalidation()) {
+                    deliverInvalidation(response.getInvalidatedIds());
+                    continue;
+                }
+                Long requestId = response.getRequestId();
+                CompletableFuture<ResponseMessage> request = requestId == null ? null : pending.remove(requestId);
+                if (request == null) {
+                    throw new IOException("Unexpected response from server");
+                }
+                request.complete(response);
+            }
+        } catch (IOException e) {
+            fail(closed ? new IOException("Connection closed") : e);
+        } catch (RuntimeException e) {
+            // The response couldn't be decoded, so the stream can't be trusted for the responses that follow it.
+            fail(new IOException("Response could not be read", e));
+        }
+    }
+
+    /**
+     * Passes an invalidation to the subscribed listener, if any. A listener that fails to apply an invalidation has
+     * missed it, so its subscription ends as though the connection had failed; the connection itself carries on.
+     */
+    private void deliverInvalidation(List<Long> ids) {
+        InvalidationListener subscribed = listener.get();
+        if (subscribed == null) {
+            return;
+        }
+        try {
+            subscribed.invalidated(this, ids);
+        } catch (RuntimeException e) {
+            if (listener.compareAndSet(subscribed, null)) {
+                subscribed.subscriptionEnded(this);
+            }
+        }
+    }
+}
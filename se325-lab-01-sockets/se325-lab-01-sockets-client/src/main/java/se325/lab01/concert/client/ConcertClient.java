@@ -0,0 +1,224 @@
+package se325.lab01.concert.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import se325.lab01.concert.common.Concert;
+import se325.lab01.concert.common.Config;
+import se325.lab01.concert.common.Encoding;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResponseMessage;
+
+/**
+ * Asynchronous client for the concert service, for use by any number of threads.
+ * <p>
+ * Each operation sends its request straight away and returns a CompletableFuture for the result. Requests are
+ * pipelined over a small pool of connections that are opened when first needed and kept open between requests, so
+ * an application can have many requests in flight without paying for a TCP connection and Hello handshake each
+ * time. Connections use the framed protocol, and so work with both server engines.
+ * <p>
+ * If a connection fails, the requests outstanding on it complete exceptionally with an IOException; they aren't
+ * retried, since the server may already have applied them. Later requests go to other connections, or to a
+ * replacement. Futures are completed by the threads that read responses, so dependent actions that block should be
+ * attached with the async variants of CompletableFuture's methods.
+ * <p>
+ * Retrieved Concerts may be kept in a near cache (see NearCache), so that repeated Retrieves of popular Concerts are
+ * answered without contacting the server. The cache is kept coherent by invalidations that the server pushes when
+ * Concerts are updated, deleted or cleared, and a client's own changes invalidate its cache as soon as they're
+ * acknowledged.
+ */
+public class ConcertClient implements Closeable {
+    private final ConnectionPool pool;
+
+    // Cache of retrieved Concerts, or null if there's no cache.
+    private final NearCache cache;
+
+    /**
+     * Creates a ConcertClient for the server at a given address, listening on Config.SERVER_PORT, with a near cache
+     * sized by Config.NEAR_CACHE_SIZE and Config.NEAR_CACHE_TTL.
+     */
+    public ConcertClient(InetAddress serverAddress) {
+        this(new InetSocketAddress(serverAddress, Config.SERVER_PORT), Encoding.Binary, Config.CLIENT_CONNECTIONS,
+                Config.NEAR_CACHE_SIZE, Config.NEAR_CACHE_TTL * 1000L);
+    }
+
+    /**
+     * Creates a ConcertClient without a near cache. No connections are opened until the first request.
+     *
+     * @param encoding       the Encoding to request for each connection.
+     * @param maxConnections the maximum number of connections to open to the server.
+     */
+    public ConcertClient(InetSocketAddress serverAddress, Encoding encoding, int maxConnections) {
+        this(serverAddress, encoding, maxConnections, 0, 0);
+    }
+
+    /**
+     * Creates a ConcertClient. No connections are opened until the first request.
+     *
+     * @param encoding       the Encoding to request for each connection.
+     * @param maxConnections the maximum number of connections to open to the server.
+     * @param cacheSize      the maximum number of Concerts to keep in the near cache, or 0 for no cache.
+     * @param cacheTtlMillis how long the near cache may keep a Concert.
+     */
+    public ConcertClient(InetSocketAddress serverAddress, Encoding encoding, int maxConnections, int cacheSize,
+                         long cacheTtlMillis) {
+        this(serverAddress, encoding, maxConnections,
+                cacheSize > 0 ? new NearCache(cacheSize, cacheTtlMillis) : null);
+    }
+
+    private ConcertClient(InetSocketAddress serverAddress, Encoding encoding, int maxConnections, NearCache cache) {
+        this(new ConnectionPool(serverAddress, encoding, maxConnections, Config.HEARTBEAT_INTERVAL * 1000L, cache),
+                cache);
+    }
+
+    /**
+     * Creates a ConcertClient that sends requests through a given pool.
+     *
+     * @param cache the pool's cache, or null if it has none.
+     */
+    ConcertClient(ConnectionPool pool, NearCache cache) {
+        this.pool = pool;
+        this.cache = cache;
+    }
+
+    /**
+     * Creates a Concert, completing with the stored Concert and its assigned id.
+     */
+    public CompletableFuture<Concert> create(Concert concert) {
+        return send(RequestMessage.makeCreate(concert), response -> {
+            checkSuccess(response);
+            return response.getConcert();
+        });
+    }
+
+    /**
+     * Retrieves a Concert, completing with null if there's no Concert with the given id. A cached Concert is
+     * returned in an already completed future.
+     */
+    public CompletableFuture<Concert> retrieve(long id) {
+        if (cache == null) {
+            return send(RequestMessage.makeRetrieve(id),
+                    response -> response.getStatus() == ResponseMessage.Status.Success ? response.getConcert() : null);
+        }
+
+        Concert cached = cache.get(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long generation = cache.generation();
+        return send(RequestMessage.makeRetrieve(id), response -> {
+            if (response.getStatus() != ResponseMessage.Status.Success) {
+                return null;
+            }
+            cache.put(response.getConcert(), generation);
+            return response.getConcert();
+        });
+    }
+
+    /**
+     * Updates a Concert, completing with false if there's no Concert with the given Concert's id.
+     */
+    public CompletableFuture<Boolean> update(Concert concert) {
+        Long id = concert.getId();
+        return send(RequestMessage.makeUpdate(concert), response -> {
+            invalidate(id);
+            return response.getStatus() == ResponseMessage.Status.Success;
+        });
+    }
+
+    /**
+     * Updates a Concert only if it hasn't been updated since it was read, completing with the Concert as stored, with
+     * its new version, or with null if there's no Concert with the given Concert's id. If the Concert has been
+     * updated, the future completes exceptionally with a ConcertConflictException that carries its current state.
+     */
+    public CompletableFuture<Concert> updateIfVersion(Concert concert) {
+        Long id = concert.getId();
+        return send(RequestMessage.makeConditionalUpdate(concert), response -> {
+            invalidate(id);
+            switch (response.getStatus()) {
+                case Success:
+                    return response.getConcert();
+                case Conflict:
+                    throw new ConcertConflictException(response.getConcert());
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * Deletes a Concert, completing with false if there's no Concert with the given id.
+     */
+    public CompletableFuture<Boolean> delete(long id) {
+        return send(RequestMessage.makeDelete(id), response -> {
+            invalidate(id);
+            return response.getStatus() == ResponseMessage.Status.Success;
+        });
+    }
+
+    /**
+     * Retrieves all Concerts.
+     */
+    public CompletableFuture<List<Concert>> list() {
+        return send(RequestMessage.makeList(), response -> {
+            checkSuccess(response);
+            return response.getConcerts();
+        });
+    }
+
+    /**
+     * Deletes all Concerts.
+     */
+    public CompletableFuture<Void> clear() {
+        return send(RequestMessage.makeClear(), response -> {
+            if (cache != null) {
+                cache.invalidate(null);
+            }
+            checkSuccess(response);
+            return null;
+        });
+    }
+
+    /**
+     * Ends the client's sessions and closes its connections. Requests still outstanding complete exceptionally.
+     */
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    /**
+     * Removes a Concert changed by this client from the cache, without waiting for the server's invalidation.
+     */
+    private void invalidate(Long id) {
+        if (cache != null) {
+            cache.invalidate(Collections.singletonList(id));
+        }
+    }
+
+    private <T> CompletableFuture<T> send(RequestMessage request, Function<ResponseMessage, T> result) {
+        try {
+            return pool.acquire().send(request).thenApply(result);
+        } catch (IOException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Throws an UncheckedIOException, failing the request's future, if the server didn't process a request.
+     */
+    private static void checkSuccess(ResponseMessage response) {
+        if (response.getStatus() != ResponseMessage.Status.Success) {
+            throw new UncheckedIOException(new IOException(response.getFailureMessage()));
+        }
+    }
+}
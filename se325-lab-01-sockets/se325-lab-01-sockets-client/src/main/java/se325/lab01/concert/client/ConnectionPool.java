@@ -0,0 +1,266 @@
+package se325.lab01.concert.client;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import se325.lab01.concert.common.Encoding;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResponseMessage;
+
+/**
+ * A fixed number of slots, each holding at most one ClientConnection, that requests are spread across.
+ * <p>
+ * Connections are opened lazily: a request goes to the open connection with the fewest requests in flight, unless
+ * every open connection is busy and a slot is free, in which case another connection is opened. Because
+ * connections pipeline requests, a few of them can carry many concurrent requests.
+ * <p>
+ * A background health check runs every heartbeat interval. It sends a Heartbeat on each connection that's been idle
+ * for that long, which also stops the server from closing the connection as idle, and closes connections that
+ * don't answer within the health check timeout. Slots whose connections have failed are reopened, so that the pool
+ * stays warm after a network problem.
+ * <p>
+ * If the pool has a NearCache, one connection at a time is subscribed to invalidations, which are applied to the
+ * cache. The cache is enabled while a subscription is in place; when the subscribed connection fails, the cache is
+ * disabled and another connection is subscribed.
+ */
+class ConnectionPool {
+    // How long to wait for a connection to the server to be established.
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    // How long a connection has to answer a Heartbeat before it's considered dead.
+    private static final long HEALTH_CHECK_TIMEOUT_MILLIS = 10000;
+
+    private final InetSocketAddress address;
+    private final Encoding encoding;
+    private final AtomicReferenceArray<ClientConnection> slots;
+    private final long heartbeatIntervalNanos;
+
+    private final ScheduledExecutorService healthCheck;
+    private volatile boolean closed;
+
+    // Cache kept coherent by invalidations, or null if there's no cache.
+    private final NearCache cache;
+    private final Subscription subscription;
+
+    // Connection subscribed to invalidations, or null if none is. Changed only while holding the subscription.
+    private volatile ClientConnection subscribed;
+
+    /**
+     * Creates a ConnectionPool and starts its health check. No connections are opened until they're needed.
+     *
+     * @param size                    the maximum number of connections.
+     * @param heartbeatIntervalMillis the interval between health checks, and how long a connection must be idle
+     *                                before it's sent a Heartbeat.
+     * @param cache                   the cache to keep coherent with invalidations, or null if there's no cache.
+     */
+    ConnectionPool(InetSocketAddress address, Encoding encoding, int size, long heartbeatIntervalMillis,
+                   NearCache cache) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        this.address = address;
+        this.encoding = encoding;
+        slots = new AtomicReferenceArray<>(size);
+        heartbeatIntervalNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatIntervalMillis);
+        this.cache = cache;
+        subscription = new Subscription();
+
+        healthCheck = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "concert-client-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthCheck.scheduleWithFixedDelay(this::checkHealth, heartbeatIntervalMillis, heartbeatIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a connection to send a request on, opening one if needed.
+     *
+     * @throws IOException if the pool is closed, or no connection is open and a new one can't be opened.
+     */
+    ClientConnection acquire() throws IOException {
+        if (closed) {
+            throw new IOException("Client is closed");
+        }
+
+        ClientConnection best = null;
+        int freeSlot = -1;
+        for (int i = 0; i < slots.length(); i++) {
+            ClientConnection connection = slots.get(i);
+            if (connection == null || !connection.isOpen()) {
+                if (freeSlot < 0) {
+                    freeSlot = i;
+                }
+            } else if (best == null || connection.inFlight() < best.inFlight()) {
+                best = connection;
+            }
+        }
+
+        if (best == null || (best.inFlight() > 0 && freeSlot >= 0)) {
+            try {
+                best = connect(freeSlot);
+            } catch (IOException e) {
+                if (best == null) {
+                    throw e;
+                }
+            }
+        }
+        ensureSubscribed();
+        return best;
+    }
+
+    /**
+     * Returns the number of open connections.
+     */
+    int openConnections() {
+        int count = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            ClientConnection connection = slots.get(i);
+            if (connection != null && connection.isOpen()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stops the health check and closes every connection. Requests still outstanding fail.
+     */
+    void close() {
+        closed = true;
+        healthCheck.shutdownNow();
+        synchronized (this) {
+            for (int i = 0; i < slots.length(); i++) {
+                ClientConnection connection = slots.getAndSet(i, null);
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Subscribes an open connection to invalidations if the pool has a cache and no connection is subscribed. The
+     * cache is enabled once the server acknowledges the subscription.
+     */
+    private void ensureSubscribed() {
+        ClientConnection current = subscribed;
+        if (cache == null || (current != null && current.isOpen())) {
+            return;
+        }
+        synchronized (subscription) {
+            if (subscribed != null) {
+                if (subscribed.isOpen()) {
+                    return;
+                }
+                cache.disable();
+                subscribed = null;
+            }
+
+            ClientConnection connection = null;
+            for (int i = 0; i < slots.length() && connection == null; i++) {
+                ClientConnection candidate = slots.get(i);
+                if (candidate != null && candidate.isOpen()) {
+                    connection = candidate;
+                }
+            }
+            if (connection == null || closed) {
+                return;
+            }
+
+            final ClientConnection subscribing = connection;
+            subscribed = subscribing;
+            subscribing.subscribe(subscription).whenComplete((response, failure) -> {
+                synchronized (subscription) {
+                    if (subscribed == subscribing && failure == null
+                            && response.getStatus() == ResponseMessage.Status.Success) {
+                        cache.enable();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Opens a connection in a slot, unless another thread has already done so. Connections are opened one at a
+     * time, so that a burst of requests doesn't open the same slot more than once.
+     */
+    private synchronized ClientConnection connect(int slot) throws IOException {
+        ClientConnection connection = slots.get(slot);
+        if (connection != null && connection.isOpen()) {
+            return connection;
+        }
+        if (closed) {
+            throw new IOException("Client is closed");
+        }
+        connection = ClientConnection.open(address, encoding, CONNECT_TIMEOUT_MILLIS);
+        slots.set(slot, connection);
+        return connection;
+    }
+
+    /**
+     * Run by the health check thread: heartbeats idle connections, closing those that don't answer, and reopens
+     * connections that have failed.
+     */
+    private void checkHealth() {
+        long now = System.nanoTime();
+        for (int i = 0; i < slots.length() && !closed; i++) {
+            ClientConnection connection = slots.get(i);
+            if (connection == null) {
+                continue;
+            }
+
+            if (connection.isOpen() && now - connection.getLastUsed() >= heartbeatIntervalNanos) {
+                try {
+                    ResponseMessage response = connection.send(RequestMessage.makeHeartbeat())
+                            .get(HEALTH_CHECK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (response.getStatus() != ResponseMessage.Status.Success) {
+                        connection.close();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    connection.close();
+                }
+            }
+
+            if (!connection.isOpen()) {
+                try {
+                    connect(i);
+                } catch (IOException e) {
+                    // Leave the slot to be reopened by the next request or health check.
+                }
+            }
+        }
+        if (!closed) {
+            ensureSubscribed();
+        }
+    }
+
+    /**
+     * Applies invalidations to the cache, and disables it when the subscribed connection fails.
+     */
+    private final class Subscription implements ClientConnection.InvalidationListener {
+        @Override
+        public void invalidated(ClientConnection connection, List<Long> ids) {
+            cache.invalidate(ids);
+        }
+
+        @Override
+        public void subscriptionEnded(ClientConnection connection) {
+            synchronized (this) {
+                if (subscribed == connection) {
+                    cache.disable();
+                    subscribed = null;
+                }
+            }
+        }
+    }
+}
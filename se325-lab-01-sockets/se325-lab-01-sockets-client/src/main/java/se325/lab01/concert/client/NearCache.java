@@ -0,0 +1,175 @@
+package se325.lab01.concert.client;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import se325.lab01.concert.common.Concert;
+
+/**
+ * A bounded cache of Concerts, keyed by id, that a ConcertClient answers Retrieve requests from.
+ * <p>
+ * The cache is kept coherent by invalidations pushed from the server, and is only enabled while a connection is
+ * subscribed to them; whenever the subscription is lost, the cache is cleared and disabled until a new one is
+ * acknowledged. Entries also expire after a fixed time, which bounds how stale an entry can be should an
+ * invalidation be missed anyway. Once the cache is full, the oldest entries are evicted to make room.
+ * <p>
+ * A Retrieve response may be overtaken by an invalidation of the Concert it carries, e.g. when the two travel on
+ * different connections. So the cache counts invalidations in a generation number, and a response is only cached if
+ * no invalidation has arrived since its request was sent.
+ * <p>
+ * Lookups don't lock, and return copies so that callers can't change the cached Concerts.
+ */
+class NearCache {
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final Map<Long, Entry> entries;
+
+    // Ids in the order they were cached, used to evict the oldest entries. An id may appear more than once if it
+    // was invalidated and cached again, in which case its entry may be evicted early.
+    private final Queue<Long> insertionOrder;
+    private final AtomicInteger queued;
+
+    // Number of invalidations received.
+    private final AtomicLong generation;
+    private volatile boolean enabled;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    /**
+     * Creates a NearCache, initially disabled.
+     *
+     * @param maxSize   the maximum number of Concerts to hold.
+     * @param ttlMillis how long a Concert may be held before it's reloaded.
+     */
+    NearCache(int maxSize, long ttlMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        entries = new ConcurrentHashMap<>();
+        insertionOrder = new ConcurrentLinkedQueue<>();
+        queued = new AtomicInteger();
+        generation = new AtomicLong();
+        hits = new LongAdder();
+        misses = new LongAdder();
+    }
+
+    /**
+     * Returns a copy of the cached Concert with a given id, or null if it isn't cached or has expired.
+     */
+    Concert get(long id) {
+        Entry entry = enabled ? entries.get(id) : null;
+        if (entry != null && System.nanoTime() - entry.expiresAt >= 0) {
+            entries.remove(id, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copy(entry.concert);
+    }
+
+    /**
+     * Returns the current generation, to be passed to put() with the response to a request sent now.
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches a copy of a retrieved Concert, unless the cache has been invalidated since generation().
+     */
+    void put(Concert concert, long requestGeneration) {
+        if (!enabled || generation.get() != requestGeneration) {
+            return;
+        }
+        Entry entry = new Entry(copy(concert), System.nanoTime() + ttlNanos);
+        Long id = concert.getId();
+        entries.put(id, entry);
+        insertionOrder.add(id);
+        if (queued.incrementAndGet() > maxSize) {
+            evictOldest();
+        }
+
+        // An invalidation that arrived while the entry was being added may have missed it.
+        if (!enabled || generation.get() != requestGeneration) {
+            entries.remove(id, entry);
+        }
+    }
+
+    /**
+     * Removes the Concerts with the given ids, or every Concert if ids is null.
+     */
+    void invalidate(List<Long> ids) {
+        generation.incrementAndGet();
+        if (ids == null) {
+            entries.clear();
+        } else {
+            for (Long id : ids) {
+                entries.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Empties the cache and starts caching, once a subscription to invalidations has been acknowledged.
+     */
+    void enable() {
+        invalidate(null);
+        enabled = true;
+    }
+
+    /**
+     * Stops caching and empties the cache, when invalidations may have been missed.
+     */
+    void disable() {
+        enabled = false;
+        invalidate(null);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    private void evictOldest() {
+        Long oldest = insertionOrder.poll();
+        if (oldest != null) {
+            queued.decrementAndGet();
+            entries.remove(oldest);
+        }
+    }
+
+    private static Concert copy(Concert concert) {
+        return new Concert(concert.getId(), concert.getTitle(), concert.getDate(), concert.getVersion());
+    }
+
+    private static final class Entry {
+        private final Concert concert;
+        private final long expiresAt;
+
+        Entry(Concert concert, long expiresAt) {
+            this.concert = concert;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,14 +1,24 @@
 package se325.lab01.concert.client;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.After;
 import org.junit.Before;
@@ -17,16 +27,29 @@ import org.junit.Test;
 
 import se325.lab01.concert.common.Concert;
 import se325.lab01.concert.common.Config;
+import se325.lab01.concert.common.Encoding;
+import se325.lab01.concert.common.MessageCodec;
+import se325.lab01.concert.common.MessageFrames;
 import se325.lab01.concert.common.RequestMessage;
 import se325.lab01.concert.common.ResponseMessage;
 
 public class Client {
 
+    // Variant of the protocol to use: "stream" (the default) or "framed". The framed protocol is required when the
+    // server is running the non-blocking engine.
+    private static final boolean FRAMED = "framed".equals(System.getProperty("se325.transport"));
+
+    // Encoding to request when using the framed protocol: "Serialization" (the default) or "Binary".
+    private static final Encoding ENCODING = Encoding.valueOf(System.getProperty("se325.encoding", "Serialization"));
+
     private static InetAddress serverAddress;
 
     private Socket socket;
     private ObjectInputStream in;
     private ObjectOutputStream out;
+    private InputStream framedIn;
+    private OutputStream framedOut;
+    private MessageCodec codec;
 
     /**
      * One time setup operation to create an INetAddress object that's required to create a Socket connection.
@@ -47,14 +70,28 @@ public class Client {
     @Before
     public void createConnection() throws IOException, ClassNotFoundException {
         socket = new Socket(serverAddress, Config.SERVER_PORT);
-        out = new ObjectOutputStream(socket.getOutputStream());
-        out.flush();
-        in = new ObjectInputStream(socket.getInputStream());
+        RequestMessage request;
+        if (FRAMED) {
+            framedOut = new BufferedOutputStream(socket.getOutputStream());
+            framedIn = new BufferedInputStream(socket.getInputStream());
+            codec = Encoding.Serialization.getCodec();
+            request = RequestMessage.makeHello(ENCODING);
+        } else {
+            out = new ObjectOutputStream(socket.getOutputStream());
+            out.flush();
+            in = new ObjectInputStream(socket.getInputStream());
+            request = RequestMessage.makeHello();
+        }
 
-        RequestMessage request = RequestMessage.makeHello();
-        out.writeObject(request);
-        ResponseMessage response = (ResponseMessage) in.readObject();
+        send(request);
+        ResponseMessage response = receive();
         assertEquals(ResponseMessage.Status.Success, response.getStatus());
+
+        if (FRAMED) {
+            // The server confirms the Encoding, which applies to all further messages.
+            assertEquals(ENCODING, response.getEncoding());
+            codec = response.getEncoding().getCodec();
+        }
     }
 
     /**
@@ -66,14 +103,14 @@ public class Client {
     public void destroyConnection() throws IOException, ClassNotFoundException {
         // Send the server a CLEAR command to clear all Concert entries.
         RequestMessage request = RequestMessage.makeClear();
-        out.writeObject(request);
+        send(request);
 
         // Wait for confirmation.
-        in.readObject();
+        receive();
 
         // Close the communication session with the server.
         request = RequestMessage.makeGoodbye();
-        out.writeObject(request);
+        send(request);
         socket.close();
     }
 
@@ -85,8 +122,8 @@ public class Client {
         Concert newConcert = new Concert("One Night of Queen", LocalDateTime.of(2017, 8, 4, 20, 0));
         RequestMessage request = RequestMessage.makeCreate(newConcert);
 
-        out.writeObject(request);
-        ResponseMessage response = (ResponseMessage) in.readObject();
+        send(request);
+        ResponseMessage response = receive();
 
         assertEquals(ResponseMessage.Status.Success, response.getStatus());
     }
@@ -100,23 +137,49 @@ public class Client {
         Concert newConcert = new Concert("The Selecter and the Beat", LocalDateTime.of(2018, 1, 25, 20, 0));
         RequestMessage request = RequestMessage.makeCreate(newConcert);
 
-        out.writeObject(request);
+        send(request);
 
         // Read the response.
-        ResponseMessage response = (ResponseMessage) in.readObject();
+        ResponseMessage response = receive();
         Long id = response.getId();
         newConcert = response.getConcert();
         assertEquals(ResponseMessage.Status.Success, response.getStatus());
 
         // Make a Retrieve request.
         request = RequestMessage.makeRetrieve(id);
-        out.writeObject(request);
+        send(request);
 
         // Read the response status.
-        response = (ResponseMessage) in.readObject();
+        response = receive();
         Concert retrievedConcert = response.getConcert();
         assertEquals(ResponseMessage.Status.Success, response.getStatus());
         assertEquals(retrievedConcert, newConcert);
+        assertEquals(newConcert.getDate(), retrievedConcert.getDate());
+    }
+
+    /**
+     * Tests that every field of a Concert survives the round trip through the server, including titles outside
+     * ASCII and dates before 1970 or with fractions of a second.
+     */
+    @Test
+    public void testRetrievePreservesFields() throws IOException, ClassNotFoundException {
+        List<Concert> concerts = new ArrayList<>();
+        concerts.add(new Concert("Sigur R\u00f3s \u2014 \u5929\u7a7a",
+                LocalDateTime.of(2018, 1, 25, 20, 0, 30, 123456789)));
+        concerts.add(new Concert("", LocalDateTime.of(1969, 12, 31, 23, 59, 59, 1)));
+        concerts.add(new Concert("Far Future", LocalDateTime.of(9999, 12, 31, 23, 59)));
+
+        for (Concert concert : concerts) {
+            send(RequestMessage.makeCreate(concert));
+            Concert created = receive().getConcert();
+            send(RequestMessage.makeRetrieve(created.getId()));
+            Concert retrieved = receive().getConcert();
+
+            assertEquals(created.getId(), retrieved.getId());
+            assertEquals(concert.getTitle(), retrieved.getTitle());
+            assertEquals(concert.getDate(), retrieved.getDate());
+            assertEquals(created.getVersion(), retrieved.getVersion());
+        }
     }
 
     /**
@@ -127,10 +190,10 @@ public class Client {
     public void testFindWithoutExistingId() throws IOException, ClassNotFoundException {
         // Make a Retrieve request.
         RequestMessage request = RequestMessage.makeRetrieve(-1L);
-        out.writeObject(request);
+        send(request);
 
         // Read the response status.
-        ResponseMessage response = (ResponseMessage) in.readObject();
+        ResponseMessage response = receive();
         assertEquals(ResponseMessage.Status.Failure, response.getStatus());
     }
 
@@ -143,10 +206,10 @@ public class Client {
         Concert concert = new Concert("Spend the Night with Alice Cooper", LocalDateTime.of(2017, 10, 27, 19, 0));
         RequestMessage request = RequestMessage.makeCreate(concert);
 
-        out.writeObject(request);
+        send(request);
 
         // Read the response.
-        ResponseMessage response = (ResponseMessage) in.readObject();
+        ResponseMessage response = receive();
         concert = response.getConcert();
         assertEquals(ResponseMessage.Status.Success, response.getStatus());
 
@@ -154,10 +217,45 @@ public class Client {
         concert.setDate(LocalDateTime.of(2017, 10, 28, 19, 0));
 
         request = RequestMessage.makeUpdate(concert);
-        out.writeObject(request);
+        send(request);
 
-        response = (ResponseMessage) in.readObject();
+        response = receive();
+        assertEquals(ResponseMessage.Status.Success, response.getStatus());
+    }
+
+    /**
+     * Tests that a ConditionalUpdate succeeds with the version that was read, returning the next version, and that a
+     * second ConditionalUpdate with the now stale version is rejected with the stored Concert.
+     */
+    @Test
+    public void testConditionalUpdate() throws IOException, ClassNotFoundException {
+        send(RequestMessage.makeCreate(new Concert("Blondie", LocalDateTime.of(2017, 11, 3, 20, 0))));
+        ResponseMessage response = receive();
+        Concert concert = response.getConcert();
+        assertEquals(0, concert.getVersion());
+
+        Concert first = new Concert(concert.getId(), "Blondie and Cyndi Lauper", concert.getDate(),
+                concert.getVersion());
+        send(RequestMessage.makeConditionalUpdate(first));
+        response = receive();
         assertEquals(ResponseMessage.Status.Success, response.getStatus());
+        assertEquals(1, response.getConcert().getVersion());
+        assertEquals("Blondie and Cyndi Lauper", response.getConcert().getTitle());
+
+        Concert second = new Concert(concert.getId(), "Cyndi Lauper", concert.getDate(), concert.getVersion());
+        send(RequestMessage.makeConditionalUpdate(second));
+        response = receive();
+        assertEquals(ResponseMessage.Status.Conflict, response.getStatus());
+        assertEquals(1, response.getConcert().getVersion());
+        assertEquals("Blondie and Cyndi Lauper", response.getConcert().getTitle());
+
+        // A plain Update also moves the version on.
+        send(RequestMessage.makeUpdate(second));
+        receive();
+        send(RequestMessage.makeRetrieve(concert.getId()));
+        response = receive();
+        assertEquals(2, response.getConcert().getVersion());
+        assertEquals("Cyndi Lauper", response.getConcert().getTitle());
     }
 
     /**
@@ -169,18 +267,18 @@ public class Client {
         Concert concert = new Concert("The Selecter and the Beat", LocalDateTime.of(2018, 1, 25, 20, 0));
         RequestMessage request = RequestMessage.makeCreate(concert);
 
-        out.writeObject(request);
+        send(request);
 
         // Read the response.
-        ResponseMessage response = (ResponseMessage) in.readObject();
+        ResponseMessage response = receive();
         Long id = response.getId();
         assertEquals(ResponseMessage.Status.Success, response.getStatus());
 
         // Attempt to delete the Concert.
         request = RequestMessage.makeDelete(id);
-        out.writeObject(request);
+        send(request);
 
-        response = (ResponseMessage) in.readObject();
+        response = receive();
         assertEquals(ResponseMessage.Status.Success, response.getStatus());
     }
 
@@ -191,12 +289,30 @@ public class Client {
     @Test
     public void testDeleteWithInvalidId() throws IOException, ClassNotFoundException {
         RequestMessage request = RequestMessage.makeDelete(20L);
-        out.writeObject(request);
+        send(request);
 
-        ResponseMessage response = (ResponseMessage) in.readObject();
+        ResponseMessage response = receive();
         assertEquals(ResponseMessage.Status.Failure, response.getStatus());
     }
 
+    /**
+     * Tests that the server answers an Update whose Concert has no id with a Failure, as it would for an unknown id,
+     * and that the session carries on. The request factories reject a missing id, so the id is cleared afterwards,
+     * as a client that builds its own messages might.
+     */
+    @Test
+    public void testUpdateWithoutId() throws IOException, ClassNotFoundException {
+        Concert concert = new Concert(1L, "Nobody", LocalDateTime.of(2018, 1, 25, 20, 0));
+        RequestMessage request = RequestMessage.makeUpdate(concert);
+        concert.setId(null);
+        send(request);
+
+        assertEquals(ResponseMessage.Status.Failure, receive().getStatus());
+
+        send(RequestMessage.makeList());
+        assertEquals(ResponseMessage.Status.Success, receive().getStatus());
+    }
+
     /**
      * Tests that the server returns an empty List when it doesn't have any
      * Concerts.
@@ -204,9 +320,9 @@ public class Client {
     @Test
     public void testListWithEmptyServer() throws IOException, ClassNotFoundException {
         RequestMessage request = RequestMessage.makeList();
-        out.writeObject(request);
+        send(request);
 
-        ResponseMessage response = (ResponseMessage) in.readObject();
+        ResponseMessage response = receive();
         assertEquals(ResponseMessage.Status.Success, response.getStatus());
         assertEquals(0, response.getConcerts().size());
     }
@@ -225,18 +341,318 @@ public class Client {
             System.out.println("Null in client");
         }
 
-        out.writeObject(request);
+        send(request);
 
         // Read the response.
-        ResponseMessage response = (ResponseMessage) in.readObject();
+        ResponseMessage response = receive();
         assertEquals(ResponseMessage.Status.Success, response.getStatus());
 
         request = RequestMessage.makeList();
-        out.writeObject(request);
+        send(request);
+
+        response = receive();
+        assertEquals(ResponseMessage.Status.Success, response.getStatus());
+        assertEquals(1, response.getConcerts().size());
+    }
+
+    /**
+     * Tests that the server handles pipelined requests - i.e. several requests sent before reading any responses -
+     * responding to each with the request's correlation id.
+     */
+    @Test
+    public void testPipelinedCreates() throws IOException, ClassNotFoundException {
+        final int numberOfConcerts = 100;
+
+        for (long i = 0; i < numberOfConcerts; i++) {
+            Concert concert = new Concert("Pipelined concert " + i, LocalDateTime.of(2018, 1, 25, 20, 0));
+            send(RequestMessage.makeCreate(concert).setRequestId(i));
+        }
+        send(RequestMessage.makeList().setRequestId((long) numberOfConcerts));
+
+        for (long i = 0; i < numberOfConcerts; i++) {
+            ResponseMessage response = receive();
+            assertEquals(ResponseMessage.Status.Success, response.getStatus());
+            assertEquals(Long.valueOf(i), response.getRequestId());
+            assertEquals("Pipelined concert " + i, response.getConcert().getTitle());
+        }
+        ResponseMessage response = receive();
+        assertEquals(Long.valueOf(numberOfConcerts), response.getRequestId());
+        assertEquals(numberOfConcerts, response.getConcerts().size());
+    }
+
+    /**
+     * Tests that the server creates a batch of Concerts in a single request, assigning each a unique id.
+     */
+    @Test
+    public void testBatchCreate() throws IOException, ClassNotFoundException {
+        List<Concert> batch = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            batch.add(new Concert("Batched concert " + i, LocalDateTime.of(2018, 1, 25, 20, 0)));
+        }
+        send(RequestMessage.makeBatchCreate(batch));
+
+        ResponseMessage response = receive();
+        assertEquals(ResponseMessage.Status.Success, response.getStatus());
+        assertEquals(batch.size(), response.getConcerts().size());
+
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Concert created = response.getConcerts().get(i);
+            assertEquals("Batched concert " + i, created.getTitle());
+            ids.add(created.getId());
+        }
+        assertEquals(batch.size(), ids.size());
+
+        send(RequestMessage.makeList());
+        response = receive();
+        assertEquals(batch.size(), response.getConcerts().size());
+    }
+
+    /**
+     * Tests that the server processes each item of batch Update and Delete requests, reporting the ids of any
+     * Concerts that don't exist.
+     */
+    @Test
+    public void testBatchUpdateAndDelete() throws IOException, ClassNotFoundException {
+        List<Concert> batch = new ArrayList<>();
+        batch.add(new Concert("The Selecter and the Beat", LocalDateTime.of(2018, 1, 25, 20, 0)));
+        batch.add(new Concert("One Night of Queen", LocalDateTime.of(2017, 8, 4, 20, 0)));
+        send(RequestMessage.makeBatchCreate(batch));
+        List<Concert> created = receive().getConcerts();
+
+        // Update both Concerts, plus one that doesn't exist.
+        List<Concert> updates = new ArrayList<>();
+        for (Concert concert : created) {
+            updates.add(new Concert(concert.getId(), concert.getTitle(), concert.getDate().plusDays(1)));
+        }
+        updates.add(new Concert(-1L, "Missing", LocalDateTime.of(2018, 1, 25, 20, 0)));
+        send(RequestMessage.makeBatchUpdate(updates));
+
+        ResponseMessage response = receive();
+        assertEquals(ResponseMessage.Status.Failure, response.getStatus());
+        assertEquals(Collections.singletonList(-1L), response.getFailedIds());
+
+        send(RequestMessage.makeRetrieve(created.get(0).getId()));
+        assertEquals(LocalDateTime.of(2018, 1, 26, 20, 0), receive().getConcert().getDate());
+
+        // Delete both Concerts.
+        List<Long> ids = new ArrayList<>();
+        for (Concert concert : created) {
+            ids.add(concert.getId());
+        }
+        send(RequestMessage.makeBatchDelete(ids));
+
+        response = receive();
+        assertEquals(ResponseMessage.Status.Success, response.getStatus());
+        assertTrue(response.getFailedIds().isEmpty());
+
+        send(RequestMessage.makeList());
+        assertEquals(0, receive().getConcerts().size());
+    }
+
+    /**
+     * Tests that the server rejects a batch with a missing Concert, or an update without an id, without processing
+     * any of it, and that the session carries on.
+     */
+    @Test
+    public void testBatchWithMissingItems() throws IOException, ClassNotFoundException {
+        List<Concert> batch = new ArrayList<>();
+        batch.add(new Concert("The Selecter and the Beat", LocalDateTime.of(2018, 1, 25, 20, 0)));
+        batch.add(new Concert("One Night of Queen", LocalDateTime.of(2017, 8, 4, 20, 0)));
+        RequestMessage request = RequestMessage.makeBatchCreate(batch);
+        // The request factory refuses a missing Concert, so one is removed after making the request.
+        request.getConcerts().set(1, null);
+        send(request);
+
+        ResponseMessage response = receive();
+        assertEquals(ResponseMessage.Status.Failure, response.getStatus());
+        send(RequestMessage.makeList());
+        assertEquals(0, receive().getConcerts().size());
+
+        send(RequestMessage.makeBatchCreate(batch));
+        List<Concert> created = receive().getConcerts();
+        List<Concert> updates = new ArrayList<>();
+        for (Concert concert : created) {
+            updates.add(new Concert(concert.getId(), "Updated", concert.getDate()));
+        }
+        request = RequestMessage.makeBatchUpdate(updates);
+        updates.get(1).setId(null);
+        send(request);
+
+        response = receive();
+        assertEquals(ResponseMessage.Status.Failure, response.getStatus());
+        send(RequestMessage.makeRetrieve(created.get(0).getId()));
+        assertEquals(created.get(0).getTitle(), receive().getConcert().getTitle());
+    }
+
+    /**
+     * Tests that the server returns Concerts a page at a time, following the cursor returned with each page.
+     */
+    @Test
+    public void testListPages() throws IOException, ClassNotFoundException {
+        createConcerts(25);
+
+        List<Concert> listed = new ArrayList<>();
+        Long cursor = null;
+        int pages = 0;
+        do {
+            send(RequestMessage.makeListPage(cursor, 10));
+            ResponseMessage response = receive();
+            assertEquals(ResponseMessage.Status.Success, response.getStatus());
+            assertTrue(response.getConcerts().size() <= 10);
+
+            listed.addAll(response.getConcerts());
+            cursor = response.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(25, listed.size());
+        assertEquals(25, new HashSet<>(listed).size());
+    }
+
+    /**
+     * Tests that the server streams all Concerts back as a series of chunks, the last of which has no cursor.
+     */
+    @Test
+    public void testListStream() throws IOException, ClassNotFoundException {
+        createConcerts(25);
+
+        send(RequestMessage.makeListStream(10).setRequestId(1L));
+        send(RequestMessage.makeList().setRequestId(2L));
+
+        List<Concert> streamed = new ArrayList<>();
+        ResponseMessage response;
+        do {
+            response = receive();
+            assertEquals(Long.valueOf(1), response.getRequestId());
+            streamed.addAll(response.getConcerts());
+        } while (response.getNextCursor() != null);
+        assertEquals(25, streamed.size());
+
+        // Requests following a stream are answered once the stream has finished.
+        response = receive();
+        assertEquals(Long.valueOf(2), response.getRequestId());
+        assertEquals(25, response.getConcerts().size());
+    }
 
-        response = (ResponseMessage) in.readObject();
+    /**
+     * Tests that the server finds Concerts within a date range, and that its results reflect updates and deletes.
+     */
+    @Test
+    public void testQueryByDate() throws IOException, ClassNotFoundException {
+        List<Concert> batch = new ArrayList<>();
+        for (int day = 1; day <= 10; day++) {
+            batch.add(new Concert("Concert on day " + day, LocalDateTime.of(2018, 1, day, 20, 0)));
+        }
+        send(RequestMessage.makeBatchCreate(batch));
+        List<Concert> created = receive().getConcerts();
+
+        send(RequestMessage.makeQueryByDate(LocalDateTime.of(2018, 1, 3, 0, 0), LocalDateTime.of(2018, 1, 6, 0, 0), 100));
+        ResponseMessage response = receive();
         assertEquals(ResponseMessage.Status.Success, response.getStatus());
+        assertEquals(3, response.getConcerts().size());
+        assertEquals("Concert on day 3", response.getConcerts().get(0).getTitle());
+
+        // Move one Concert out of the range and delete another.
+        Concert moved = created.get(2);
+        moved.setDate(LocalDateTime.of(2018, 2, 1, 20, 0));
+        send(RequestMessage.makeUpdate(moved));
+        receive();
+        send(RequestMessage.makeDelete(created.get(3).getId()));
+        receive();
+
+        send(RequestMessage.makeQueryByDate(LocalDateTime.of(2018, 1, 3, 0, 0), LocalDateTime.of(2018, 1, 6, 0, 0), 100));
+        response = receive();
         assertEquals(1, response.getConcerts().size());
+        assertEquals("Concert on day 5", response.getConcerts().get(0).getTitle());
     }
 
-}
\ No newline at end of file
+    /**
+     * Tests that the server finds Concerts by title prefix, ignoring case.
+     */
+    @Test
+    public void testQueryByTitle() throws IOException, ClassNotFoundException {
+        List<Concert> batch = new ArrayList<>();
+        batch.add(new Concert("The Selecter and the Beat", LocalDateTime.of(2018, 1, 25, 20, 0)));
+        batch.add(new Concert("The Smiths", LocalDateTime.of(2018, 1, 26, 20, 0)));
+        batch.add(new Concert("One Night of Queen", LocalDateTime.of(2017, 8, 4, 20, 0)));
+        send(RequestMessage.makeBatchCreate(batch));
+        receive();
+
+        send(RequestMessage.makeQueryByTitle("the s", 100));
+        ResponseMessage response = receive();
+        assertEquals(ResponseMessage.Status.Success, response.getStatus());
+        assertEquals(2, response.getConcerts().size());
+        assertEquals("The Selecter and the Beat", response.getConcerts().get(0).getTitle());
+        assertEquals("The Smiths", response.getConcerts().get(1).getTitle());
+
+        send(RequestMessage.makeQueryByTitle("The Sm", 100));
+        assertEquals(1, receive().getConcerts().size());
+
+        send(RequestMessage.makeQueryByTitle("Queen", 100));
+        assertEquals(0, receive().getConcerts().size());
+    }
+
+    /**
+     * Tests that the server acknowledges a Heartbeat and keeps the session open.
+     */
+    @Test
+    public void testHeartbeat() throws IOException, ClassNotFoundException {
+        send(RequestMessage.makeHeartbeat());
+        assertEquals(ResponseMessage.Status.Success, receive().getStatus());
+
+        send(RequestMessage.makeHeartbeat());
+        assertEquals(ResponseMessage.Status.Success, receive().getStatus());
+    }
+
+    /**
+     * Tests that a long session, whose responses repeatedly carry the same Concert, always sees its latest state.
+     */
+    @Test
+    public void testRepeatedRetrievesSeeUpdates() throws IOException, ClassNotFoundException {
+        send(RequestMessage.makeCreate(new Concert("Version 0", LocalDateTime.of(2018, 1, 25, 20, 0))));
+        Long id = receive().getId();
+
+        for (int i = 1; i <= 40; i++) {
+            send(RequestMessage.makeUpdate(new Concert(id, "Version " + i, LocalDateTime.of(2018, 1, 25, 20, 0))));
+            assertEquals(ResponseMessage.Status.Success, receive().getStatus());
+
+            send(RequestMessage.makeRetrieve(id));
+            assertEquals("Version " + i, receive().getConcert().getTitle());
+            send(RequestMessage.makeList());
+            assertEquals("Version " + i, receive().getConcerts().get(0).getTitle());
+        }
+    }
+
+    private void createConcerts(int numberOfConcerts) throws IOException, ClassNotFoundException {
+        List<Concert> batch = new ArrayList<>();
+        for (int i = 0; i < numberOfConcerts; i++) {
+            batch.add(new Concert("Concert " + i, LocalDateTime.of(2018, 1, 25, 20, 0)));
+        }
+        send(RequestMessage.makeBatchCreate(batch));
+        assertEquals(ResponseMessage.Status.Success, receive().getStatus());
+    }
+
+    /**
+     * Sends a request to the server using the selected variant of the protocol.
+     */
+    private void send(RequestMessage request) throws IOException {
+        if (FRAMED) {
+            MessageFrames.writeFrame(framedOut, codec.encodeRequest(request));
+            framedOut.flush();
+        } else {
+            out.writeObject(request);
+        }
+    }
+
+    /**
+     * Blocks until the server's next response arrives and returns it.
+     */
+    private ResponseMessage receive() throws IOException, ClassNotFoundException {
+        if (FRAMED) {
+            return codec.decodeResponse(MessageFrames.readFrame(framedIn));
+        }
+        return (ResponseMessage) in.readObject();
+    }
+}
@@ -0,0 +1,185 @@
+package se325.lab01.concert.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import se325.lab01.concert.common.Concert;
+import se325.lab01.concert.common.Encoding;
+import se325.lab01.concert.common.MessageCodec;
+import se325.lab01.concert.common.MessageFrames;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResponseMessage;
+
+/**
+ * Tests that a ClientConnection's reader thread survives, or fails cleanly, when a response can't be decoded or an
+ * InvalidationListener throws. The server is played by the test, over a loopback socket.
+ */
+public class ClientConnectionTest {
+
+    // A nanosecond value that's easy to find in an encoded response.
+    private static final int MARKER_NANOS = 0x3A5A5A5A;
+
+    private static final MessageCodec CODEC = Encoding.Binary.getCodec();
+
+    private ExecutorService executor;
+    private ServerSocket serverSocket;
+    private Socket server;
+    private InputStream serverIn;
+    private OutputStream serverOut;
+    private ClientConnection connection;
+
+    @Before
+    public void connect() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+        // The client blocks in open() until the Hello is answered, so the server side runs on another thread.
+        Future<Socket> accepted = executor.submit(() -> {
+            Socket socket = serverSocket.accept();
+            MessageCodec helloCodec = Encoding.Serialization.getCodec();
+            helloCodec.decodeRequest(MessageFrames.readFrame(socket.getInputStream()));
+            OutputStream out = socket.getOutputStream();
+            ResponseMessage hello = ResponseMessage.makeHelloResponse(Encoding.Binary);
+            MessageFrames.writeFrame(out, helloCodec.encodeResponse(hello));
+            out.flush();
+            return socket;
+        });
+
+        connection = ClientConnection.open(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()),
+                Encoding.Binary, 5000);
+        server = accepted.get(5, TimeUnit.SECONDS);
+        serverIn = server.getInputStream();
+        serverOut = new BufferedOutputStream(server.getOutputStream());
+    }
+
+    @After
+    public void disconnect() throws IOException {
+        connection.close();
+        server.close();
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Tests that a response that fails to decode with a RuntimeException fails every outstanding request, rather
+     * than leaving them to wait forever.
+     */
+    @Test
+    public void testUndecodableResponseFailsOutstandingRequests() throws Exception {
+        CompletableFuture<ResponseMessage> first = connection.send(RequestMessage.makeRetrieve(1L));
+        CompletableFuture<ResponseMessage> second = connection.send(RequestMessage.makeRetrieve(2L));
+        RequestMessage request = receiveRequest();
+        receiveRequest();
+
+        // An out of range nanosecond field makes decoding the Concert's date throw a DateTimeException.
+        Concert concert = new Concert(1L, "Damaged", LocalDateTime.of(2018, 1, 25, 20, 0, 0, MARKER_NANOS));
+        ResponseMessage response = ResponseMessage.makeSuccessfulRetrieveResponse(concert);
+        response.setRequestId(request.getRequestId());
+        byte[] payload = CODEC.encodeResponse(response);
+        replaceInt(payload, MARKER_NANOS, -1);
+        MessageFrames.writeFrame(serverOut, payload);
+        serverOut.flush();
+
+        assertFailed(first);
+        assertFailed(second);
+        assertFalse(connection.isOpen());
+    }
+
+    /**
+     * Tests that a listener that throws has its subscription ended, while the connection carries on serving
+     * requests.
+     */
+    @Test
+    public void testFailingListenerEndsOnlyItsSubscription() throws Exception {
+        CountDownLatch ended = new CountDownLatch(1);
+        ClientConnection.InvalidationListener listener = new ClientConnection.InvalidationListener() {
+            @Override
+            public void invalidated(ClientConnection connection, List<Long> ids) {
+                throw new IllegalStateException("Listener failed");
+            }
+
+            @Override
+            public void subscriptionEnded(ClientConnection connection) {
+                ended.countDown();
+            }
+        };
+        CompletableFuture<ResponseMessage> subscribed = connection.subscribe(listener);
+        reply(receiveRequest(), ResponseMessage.makeSuccessfulResponse());
+        assertEquals(ResponseMessage.Status.Success, subscribed.get(5, TimeUnit.SECONDS).getStatus());
+
+        send(ResponseMessage.makeInvalidation(Collections.singletonList(1L)));
+        assertTrue(ended.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<ResponseMessage> listed = connection.send(RequestMessage.makeList());
+        reply(receiveRequest(), ResponseMessage.makeListResponse(Collections.emptyList()));
+        assertEquals(ResponseMessage.Status.Success, listed.get(5, TimeUnit.SECONDS).getStatus());
+        assertTrue(connection.isOpen());
+    }
+
+    private RequestMessage receiveRequest() throws IOException {
+        return CODEC.decodeRequest(MessageFrames.readFrame(serverIn));
+    }
+
+    private void reply(RequestMessage request, ResponseMessage response) throws IOException {
+        response.setRequestId(request.getRequestId());
+        send(response);
+    }
+
+    private void send(ResponseMessage message) throws IOException {
+        MessageFrames.writeFrame(serverOut, CODEC.encodeResponse(message));
+        serverOut.flush();
+    }
+
+    private static void assertFailed(CompletableFuture<ResponseMessage> response) throws Exception {
+        try {
+            response.get(5, TimeUnit.SECONDS);
+            fail("Request succeeded");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    /**
+     * Overwrites the first big-endian occurrence of one int in a payload with another.
+     */
+    private static void replaceInt(byte[] payload, int find, int replacement) {
+        for (int i = 0; i + 4 <= payload.length; i++) {
+            int value = ((payload[i] & 0xFF) << 24) | ((payload[i + 1] & 0xFF) << 16)
+                    | ((payload[i + 2] & 0xFF) << 8) | (payload[i + 3] & 0xFF);
+            if (value == find) {
+                payload[i] = (byte) (replacement >>> 24);
+                payload[i + 1] = (byte) (replacement >>> 16);
+                payload[i + 2] = (byte) (replacement >>> 8);
+                payload[i + 3] = (byte) replacement;
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Value not found");
+    }
+}
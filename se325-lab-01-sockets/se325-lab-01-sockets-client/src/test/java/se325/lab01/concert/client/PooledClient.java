@@ -0,0 +1,289 @@
+package se325.lab01.concert.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import se325.lab01.concert.common.Concert;
+import se325.lab01.concert.common.Config;
+import se325.lab01.concert.common.Encoding;
+
+/**
+ * Tests for ConcertClient, which like the tests in Client require a running server.
+ */
+public class PooledClient {
+
+    // Encoding for the client's connections: "Serialization" or "Binary" (the default).
+    private static final Encoding ENCODING = Encoding.valueOf(System.getProperty("se325.encoding", "Binary"));
+
+    private static final int MAX_CONNECTIONS = 2;
+
+    private static InetSocketAddress serverAddress;
+
+    private ConnectionPool pool;
+    private ConcertClient client;
+
+    // A second client, with a near cache, for tests that need one.
+    private NearCache cache;
+    private ConcertClient cachingClient;
+
+    @BeforeClass
+    public static void getServerAddress() {
+        try {
+            serverAddress = new InetSocketAddress(InetAddress.getLocalHost(), Config.SERVER_PORT);
+        } catch (UnknownHostException e) {
+            System.out.println("Error getting server address");
+        }
+    }
+
+    /**
+     * Prior to running each test, create a client whose health check runs every second.
+     */
+    @Before
+    public void createClient() {
+        pool = new ConnectionPool(serverAddress, ENCODING, MAX_CONNECTIONS, 1000, null);
+        client = new ConcertClient(pool, null);
+    }
+
+    /**
+     * After running each test, delete all Concerts and close the client.
+     */
+    @After
+    public void closeClient() throws InterruptedException, ExecutionException {
+        client.clear().get();
+        client.close();
+        if (cachingClient != null) {
+            cachingClient.close();
+        }
+    }
+
+    /**
+     * Tests that each operation completes with the expected result.
+     */
+    @Test
+    public void testOperations() throws InterruptedException, ExecutionException {
+        Concert created = client.create(new Concert("Bastille", LocalDateTime.of(2018, 1, 25, 20, 0))).get();
+        assertNotNull(created.getId());
+
+        assertEquals("Bastille", client.retrieve(created.getId()).get().getTitle());
+        assertNull(client.retrieve(created.getId() + 1).get());
+
+        Concert updated = new Concert(created.getId(), "Bastille Live", created.getDate());
+        assertTrue(client.update(updated).get());
+        assertEquals("Bastille Live", client.retrieve(created.getId()).get().getTitle());
+
+        assertEquals(1, client.list().get().size());
+
+        assertTrue(client.delete(created.getId()).get());
+        assertFalse(client.delete(created.getId()).get());
+        assertTrue(client.list().get().isEmpty());
+    }
+
+    /**
+     * Tests that many concurrent requests are carried by no more than the maximum number of connections.
+     */
+    @Test
+    public void testConcurrentRequests() throws InterruptedException, ExecutionException {
+        List<CompletableFuture<Concert>> creates = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            creates.add(client.create(new Concert("Concert " + i, LocalDateTime.of(2018, 1, 25, 20, 0))));
+        }
+
+        Set<Long> ids = new HashSet<>();
+        for (CompletableFuture<Concert> create : creates) {
+            ids.add(create.get().getId());
+        }
+        assertEquals(500, ids.size());
+        assertEquals(500, client.list().get().size());
+        assertTrue(pool.openConnections() <= MAX_CONNECTIONS);
+    }
+
+    /**
+     * Tests that concurrent editors that each retry their conditional update on conflict don't lose any updates.
+     */
+    @Test
+    public void testConcurrentConditionalUpdates() throws Exception {
+        Concert created = client.create(new Concert("Count: 0", LocalDateTime.of(2018, 1, 25, 20, 0))).get();
+
+        List<Thread> editors = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            editors.add(new Thread(() -> {
+                try {
+                    for (int n = 0; n < 25; n++) {
+                        increment(created.getId());
+                    }
+                } catch (Exception e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread editor : editors) {
+            editor.start();
+        }
+        for (Thread editor : editors) {
+            editor.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        Concert counted = client.retrieve(created.getId()).get();
+        assertEquals("Count: 100", counted.getTitle());
+        assertEquals(100, counted.getVersion());
+    }
+
+    /**
+     * Increments the count in a Concert's title, rereading and retrying whenever another editor got there first.
+     */
+    private void increment(long id) throws InterruptedException, ExecutionException {
+        Concert concert = client.retrieve(id).get();
+        while (true) {
+            int count = Integer.parseInt(concert.getTitle().substring("Count: ".length()));
+            concert.setTitle("Count: " + (count + 1));
+            try {
+                client.updateIfVersion(concert).get();
+                return;
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof ConcertConflictException)) {
+                    throw e;
+                }
+                concert = ((ConcertConflictException) e.getCause()).getCurrent();
+            }
+        }
+    }
+
+    /**
+     * Tests that a failed connection is replaced, so that later requests succeed.
+     */
+    @Test
+    public void testFailedConnectionIsReplaced() throws Exception {
+        client.list().get();
+        ClientConnection connection = pool.acquire();
+        connection.close();
+        assertFalse(connection.isOpen());
+
+        assertTrue(client.list().get().isEmpty());
+        assertTrue(pool.openConnections() >= 1);
+    }
+
+    /**
+     * Tests that idle connections are kept open by the health check's heartbeats.
+     */
+    @Test
+    public void testIdleConnectionIsHeartbeated() throws Exception {
+        client.list().get();
+        ClientConnection connection = pool.acquire();
+        long lastUsed = connection.getLastUsed();
+
+        Thread.sleep(3500);
+        assertTrue(connection.isOpen());
+        assertTrue(connection.getLastUsed() > lastUsed);
+    }
+
+    /**
+     * Tests that repeated Retrieves of a Concert are answered from the near cache.
+     */
+    @Test
+    public void testNearCacheServesRetrieves() throws Exception {
+        Concert created = client.create(new Concert("Bastille", LocalDateTime.of(2018, 1, 25, 20, 0))).get();
+        createCachingClient();
+
+        assertEquals("Bastille", cachingClient.retrieve(created.getId()).get().getTitle());
+        assertEquals("Bastille", cachingClient.retrieve(created.getId()).get().getTitle());
+        assertEquals(1, cache.getHits());
+    }
+
+    /**
+     * Tests that changes made by another client are pushed to the near cache as invalidations.
+     */
+    @Test
+    public void testNearCacheInvalidatedByOtherClients() throws Exception {
+        Concert created = client.create(new Concert("Bastille", LocalDateTime.of(2018, 1, 25, 20, 0))).get();
+        createCachingClient();
+        cachingClient.retrieve(created.getId()).get();
+
+        client.update(new Concert(created.getId(), "Bastille Live", created.getDate())).get();
+        assertEquals("Bastille Live", awaitTitle(created.getId(), "Bastille Live"));
+
+        client.delete(created.getId()).get();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cachingClient.retrieve(created.getId()).get() != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNull(cachingClient.retrieve(created.getId()).get());
+    }
+
+    /**
+     * Tests that Concerts read from the near cache keep their versions, so that conditional updates made with them
+     * succeed, and that a Concert read again after a conditional update carries the new version.
+     */
+    @Test
+    public void testConditionalUpdateThroughNearCache() throws Exception {
+        Concert created = client.create(new Concert("Bastille", LocalDateTime.of(2018, 1, 25, 20, 0))).get();
+        client.update(new Concert(created.getId(), "Bastille Live", created.getDate())).get();
+        createCachingClient();
+
+        cachingClient.retrieve(created.getId()).get();
+        Concert cached = cachingClient.retrieve(created.getId()).get();
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cached.getVersion());
+
+        cached.setTitle("Bastille Unplugged");
+        Concert updated = cachingClient.updateIfVersion(cached).get();
+        assertEquals(2, updated.getVersion());
+
+        Concert reread = cachingClient.retrieve(created.getId()).get();
+        assertEquals(2, reread.getVersion());
+        reread.setTitle("Bastille Encore");
+        assertEquals(3, cachingClient.updateIfVersion(reread).get().getVersion());
+    }
+
+    /**
+     * Creates a client with a near cache, and waits for its subscription to invalidations to be acknowledged.
+     */
+    private void createCachingClient() throws Exception {
+        cache = new NearCache(100, 60000);
+        cachingClient = new ConcertClient(
+                new ConnectionPool(serverAddress, ENCODING, MAX_CONNECTIONS, 1000, cache), cache);
+        cachingClient.list().get();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!cache.isEnabled() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(cache.isEnabled());
+    }
+
+    /**
+     * Retrieves a Concert through the caching client until it has an expected title, or five seconds have passed,
+     * and returns the last title seen.
+     */
+    private String awaitTitle(long id, String title) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String current = cachingClient.retrieve(id).get().getTitle();
+        while (!title.equals(current) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            current = cachingClient.retrieve(id).get().getTitle();
+        }
+        return current;
+    }
+}
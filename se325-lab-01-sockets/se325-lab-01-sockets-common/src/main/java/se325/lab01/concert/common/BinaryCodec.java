@@ -0,0 +1,195 @@
+package se325.lab01.concert.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MessageCodec that writes messages field by field in a compact binary form, without the class descriptors and
+ * reflection of Java serialisation.
+ * <p>
+ * RequestMessage and ResponseMessage each know how to write and read their own fields; this class supplies the
+ * primitives they're built from. Nullable values are preceded by a presence byte; enum values are written as their
+ * ordinal; Strings as a length and UTF-8 bytes; and LocalDateTimes as epoch seconds (taken at UTC) and nanoseconds.
+ */
+public class BinaryCodec implements MessageCodec {
+
+    @Override
+    public byte[] encodeRequest(RequestMessage request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        request.writeBinary(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public RequestMessage decodeRequest(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        try {
+            return RequestMessage.readBinary(in);
+        } catch (EOFException e) {
+            throw new StreamCorruptedException("Truncated RequestMessage");
+        }
+    }
+
+    @Override
+    public byte[] encodeResponse(ResponseMessage response) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        response.writeBinary(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public ResponseMessage decodeResponse(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        try {
+            return ResponseMessage.readBinary(in);
+        } catch (EOFException e) {
+            throw new StreamCorruptedException("Truncated ResponseMessage");
+        }
+    }
+
+    static void writeLong(DataOutput out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    static Long readLong(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        MessageFrames.checkLength(length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeEnum(DataOutput out, Enum<?> value) throws IOException {
+        out.writeByte(value == null ? -1 : value.ordinal());
+    }
+
+    static <E extends Enum<E>> E readEnum(DataInput in, Class<E> type) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0) {
+            return null;
+        }
+        E[] values = type.getEnumConstants();
+        if (ordinal >= values.length) {
+            throw new StreamCorruptedException("Invalid " + type.getSimpleName() + ": " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    static void writeDate(DataOutput out, LocalDateTime date) throws IOException {
+        out.writeBoolean(date != null);
+        if (date != null) {
+            out.writeLong(date.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(date.getNano());
+        }
+    }
+
+    static LocalDateTime readDate(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long epochSecond = in.readLong();
+        int nano = in.readInt();
+        return LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+    }
+
+    static void writeConcert(DataOutput out, Concert concert) throws IOException {
+        out.writeBoolean(concert != null);
+        if (concert != null) {
+            writeLong(out, concert.getId());
+            writeString(out, concert.getTitle());
+            writeDate(out, concert.getDate());
+            out.writeLong(concert.getVersion());
+        }
+    }
+
+    static Concert readConcert(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        Long id = readLong(in);
+        String title = readString(in);
+        LocalDateTime date = readDate(in);
+        long version = in.readLong();
+        return new Concert(id, title, date, version);
+    }
+
+    static void writeConcerts(DataOutput out, List<Concert> concerts) throws IOException {
+        if (concerts == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(concerts.size());
+            for (Concert concert : concerts) {
+                writeConcert(out, concert);
+            }
+        }
+    }
+
+    static List<Concert> readConcerts(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        MessageFrames.checkLength(size);
+        List<Concert> concerts = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            concerts.add(readConcert(in));
+        }
+        return concerts;
+    }
+
+    static void writeIds(DataOutput out, List<Long> ids) throws IOException {
+        if (ids == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(ids.size());
+            for (Long id : ids) {
+                out.writeLong(id);
+            }
+        }
+    }
+
+    static List<Long> readIds(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        MessageFrames.checkLength(size);
+        List<Long> ids = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            ids.add(in.readLong());
+        }
+        return ids;
+    }
+}
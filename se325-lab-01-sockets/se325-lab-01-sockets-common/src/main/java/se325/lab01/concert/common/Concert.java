@@ -1,38 +1,65 @@
 package se325.lab01.concert.common;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.time.LocalDateTime;
-
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
+import java.util.Objects;
 
 /**
  * Class to represent a music concert.
+ * <p>
+ * A stored Concert has a version, which the Server increments each time it updates the Concert. A client that read
+ * a Concert can update it with a ConditionalUpdate request, which the Server rejects if the version has changed.
+ * <p>
+ * Concert is Externalizable, writing its fields in the same form as BinaryCodec does, so that Concerts sent with
+ * Java serialisation don't pay for reflection over their fields or for LocalDateTime's object graph.
+ * <p>
+ * Two Concerts are equal if they have the same id and title. Their hash code is computed without allocating, and
+ * cached until either changes.
  */
-public class Concert implements Serializable {
+public class Concert implements Externalizable {
 
-    private static final long serialVersionUID = 1L;
+    // Changed from 1 when Concert became Externalizable, so that a peer with the old form fails fast.
+    private static final long serialVersionUID = 2L;
 
     private Long id;
     private String title;
     private LocalDateTime date;
+    private long version;
+
+    // Hash of the id and title, or 0 if it's yet to be computed.
+    private int hash;
 
     public Concert(Long id, String title, LocalDateTime date) {
+        this(id, title, date, 0);
+    }
+
+    public Concert(Long id, String title, LocalDateTime date, long version) {
         this.id = id;
         this.title = title;
         this.date = date;
+        this.version = version;
     }
 
     public Concert(String title, LocalDateTime date) {
         this(null, title, date);
     }
 
+    /**
+     * Creates an empty Concert, for deserialisation only.
+     */
+    public Concert() {
+    }
+
     public Long getId() {
         return id;
     }
 
     public void setId(Long id) {
         this.id = id;
+        hash = 0;
     }
 
     public String getTitle() {
@@ -41,6 +68,7 @@ public class Concert implements Serializable {
 
     public void setTitle(String title) {
         this.title = title;
+        hash = 0;
     }
 
     public LocalDateTime getDate() {
@@ -51,27 +79,48 @@ public class Concert implements Serializable {
         this.date = date;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        BinaryCodec.writeLong(out, id);
+        BinaryCodec.writeString(out, title);
+        BinaryCodec.writeDate(out, date);
+        out.writeLong(version);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        id = BinaryCodec.readLong(in);
+        title = BinaryCodec.readString(in);
+        date = BinaryCodec.readDate(in);
+        version = in.readLong();
+    }
+
     @Override
     public boolean equals(Object other) {
-        if (!(other instanceof Concert))
-            return false;
         if (other == this)
             return true;
+        if (!(other instanceof Concert))
+            return false;
 
         Concert rhs = (Concert) other;
-        return new EqualsBuilder().
-                append(id, rhs.getId()).
-                append(title, rhs.getTitle()).
-
-                isEquals();
+        return Objects.equals(id, rhs.id) && Objects.equals(title, rhs.title);
     }
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 31).
-                append(getClass().getName()).
-                append(id).
-                append(title).
-                toHashCode();
+        int h = hash;
+        if (h == 0) {
+            h = 31 * Objects.hashCode(id) + Objects.hashCode(title);
+            hash = h;
+        }
+        return h;
     }
 }
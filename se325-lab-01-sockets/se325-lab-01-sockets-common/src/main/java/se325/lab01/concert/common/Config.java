@@ -7,4 +7,48 @@ package se325.lab01.concert.common;
 public class Config {
     // Port number that the Server listens on for accepting connections.
     public static final int SERVER_PORT = 10000;
+
+    // Maximum number of client sessions that the Server will service concurrently. Further connection requests wait
+    // in the accept backlog until a session ends.
+    public static final int MAX_CONNECTIONS = 256;
+
+    // Maximum number of client sessions for the non-blocking engine, whose sessions don't each need a thread.
+    public static final int MAX_NIO_CONNECTIONS = 10000;
+
+    // Length of the queue of pending connection requests held by the Server's listening socket.
+    public static final int ACCEPT_BACKLOG = 128;
+
+    // Largest number of Concerts that the Server returns in a single ListPage response or ListStream chunk.
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    // Number of seconds that a session may go without receiving a request before the Server closes it. 0 means that
+    // sessions never time out.
+    public static final int IDLE_TIMEOUT = 120;
+
+    // Number of seconds between the Heartbeat messages that a client should send to keep an otherwise idle session
+    // open.
+    public static final int HEARTBEAT_INTERVAL = 30;
+
+    // Maximum number of connections that a ConcertClient opens to the Server. Each connection carries many
+    // concurrent requests.
+    public static final int CLIENT_CONNECTIONS = 4;
+
+    // Maximum number of Concerts that a ConcertClient's near cache holds. 0 disables the cache.
+    public static final int NEAR_CACHE_SIZE = 10000;
+
+    // Number of seconds for which a ConcertClient's near cache holds a Concert, as a bound on staleness should an
+    // invalidation be missed.
+    public static final int NEAR_CACHE_TTL = 60;
+
+    // Number of responses, and number of bytes, after which the Server resets the ObjectOutputStream of an object
+    // stream session (see ResettingObjectOutputStream), whichever comes first. 0 disables a limit.
+    public static final int OBJECT_STREAM_RESET_MESSAGES = 1000;
+    public static final long OBJECT_STREAM_RESET_BYTES = 1024 * 1024;
+
+    // Interval, in seconds, at which the Server prints its metrics to the console.
+    public static final long METRICS_INTERVAL = 60;
+
+    // Number of log events that the Server buffers for its background logging thread. Events logged while the buffer
+    // is full are dropped.
+    public static final int LOG_BUFFER_SIZE = 8192;
 }
@@ -0,0 +1,23 @@
+package se325.lab01.concert.common;
+
+/**
+ * Encodings that can be used for the payloads of the framed variant of the concert protocol. A client requests an
+ * Encoding in its Hello message, and the server confirms the Encoding to be used in its reply.
+ */
+public enum Encoding {
+    // Java serialisation of the message objects. Always supported, and used unless another Encoding is agreed.
+    Serialization(new SerializationCodec()),
+
+    // Compact binary encoding, written field by field.
+    Binary(new BinaryCodec());
+
+    private final MessageCodec codec;
+
+    Encoding(MessageCodec codec) {
+        this.codec = codec;
+    }
+
+    public MessageCodec getCodec() {
+        return codec;
+    }
+}
@@ -0,0 +1,24 @@
+package se325.lab01.concert.common;
+
+import java.io.IOException;
+
+/**
+ * Converts RequestMessages and ResponseMessages to and from the payloads of frames (see MessageFrames).
+ * Implementations are stateless and threadsafe.
+ */
+public interface MessageCodec {
+
+    byte[] encodeRequest(RequestMessage request) throws IOException;
+
+    /**
+     * @throws IOException if the payload doesn't hold a valid RequestMessage.
+     */
+    RequestMessage decodeRequest(byte[] payload) throws IOException;
+
+    byte[] encodeResponse(ResponseMessage response) throws IOException;
+
+    /**
+     * @throws IOException if the payload doesn't hold a valid ResponseMessage.
+     */
+    ResponseMessage decodeResponse(byte[] payload) throws IOException;
+}
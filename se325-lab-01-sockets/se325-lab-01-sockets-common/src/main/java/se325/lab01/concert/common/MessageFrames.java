@@ -0,0 +1,66 @@
+package se325.lab01.concert.common;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Utility methods for the framed variant of the concert protocol.
+ * <p>
+ * With the framed protocol, each message is sent as a 4-byte big-endian length followed by that many bytes of
+ * payload. Each payload is encoded on its own, independently of any other message, by the MessageCodec for the
+ * session's Encoding. Because frames are self-contained, a server can collect and decode them without dedicating a
+ * blocked thread and ObjectInputStream to each connection.
+ * <p>
+ * The client's Hello and the server's reply are always encoded with Java serialisation. The Hello names the Encoding
+ * that the client would like to use, and the reply names the Encoding that both parties use from then on.
+ * <p>
+ * A framed connection never begins with the Java serialisation stream header, which is how a server tells the two
+ * variants of the protocol apart.
+ */
+public class MessageFrames {
+
+    // Number of bytes used to encode the length of a frame's payload.
+    public static final int HEADER_LENGTH = 4;
+
+    // Largest payload that a frame may carry.
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    private MessageFrames() {
+    }
+
+    /**
+     * Writes a payload as a single frame. The caller is responsible for flushing the stream.
+     */
+    public static void writeFrame(OutputStream out, byte[] payload) throws IOException {
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(payload.length);
+        dataOut.write(payload);
+    }
+
+    /**
+     * Reads a single frame, blocking until it has fully arrived, and returns its payload.
+     *
+     * @throws IOException if the stream ends or the frame's length is invalid.
+     */
+    public static byte[] readFrame(InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream(in);
+        int length = dataIn.readInt();
+        checkLength(length);
+
+        byte[] payload = new byte[length];
+        dataIn.readFully(payload);
+        return payload;
+    }
+
+    /**
+     * Checks that a frame length read off the wire is within bounds.
+     */
+    public static void checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+    }
+}
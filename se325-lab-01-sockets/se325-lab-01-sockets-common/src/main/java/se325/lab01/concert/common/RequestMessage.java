@@ -1,12 +1,27 @@
 package se325.lab01.concert.common;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Class to represent a request message, sent from the Client to the Server.
  * <p>
  * This class has a set of factory methods to create RequestMessage instances of a particular type and with
  * required field values.
+ * <p>
+ * Clients may pipeline requests, sending several before reading any responses. The server processes a session's
+ * requests in the order they're sent, and each response carries the requestId of the request it answers.
+ * <p>
+ * The server closes sessions that have been idle for longer than its idle timeout (see Config.IDLE_TIMEOUT). A
+ * client that wants to keep a quiet session open sends Heartbeat messages at least every Config.HEARTBEAT_INTERVAL.
+ * <p>
+ * After a Subscribe message, the server also pushes invalidations to the session (see ResponseMessage.isInvalidation),
+ * which clients use to keep caches of Concerts up to date.
  */
 public class RequestMessage implements Serializable {
 
@@ -14,13 +29,25 @@ public class RequestMessage implements Serializable {
 
     // Type of RequestMessage.
     public enum MessageType {
-        Hello, Goodbye, Create, Retrieve, Update, Delete, List, Clear
+        Hello, Goodbye, Create, Retrieve, Update, Delete, List, Clear, BatchCreate, BatchUpdate, BatchDelete,
+        ListPage, ListStream, QueryByDate, QueryByTitle, Heartbeat, Subscribe, ConditionalUpdate
     }
 
     // Fields of a RequestMessage - the type determines which fields will be filled.
     private MessageType type;
     private Concert concert;
     private Long id;
+    private List<Concert> concerts;
+    private List<Long> ids;
+    private Long cursor;
+    private int limit;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private String titlePrefix;
+    private Encoding encoding;
+
+    // Client-chosen id, echoed in the corresponding ResponseMessage so that pipelined responses can be matched up.
+    private Long requestId;
 
     private RequestMessage(MessageType type, Concert concert, Long id) {
         this.type = type;
@@ -33,6 +60,15 @@ public class RequestMessage implements Serializable {
         return request;
     }
 
+    /**
+     * Makes a Hello message for the framed protocol, requesting that the rest of the session use a given Encoding.
+     */
+    public static RequestMessage makeHello(Encoding encoding) {
+        RequestMessage request = new RequestMessage(MessageType.Hello, null, null);
+        request.encoding = encoding;
+        return request;
+    }
+
     public static RequestMessage makeGoodbye() {
         RequestMessage request = new RequestMessage(MessageType.Goodbye, null, null);
         return request;
@@ -62,6 +98,19 @@ public class RequestMessage implements Serializable {
         return request;
     }
 
+    /**
+     * Makes a request to update a Concert only if it hasn't been updated since it was read, i.e. if the stored
+     * Concert's version is the given Concert's version. Otherwise the server responds with a Conflict status and the
+     * stored Concert, and stores nothing.
+     */
+    public static RequestMessage makeConditionalUpdate(Concert concert) throws IllegalArgumentException {
+        if (concert.getId() == null) {
+            throw new IllegalArgumentException("Concert must have a non-null id value");
+        }
+        RequestMessage request = new RequestMessage(MessageType.ConditionalUpdate, concert, null);
+        return request;
+    }
+
     public static RequestMessage makeDelete(Long id) throws IllegalArgumentException {
         if (id == null) {
             throw new IllegalArgumentException("id must be non null");
@@ -70,16 +119,146 @@ public class RequestMessage implements Serializable {
         return request;
     }
 
+    /**
+     * Makes a request to create many Concerts in one message. The server processes each Concert as for a Create
+     * request.
+     */
+    public static RequestMessage makeBatchCreate(List<Concert> concerts) throws IllegalArgumentException {
+        for (Concert concert : concerts) {
+            if (concert.getId() != null) {
+                throw new IllegalArgumentException("Concert already has an id");
+            }
+        }
+        RequestMessage request = new RequestMessage(MessageType.BatchCreate, null, null);
+        request.concerts = new ArrayList<>(concerts);
+        return request;
+    }
+
+    /**
+     * Makes a request to update many Concerts in one message. The server processes each Concert as for an Update
+     * request.
+     */
+    public static RequestMessage makeBatchUpdate(List<Concert> concerts) throws IllegalArgumentException {
+        for (Concert concert : concerts) {
+            if (concert.getId() == null) {
+                throw new IllegalArgumentException("Concert must have a non-null id value");
+            }
+        }
+        RequestMessage request = new RequestMessage(MessageType.BatchUpdate, null, null);
+        request.concerts = new ArrayList<>(concerts);
+        return request;
+    }
+
+    /**
+     * Makes a request to delete many Concerts in one message. The server processes each id as for a Delete request.
+     */
+    public static RequestMessage makeBatchDelete(List<Long> ids) throws IllegalArgumentException {
+        if (ids.contains(null)) {
+            throw new IllegalArgumentException("ids must be non null");
+        }
+        RequestMessage request = new RequestMessage(MessageType.BatchDelete, null, null);
+        request.ids = new ArrayList<>(ids);
+        return request;
+    }
+
     public static RequestMessage makeList() throws IllegalArgumentException {
         RequestMessage request = new RequestMessage(MessageType.List, null, null);
         return request;
     }
 
+    /**
+     * Makes a request for one page of Concerts, in ascending order of id.
+     *
+     * @param cursor the nextCursor value returned with the previous page, or null to request the first page.
+     * @param limit  the maximum number of Concerts to return. The server may return fewer.
+     */
+    public static RequestMessage makeListPage(Long cursor, int limit) throws IllegalArgumentException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        RequestMessage request = new RequestMessage(MessageType.ListPage, null, null);
+        request.cursor = cursor;
+        request.limit = limit;
+        return request;
+    }
+
+    /**
+     * Makes a request for all Concerts, in ascending order of id, to be streamed back as a series of responses that
+     * each carry a chunk of Concerts. Every chunk but the last has a non-null nextCursor.
+     *
+     * @param chunkSize the maximum number of Concerts per chunk. The server may use smaller chunks.
+     */
+    public static RequestMessage makeListStream(int chunkSize) throws IllegalArgumentException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        RequestMessage request = new RequestMessage(MessageType.ListStream, null, null);
+        request.limit = chunkSize;
+        return request;
+    }
+
+    /**
+     * Makes a request for Concerts dated on or after from and before to, in ascending order of date.
+     *
+     * @param limit the maximum number of Concerts to return. The server may return fewer.
+     */
+    public static RequestMessage makeQueryByDate(LocalDateTime from, LocalDateTime to, int limit)
+            throws IllegalArgumentException {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("from and to must be non null");
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        RequestMessage request = new RequestMessage(MessageType.QueryByDate, null, null);
+        request.from = from;
+        request.to = to;
+        request.limit = limit;
+        return request;
+    }
+
+    /**
+     * Makes a request for Concerts whose titles begin with a given prefix, ignoring case, in order of title.
+     *
+     * @param limit the maximum number of Concerts to return. The server may return fewer.
+     */
+    public static RequestMessage makeQueryByTitle(String titlePrefix, int limit) throws IllegalArgumentException {
+        if (titlePrefix == null) {
+            throw new IllegalArgumentException("titlePrefix must be non null");
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        RequestMessage request = new RequestMessage(MessageType.QueryByTitle, null, null);
+        request.titlePrefix = titlePrefix;
+        request.limit = limit;
+        return request;
+    }
+
     public static RequestMessage makeClear() throws IllegalArgumentException {
         RequestMessage request = new RequestMessage(MessageType.Clear, null, null);
         return request;
     }
 
+    /**
+     * Makes a message that keeps an otherwise idle session open. The server acknowledges it with a successful
+     * response.
+     */
+    public static RequestMessage makeHeartbeat() {
+        RequestMessage request = new RequestMessage(MessageType.Heartbeat, null, null);
+        return request;
+    }
+
+    /**
+     * Makes a request for the server to push an invalidation to this session whenever Concerts are updated,
+     * deleted or cleared. Invalidations are sent once the changes they announce are durable, and may arrive at any
+     * point among the session's responses.
+     */
+    public static RequestMessage makeSubscribe() {
+        RequestMessage request = new RequestMessage(MessageType.Subscribe, null, null);
+        return request;
+    }
+
     public MessageType getType() {
         return type;
     }
@@ -91,4 +270,106 @@ public class RequestMessage implements Serializable {
     public Long getId() {
         return id;
     }
+
+    /**
+     * Returns the Concerts carried by a BatchCreate or BatchUpdate message.
+     */
+    public List<Concert> getConcerts() {
+        return concerts;
+    }
+
+    /**
+     * Returns the ids carried by a BatchDelete message.
+     */
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    /**
+     * Returns the cursor of a ListPage message: Concerts with ids greater than the cursor are requested.
+     */
+    public Long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Returns the page size of a ListPage message, the chunk size of a ListStream message, or the maximum number of
+     * results for a query.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the (inclusive) start of the date range of a QueryByDate message.
+     */
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    /**
+     * Returns the (exclusive) end of the date range of a QueryByDate message.
+     */
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public String getTitlePrefix() {
+        return titlePrefix;
+    }
+
+    /**
+     * Returns the Encoding requested by a Hello message, or null if the client didn't request one.
+     */
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    public Long getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Sets the correlation id that the server will echo in its response. Clients that pipeline requests (sending
+     * further requests before earlier responses have arrived) use correlation ids to match responses to requests.
+     *
+     * @return this RequestMessage.
+     */
+    public RequestMessage setRequestId(Long requestId) {
+        this.requestId = requestId;
+        return this;
+    }
+
+    void writeBinary(DataOutput out) throws IOException {
+        BinaryCodec.writeEnum(out, type);
+        BinaryCodec.writeConcert(out, concert);
+        BinaryCodec.writeLong(out, id);
+        BinaryCodec.writeConcerts(out, concerts);
+        BinaryCodec.writeIds(out, ids);
+        BinaryCodec.writeLong(out, cursor);
+        out.writeInt(limit);
+        BinaryCodec.writeDate(out, from);
+        BinaryCodec.writeDate(out, to);
+        BinaryCodec.writeString(out, titlePrefix);
+        BinaryCodec.writeEnum(out, encoding);
+        BinaryCodec.writeLong(out, requestId);
+    }
+
+    static RequestMessage readBinary(DataInput in) throws IOException {
+        MessageType type = BinaryCodec.readEnum(in, MessageType.class);
+        Concert concert = BinaryCodec.readConcert(in);
+        Long id = BinaryCodec.readLong(in);
+
+        RequestMessage request = new RequestMessage(type, concert, id);
+        request.concerts = BinaryCodec.readConcerts(in);
+        request.ids = BinaryCodec.readIds(in);
+        request.cursor = BinaryCodec.readLong(in);
+        request.limit = in.readInt();
+        request.from = BinaryCodec.readDate(in);
+        request.to = BinaryCodec.readDate(in);
+        request.titlePrefix = BinaryCodec.readString(in);
+        request.encoding = BinaryCodec.readEnum(in, Encoding.class);
+        request.requestId = BinaryCodec.readLong(in);
+        return request;
+    }
 }
@@ -0,0 +1,161 @@
+package se325.lab01.concert.common;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * An ObjectOutputStream for long-lived sessions of the object stream protocol, which resets itself according to a
+ * ResetPolicy.
+ * <p>
+ * An ObjectOutputStream remembers every object it has written in a handle table, so that writing the same object
+ * again only sends a back reference. Without resets, the table (and the receiving ObjectInputStream's) grows for the
+ * whole session and keeps every object ever sent reachable. Worse, an object that changes after it's written is
+ * sent again as a reference to its old state. Resetting after every message avoids both problems but sends class
+ * descriptors over and over; resetting every so often bounds the tables while keeping most of the savings.
+ * <p>
+ * Back references between resets are only safe for objects that don't change once written, so senders should write
+ * new objects rather than changing ones they've already sent.
+ */
+public class ResettingObjectOutputStream extends ObjectOutputStream {
+
+    /**
+     * When a ResettingObjectOutputStream resets: after a number of messages, or a number of bytes, since the last
+     * reset, whichever comes first. A limit of 0 is ignored.
+     */
+    public static final class ResetPolicy {
+        // Policy configured by Config.OBJECT_STREAM_RESET_MESSAGES and Config.OBJECT_STREAM_RESET_BYTES.
+        public static final ResetPolicy DEFAULT =
+                new ResetPolicy(Config.OBJECT_STREAM_RESET_MESSAGES, Config.OBJECT_STREAM_RESET_BYTES);
+
+        // Never resets, as with a plain ObjectOutputStream.
+        public static final ResetPolicy NEVER = new ResetPolicy(0, 0);
+
+        private final int messages;
+        private final long bytes;
+
+        public ResetPolicy(int messages, long bytes) {
+            if (messages < 0 || bytes < 0) {
+                throw new IllegalArgumentException("Reset limits must not be negative");
+            }
+            this.messages = messages;
+            this.bytes = bytes;
+        }
+
+        public int getMessages() {
+            return messages;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return "ResetPolicy[messages=" + messages + ", bytes=" + bytes + "]";
+        }
+    }
+
+    private final CountingOutputStream counter;
+    private final ResetPolicy policy;
+
+    private int messagesSinceReset;
+    private long bytesAtReset;
+    private int handles;
+    private int maxHandles;
+    private long resets;
+
+    /**
+     * Creates a ResettingObjectOutputStream and writes the stream header.
+     */
+    public ResettingObjectOutputStream(OutputStream out, ResetPolicy policy) throws IOException {
+        this(new CountingOutputStream(out), policy);
+    }
+
+    private ResettingObjectOutputStream(CountingOutputStream counter, ResetPolicy policy) throws IOException {
+        super(counter);
+        this.counter = counter;
+        this.policy = policy;
+
+        // Every object that isn't already in the handle table passes through replaceObject().
+        enableReplaceObject(true);
+    }
+
+    /**
+     * Writes a message, then resets if the policy calls for it. The caller is responsible for flushing the stream.
+     */
+    public void writeMessage(Object message) throws IOException {
+        writeObject(message);
+        messagesSinceReset++;
+
+        boolean messageLimit = policy.messages > 0 && messagesSinceReset >= policy.messages;
+        boolean byteLimit = policy.bytes > 0 && counter.count - bytesAtReset >= policy.bytes;
+        if (messageLimit || byteLimit) {
+            reset();
+        }
+    }
+
+    /**
+     * Clears the handle table, here and in the receiving ObjectInputStream.
+     */
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        messagesSinceReset = 0;
+        bytesAtReset = counter.count;
+        handles = 0;
+        resets++;
+    }
+
+    /**
+     * Returns the number of objects in the handle table: those written since the last reset, not counting class
+     * descriptors.
+     */
+    public int getHandleCount() {
+        return handles;
+    }
+
+    /**
+     * Returns the largest number of objects that the handle table has held.
+     */
+    public int getMaxHandleCount() {
+        return maxHandles;
+    }
+
+    public long getResetCount() {
+        return resets;
+    }
+
+    @Override
+    protected Object replaceObject(Object obj) {
+        handles++;
+        if (handles > maxHandles) {
+            maxHandles = handles;
+        }
+        return obj;
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
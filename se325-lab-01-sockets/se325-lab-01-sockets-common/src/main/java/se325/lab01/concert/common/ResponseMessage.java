@@ -1,5 +1,8 @@
 package se325.lab01.concert.common;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.List;
 
@@ -7,14 +10,17 @@ import java.util.List;
  * Class to represent a response message, sent from the Server to a Client.
  * <p>
  * Similarly to RequestMessage, this class has a set of factory methods to create ResponseMessages.
+ * <p>
+ * Sessions that have subscribed to invalidations also receive ResponseMessages that don't answer any request. These
+ * have isInvalidation() set and no requestId.
  */
 public class ResponseMessage implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    // Message type.
+    // Message type. Conflict answers a ConditionalUpdate of a Concert that has been updated since it was read.
     public enum Status {
-        Success, Failure
+        Success, Failure, Conflict
     }
 
     // Field values.
@@ -23,6 +29,12 @@ public class ResponseMessage implements Serializable {
     private Long id;
     private Concert concert;
     private List<Concert> concerts;
+    private List<Long> failedIds;
+    private Long nextCursor;
+    private Encoding encoding;
+    private Long requestId;
+    private boolean invalidation;
+    private List<Long> invalidatedIds;
 
     private ResponseMessage() {
     }
@@ -34,6 +46,17 @@ public class ResponseMessage implements Serializable {
         return replyMessage;
     }
 
+    /**
+     * Makes the reply to a Hello message, confirming the Encoding to be used for the rest of the session.
+     */
+    public static ResponseMessage makeHelloResponse(Encoding encoding) {
+        ResponseMessage replyMessage = new ResponseMessage();
+        replyMessage.status = Status.Success;
+        replyMessage.encoding = encoding;
+
+        return replyMessage;
+    }
+
     public static ResponseMessage makeSuccessfulCreateResponse(Concert concert) {
         ResponseMessage replyMessage = new ResponseMessage();
         replyMessage.status = Status.Success;
@@ -67,6 +90,30 @@ public class ResponseMessage implements Serializable {
         return replyMessage;
     }
 
+    /**
+     * Makes the response to a successful ConditionalUpdate, carrying the Concert as stored, with its new version.
+     */
+    public static ResponseMessage makeSuccessfulUpdateResponse(Concert concert) {
+        ResponseMessage replyMessage = new ResponseMessage();
+        replyMessage.status = Status.Success;
+        replyMessage.concert = concert;
+
+        return replyMessage;
+    }
+
+    /**
+     * Makes the response to a ConditionalUpdate of a Concert that has been updated since it was read, carrying the
+     * Concert as stored.
+     */
+    public static ResponseMessage makeConflictResponse(Concert current) {
+        ResponseMessage replyMessage = new ResponseMessage();
+        replyMessage.status = Status.Conflict;
+        replyMessage.failureMessage = "Concert has been updated since it was read";
+        replyMessage.concert = current;
+
+        return replyMessage;
+    }
+
     public static ResponseMessage makeUnsuccessfulDeleteResponse() {
         ResponseMessage replyMessage = new ResponseMessage();
         replyMessage.status = Status.Failure;
@@ -83,6 +130,85 @@ public class ResponseMessage implements Serializable {
         return replyMessage;
     }
 
+    /**
+     * Makes the response to a ListPage request, or one chunk of the responses to a ListStream request.
+     *
+     * @param concerts   the page of Concerts.
+     * @param nextCursor the cursor with which to request the following page, or null if this is the last page.
+     */
+    public static ResponseMessage makeListPageResponse(List<Concert> concerts, Long nextCursor) {
+        ResponseMessage replyMessage = new ResponseMessage();
+        replyMessage.status = Status.Success;
+        replyMessage.concerts = concerts;
+        replyMessage.nextCursor = nextCursor;
+
+        return replyMessage;
+    }
+
+    /**
+     * Makes the response to a BatchCreate request, carrying the new Concerts (with their assigned ids) in the order
+     * in which they were requested.
+     */
+    public static ResponseMessage makeBatchCreateResponse(List<Concert> concerts) {
+        ResponseMessage replyMessage = new ResponseMessage();
+        replyMessage.status = Status.Success;
+        replyMessage.concerts = concerts;
+
+        return replyMessage;
+    }
+
+    /**
+     * Makes the response to a BatchUpdate or BatchDelete request. Items are processed individually, so the request
+     * is successful only if no Concert was missing; otherwise the response lists the ids of the missing Concerts,
+     * and all other items will have been processed.
+     */
+    public static ResponseMessage makeBatchResponse(List<Long> failedIds) {
+        ResponseMessage replyMessage = new ResponseMessage();
+        replyMessage.failedIds = failedIds;
+        if (failedIds.isEmpty()) {
+            replyMessage.status = Status.Success;
+        } else {
+            replyMessage.status = Status.Failure;
+            replyMessage.failureMessage = failedIds.size() + " Concert(s) with specified ids not found";
+        }
+
+        return replyMessage;
+    }
+
+    /**
+     * Makes the response to a batch request with a missing item, or an item without an id where one is needed. No
+     * item of such a batch is processed.
+     */
+    public static ResponseMessage makeInvalidBatchResponse() {
+        ResponseMessage replyMessage = new ResponseMessage();
+        replyMessage.status = Status.Failure;
+        replyMessage.failureMessage = "Batch contains a missing Concert or id";
+
+        return replyMessage;
+    }
+
+    /**
+     * Makes an invalidation, pushed to subscribed sessions when Concerts have changed.
+     *
+     * @param invalidatedIds the ids of Concerts that have been updated or deleted, or null if any Concert may have
+     *                       changed (e.g. because all Concerts were cleared).
+     */
+    public static ResponseMessage makeInvalidation(List<Long> invalidatedIds) {
+        ResponseMessage replyMessage = new ResponseMessage();
+        replyMessage.status = Status.Success;
+        replyMessage.invalidation = true;
+        replyMessage.invalidatedIds = invalidatedIds;
+        return replyMessage;
+    }
+
+    public static ResponseMessage makeServerErrorResponse() {
+        ResponseMessage replyMessage = new ResponseMessage();
+        replyMessage.status = Status.Failure;
+        replyMessage.failureMessage = "Request could not be processed";
+
+        return replyMessage;
+    }
+
     public static ResponseMessage makeProtocolErrorResponse() {
         ResponseMessage replyMessage = new ResponseMessage();
         replyMessage.status = Status.Failure;
@@ -110,4 +236,84 @@ public class ResponseMessage implements Serializable {
     public String getFailureMessage() {
         return failureMessage;
     }
+
+    /**
+     * Returns the cursor for the page following this one, or null if there are no further pages. For a ListStream
+     * request, a null nextCursor marks the final chunk.
+     */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Returns the ids of Concerts that couldn't be found when processing a BatchUpdate or BatchDelete request.
+     */
+    public List<Long> getFailedIds() {
+        return failedIds;
+    }
+
+    /**
+     * Returns the Encoding agreed in reply to a Hello message, or null for any other response.
+     */
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Returns the requestId of the RequestMessage that this is a response to.
+     */
+    public Long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(Long requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * Returns true if this message was pushed to a subscribed session to announce changes, rather than sent in
+     * response to a request.
+     */
+    public boolean isInvalidation() {
+        return invalidation;
+    }
+
+    /**
+     * Returns the ids of the Concerts announced as changed by an invalidation, or null if any Concert may have
+     * changed.
+     */
+    public List<Long> getInvalidatedIds() {
+        return invalidatedIds;
+    }
+
+    void writeBinary(DataOutput out) throws IOException {
+        BinaryCodec.writeEnum(out, status);
+        BinaryCodec.writeString(out, failureMessage);
+        BinaryCodec.writeLong(out, id);
+        BinaryCodec.writeConcert(out, concert);
+        BinaryCodec.writeConcerts(out, concerts);
+        BinaryCodec.writeIds(out, failedIds);
+        BinaryCodec.writeLong(out, nextCursor);
+        BinaryCodec.writeEnum(out, encoding);
+        BinaryCodec.writeLong(out, requestId);
+        out.writeBoolean(invalidation);
+        BinaryCodec.writeIds(out, invalidatedIds);
+    }
+
+    static ResponseMessage readBinary(DataInput in) throws IOException {
+        ResponseMessage replyMessage = new ResponseMessage();
+        replyMessage.status = BinaryCodec.readEnum(in, Status.class);
+        replyMessage.failureMessage = BinaryCodec.readString(in);
+        replyMessage.id = BinaryCodec.readLong(in);
+        replyMessage.concert = BinaryCodec.readConcert(in);
+        replyMessage.concerts = BinaryCodec.readConcerts(in);
+        replyMessage.failedIds = BinaryCodec.readIds(in);
+        replyMessage.nextCursor = BinaryCodec.readLong(in);
+        replyMessage.encoding = BinaryCodec.readEnum(in, Encoding.class);
+        replyMessage.requestId = BinaryCodec.readLong(in);
+        replyMessage.invalidation = in.readBoolean();
+        replyMessage.invalidatedIds = BinaryCodec.readIds(in);
+
+        return replyMessage;
+    }
 }
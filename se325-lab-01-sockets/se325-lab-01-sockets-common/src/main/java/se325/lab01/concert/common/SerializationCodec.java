@@ -0,0 +1,55 @@
+package se325.lab01.concert.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * MessageCodec that uses Java serialisation, writing each message as a complete object stream of its own.
+ */
+public class SerializationCodec implements MessageCodec {
+
+    @Override
+    public byte[] encodeRequest(RequestMessage request) throws IOException {
+        return encode(request);
+    }
+
+    @Override
+    public RequestMessage decodeRequest(byte[] payload) throws IOException {
+        return decode(payload, RequestMessage.class);
+    }
+
+    @Override
+    public byte[] encodeResponse(ResponseMessage response) throws IOException {
+        return encode(response);
+    }
+
+    @Override
+    public ResponseMessage decodeResponse(byte[] payload) throws IOException {
+        return decode(payload, ResponseMessage.class);
+    }
+
+    private static byte[] encode(Object message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static <T> T decode(byte[] payload, Class<T> type) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            Object message = in.readObject();
+            if (!type.isInstance(message)) {
+                throw new InvalidObjectException("Expected a " + type.getSimpleName());
+            }
+            return type.cast(message);
+        } catch (ClassNotFoundException e) {
+            // Attempted to deserialise an object without having access to the corresponding class.
+            throw new InvalidObjectException(e.getMessage());
+        }
+    }
+}
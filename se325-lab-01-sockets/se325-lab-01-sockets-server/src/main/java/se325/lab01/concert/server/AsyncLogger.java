@@ -0,0 +1,259 @@
+package se325.lab01.concert.server;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import se325.lab01.concert.common.Config;
+
+/**
+ * Console logger that never blocks the threads that log. Events are placed in a bounded, lock-free ring buffer and
+ * written to System.out in batches by a background drainer thread.
+ * <p>
+ * An event is a level, a message and up to two named fields, printed as
+ * <pre>
+ *     2020-01-01T20:00:00.000 DEBUG [thread] message key=value key=value
+ * </pre>
+ * Fields are only formatted by the drainer, so logging an event costs little more than filling a slot in the
+ * buffer. If the buffer is full the event is dropped and counted; the drainer reports the number of dropped events
+ * once it catches up. Events below the minimum level are discarded, and each level can be sampled so that only about
+ * 1 in N of its events are kept, which suits high-frequency events such as one per request.
+ * <p>
+ * The buffer is a bounded multi-producer queue in the style of Dmitry Vyukov's: each slot carries a sequence number
+ * that tells producers when it's free and the drainer when it's been filled.
+ */
+class AsyncLogger implements Closeable {
+
+    enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    // How long the drainer sleeps when it finds the buffer empty.
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Size at which the drainer writes out a batch, even if more events are waiting.
+    private static final int MAX_BATCH_CHARS = 64 * 1024;
+
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail;
+    private long head;
+
+    private final Level minimumLevel;
+    private final int[] sampling;
+    private final LongAdder dropped;
+
+    private final Thread drainer;
+    private volatile boolean running;
+
+    /**
+     * Creates an AsyncLogger and starts its drainer thread.
+     *
+     * @param capacity     the number of events the buffer holds, rounded up to a power of two.
+     * @param minimumLevel the lowest level of event to log.
+     * @param sampling     for each level (indexed by ordinal), N such that about 1 in N events are kept. Values less
+     *                     than 2 keep every event.
+     */
+    AsyncLogger(int capacity, Level minimumLevel, int[] sampling) {
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(i);
+        }
+        mask = size - 1;
+        tail = new AtomicLong();
+
+        this.minimumLevel = minimumLevel;
+        this.sampling = sampling.clone();
+        dropped = new LongAdder();
+
+        running = true;
+        drainer = new Thread(this::drain, "log-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Creates an AsyncLogger configured by system properties: se325.logLevel names the minimum level (default
+     * DEBUG), and se325.logSampling lists sample rates by level, e.g. "DEBUG:100,INFO:10".
+     */
+    static AsyncLogger fromSystemProperties() {
+        Level minimumLevel = Level.valueOf(System.getProperty("se325.logLevel", Level.DEBUG.name()));
+
+        int[] sampling = new int[Level.values().length];
+        String rates = System.getProperty("se325.logSampling", "");
+        for (String rate : rates.split(",")) {
+            String[] parts = rate.trim().split(":");
+            if (parts.length == 2) {
+                sampling[Level.valueOf(parts[0].trim()).ordinal()] = Integer.parseInt(parts[1].trim());
+            }
+        }
+
+        int capacity = Integer.getInteger("se325.logBufferSize", Config.LOG_BUFFER_SIZE);
+        return new AsyncLogger(capacity, minimumLevel, sampling);
+    }
+
+    void debug(String message, String key, Object value) {
+        log(Level.DEBUG, message, key, value, null, null);
+    }
+
+    /**
+     * Logs an event with up to two fields; unused keys are null. Returns without waiting, whether or not the event
+     * could be buffered.
+     */
+    void log(Level level, String message, String key1, Object value1, String key2, Object value2) {
+        if (level.compareTo(minimumLevel) < 0) {
+            return;
+        }
+        int rate = sampling[level.ordinal()];
+        if (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+            return;
+        }
+
+        // Claim the slot at the tail, unless the buffer is full.
+        long position = tail.get();
+        Slot slot;
+        while (true) {
+            slot = slots[(int) (position & mask)];
+            long difference = slot.sequence - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+
+        slot.time = System.currentTimeMillis();
+        slot.level = level;
+        slot.thread = Thread.currentThread().getName();
+        slot.message = message;
+        slot.key1 = key1;
+        slot.value1 = value1;
+        slot.key2 = key2;
+        slot.value2 = value2;
+
+        // Publish the event to the drainer.
+        slot.sequence = position + 1;
+    }
+
+    /**
+     * Returns the number of events dropped because the buffer was full.
+     */
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes any buffered events and stops the drainer.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run by the drainer thread: formats buffered events into batches and writes each batch to System.out.
+     */
+    private void drain() {
+        StringBuilder batch = new StringBuilder(MAX_BATCH_CHARS);
+        long droppedReported = 0;
+
+        while (true) {
+            boolean stopping = !running;
+
+            Slot slot;
+            while (batch.length() < MAX_BATCH_CHARS && (slot = slots[(int) (head & mask)]).sequence == head + 1) {
+                format(slot, batch);
+                slot.clear();
+
+                // Hand the slot back to producers for its next use.
+                slot.sequence = head + slots.length;
+                head++;
+            }
+
+            long droppedNow = dropped.sum();
+            if (droppedNow != droppedReported) {
+                batch.append(TIMESTAMP.format(Instant.now())).append(" WARN [log-drainer] Dropped log events count=")
+                        .append(droppedNow - droppedReported).append(System.lineSeparator());
+                droppedReported = droppedNow;
+            }
+
+            if (batch.length() > 0) {
+                System.out.print(batch);
+                System.out.flush();
+                batch.setLength(0);
+            } else if (stopping) {
+                return;
+            } else {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    private static void format(Slot slot, StringBuilder out) {
+        out.append(TIMESTAMP.format(Instant.ofEpochMilli(slot.time))).append(' ')
+                .append(slot.level).append(" [").append(slot.thread).append("] ").append(slot.message);
+        if (slot.key1 != null) {
+            out.append(' ').append(slot.key1).append('=').append(slot.value1);
+        }
+        if (slot.key2 != null) {
+            out.append(' ').append(slot.key2).append('=').append(slot.value2);
+        }
+        out.append(System.lineSeparator());
+    }
+
+    /**
+     * A slot in the ring buffer. A slot at position p (modulo the buffer size) is free for a producer when its
+     * sequence is p, and holds an event for the drainer when its sequence is p + 1.
+     */
+    private static final class Slot {
+        private volatile long sequence;
+
+        private long time;
+        private Level level;
+        private String thread;
+        private String message;
+        private String key1;
+        private Object value1;
+        private String key2;
+        private Object value2;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+
+        void clear() {
+            level = null;
+            thread = null;
+            message = null;
+            key1 = null;
+            value1 = null;
+            key2 = null;
+            value2 = null;
+        }
+    }
+}
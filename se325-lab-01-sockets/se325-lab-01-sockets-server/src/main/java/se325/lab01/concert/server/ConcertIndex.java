@@ -0,0 +1,213 @@
+package se325.lab01.concert.server;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+
+import se325.lab01.concert.common.Concert;
+
+/**
+ * Secondary indexes over a collection of Concerts, supporting queries by date range and by title prefix.
+ * <p>
+ * Each index is a sorted set of entries, ordered by the indexed value and then by id. A query seeks to the first
+ * matching entry in log time and then reads matches off in order, so its cost depends on the size of the result
+ * rather than the size of the collection. Title prefixes are matched case-insensitively.
+ * <p>
+ * The owner of a ConcertIndex must add and remove entries as Concerts are created, updated and deleted, and must not
+ * make concurrent changes for the same Concert. Queries may run concurrently with changes; the owner supplies a
+ * predicate that query results are checked against, which filters out entries for Concerts that have just been
+ * changed.
+ * <p>
+ * Collections too large to index on the heap can be queried with the same results by scanning them instead.
+ */
+class ConcertIndex {
+    // Order of query results.
+    private static final Comparator<Concert> BY_DATE =
+            Comparator.comparing(Concert::getDate).thenComparing(Concert::getId);
+    private static final Comparator<Concert> BY_TITLE =
+            Comparator.comparing((Concert concert) -> titleKey(concert.getTitle())).thenComparing(Concert::getId);
+
+    private final NavigableSet<Entry<LocalDateTime>> byDate;
+    private final NavigableSet<Entry<String>> byTitle;
+
+    ConcertIndex() {
+        byDate = new ConcurrentSkipListSet<>();
+        byTitle = new ConcurrentSkipListSet<>();
+    }
+
+    void add(Concert concert) {
+        byDate.add(new Entry<>(concert.getDate(), concert.getId(), concert));
+        byTitle.add(new Entry<>(titleKey(concert.getTitle()), concert.getId(), concert));
+    }
+
+    void remove(Concert concert) {
+        byDate.remove(new Entry<>(concert.getDate(), concert.getId(), concert));
+        byTitle.remove(new Entry<>(titleKey(concert.getTitle()), concert.getId(), concert));
+    }
+
+    void clear() {
+        byDate.clear();
+        byTitle.clear();
+    }
+
+    /**
+     * Returns up to limit Concerts dated within [from, to), in order of date.
+     *
+     * @param current predicate that a Concert must satisfy to be included in the result.
+     */
+    List<Concert> findByDate(LocalDateTime from, LocalDateTime to, int limit, Predicate<Concert> current) {
+        if (!from.isBefore(to)) {
+            return new ArrayList<>();
+        }
+        NavigableSet<Entry<LocalDateTime>> range = byDate.subSet(
+                new Entry<>(from, Long.MIN_VALUE, null), true,
+                new Entry<>(to, Long.MIN_VALUE, null), false);
+        return collect(range, limit, current);
+    }
+
+    /**
+     * Returns up to limit Concerts whose titles begin with prefix, ignoring case, in order of title.
+     *
+     * @param current predicate that a Concert must satisfy to be included in the result.
+     */
+    List<Concert> findByTitlePrefix(String prefix, int limit, Predicate<Concert> current) {
+        String lower = titleKey(prefix);
+        NavigableSet<Entry<String>> range = byTitle.tailSet(new Entry<>(lower, Long.MIN_VALUE, null), true);
+
+        String upper = prefixUpperBound(lower);
+        if (upper != null) {
+            range = range.headSet(new Entry<>(upper, Long.MIN_VALUE, null), false);
+        }
+        return collect(range, limit, current);
+    }
+
+    /**
+     * Returns up to limit of the Concerts that remain in an iterator that are dated within [from, to), in order of
+     * date, without an index.
+     */
+    static List<Concert> scanByDate(Iterator<Concert> concerts, LocalDateTime from, LocalDateTime to, int limit) {
+        return scan(concerts, limit, BY_DATE, concert -> concert.getDate() != null
+                && !concert.getDate().isBefore(from) && concert.getDate().isBefore(to));
+    }
+
+    /**
+     * Returns up to limit of the Concerts that remain in an iterator whose titles begin with prefix, ignoring case,
+     * in order of title, without an index.
+     */
+    static List<Concert> scanByTitlePrefix(Iterator<Concert> concerts, String prefix, int limit) {
+        String lower = titleKey(prefix);
+        return scan(concerts, limit, BY_TITLE,
+                concert -> concert.getTitle() != null && titleKey(concert.getTitle()).startsWith(lower));
+    }
+
+    /**
+     * Keeps the first limit matches, in order, in a bounded heap whose head is the last match kept, so that a scan
+     * holds no more than limit Concerts at once.
+     */
+    private static List<Concert> scan(Iterator<Concert> concerts, int limit, Comparator<Concert> order,
+                                      Predicate<Concert> matches) {
+        PriorityQueue<Concert> kept = new PriorityQueue<>(order.reversed());
+        while (concerts.hasNext()) {
+            Concert concert = concerts.next();
+            if (!matches.test(concert)) {
+                continue;
+            }
+            if (kept.size() < limit) {
+                kept.add(concert);
+            } else if (order.compare(concert, kept.peek()) < 0) {
+                kept.poll();
+                kept.add(concert);
+            }
+        }
+        List<Concert> result = new ArrayList<>(kept);
+        result.sort(order);
+        return result;
+    }
+
+    private static <K extends Comparable<? super K>> List<Concert> collect(
+            NavigableSet<Entry<K>> range, int limit, Predicate<Concert> current) {
+        List<Concert> matches = new ArrayList<>(Math.min(limit, 64));
+        for (Entry<K> entry : range) {
+            if (matches.size() == limit) {
+                break;
+            }
+            if (current.test(entry.concert)) {
+                matches.add(entry.concert);
+            }
+        }
+        return matches;
+    }
+
+    private static String titleKey(String title) {
+        return title == null ? null : title.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the smallest String greater than every String beginning with prefix, or null if there's no such
+     * String (i.e. the prefix is empty or consists only of the largest char value).
+     */
+    private static String prefixUpperBound(String prefix) {
+        StringBuilder upper = new StringBuilder(prefix);
+        while (upper.length() > 0) {
+            int last = upper.length() - 1;
+            char c = upper.charAt(last);
+            if (c != Character.MAX_VALUE) {
+                upper.setCharAt(last, (char) (c + 1));
+                return upper.toString();
+            }
+            upper.setLength(last);
+        }
+        return null;
+    }
+
+    /**
+     * An index entry, ordered by key (nulls first) and then by id. Entries used only as query bounds have a null
+     * Concert.
+     */
+    private static final class Entry<K extends Comparable<? super K>> implements Comparable<Entry<K>> {
+        private final K key;
+        private final long id;
+        private final Concert concert;
+
+        Entry(K key, long id, Concert concert) {
+            this.key = key;
+            this.id = id;
+            this.concert = concert;
+        }
+
+        @Override
+        public int compareTo(Entry<K> other) {
+            if (key != other.key) {
+                if (key == null) {
+                    return -1;
+                }
+                if (other.key == null) {
+                    return 1;
+                }
+                int result = key.compareTo(other.key);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Long.compare(id, other.id);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean equals(Object other) {
+            return other instanceof Entry && compareTo((Entry<K>) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id);
+        }
+    }
+}
@@ -0,0 +1,516 @@
+package se325.lab01.concert.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+import se325.lab01.concert.common.Concert;
+import se325.lab01.concert.common.Config;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResponseMessage;
+import se325.lab01.concert.store.ConcertStore;
+import se325.lab01.concert.store.HeapConcertStore;
+import se325.lab01.concert.store.StripedLocks;
+
+/**
+ * Applies RequestMessages received during a session to the server's collection of Concerts, producing the
+ * ResponseMessage to send back to the client.
+ * <p>
+ * A ConcertRequestHandler is shared by all sessions serviced by a server engine and is threadsafe. Connection-level
+ * concerns, such as the initial Hello handshake and ending the session after a Goodbye, are left to the engine.
+ * <p>
+ * The Concerts are held by a ConcertStore, on or off the heap, which may persist them so that they survive a restart.
+ * Engines call sync(), or wait for whenDurable(), before sending responses, so that no change is acknowledged until
+ * it's durable. Date and title queries are answered from indexes if the store retains the Concerts it's given, and
+ * otherwise by scanning the store.
+ * <p>
+ * Each update increments the Concert's version, and a ConditionalUpdate is applied only if the version the client
+ * read is still current. Reading and replacing the Concert under its lock makes the check atomic without
+ * serialising updates to other Concerts.
+ * <p>
+ * Updates, deletions and Clears are announced to subscribed sessions through an InvalidationPublisher, which engines
+ * subscribe a session to when it sends a Subscribe request.
+ */
+class ConcertRequestHandler implements AutoCloseable {
+    // Concerts, keyed and iterated in order of id. New Concerts' ids are allocated by the store.
+    private final ConcertStore<Concert> concerts;
+
+    // Date and title indexes over the Concerts, or null if the store doesn't retain them.
+    private final ConcertIndex index;
+
+    // Locks serialising changes to any one Concert, so that the store and index are updated together. They're the
+    // store's own locks if it has any. Reads don't lock.
+    private final StripedLocks locks;
+
+    // Request counts and latencies, shared with the engine.
+    private final ServerMetrics metrics;
+
+    // Logs events without blocking the sessions that report them.
+    private final AsyncLogger log;
+
+    // Announces changes to sessions that cache Concerts.
+    private final InvalidationPublisher invalidations;
+
+    /**
+     * Creates a ConcertRequestHandler that keeps its Concerts only in memory, on the heap.
+     */
+    ConcertRequestHandler() {
+        this(new HeapConcertStore<>(ConcertStoreType.INSTANCE));
+    }
+
+    /**
+     * Creates a ConcertRequestHandler that serves the Concerts in a ConcertStore, which may already hold Concerts
+     * restored from disk.
+     */
+    ConcertRequestHandler(ConcertStore<Concert> store) {
+        concerts = store;
+        locks = store.locks() != null ? store.locks() : new StripedLocks();
+        index = store.retainsConcerts() ? new ConcertIndex() : null;
+        if (index != null) {
+            store.iterator(null).forEachRemaining(index::add);
+        }
+        metrics = new ServerMetrics(concerts::size);
+        log = AsyncLogger.fromSystemProperties();
+        invalidations = new InvalidationPublisher(store);
+        log.log(AsyncLogger.Level.INFO, "Opened concert store", "type", store.getClass().getSimpleName(),
+                "count", store.size());
+    }
+
+    /**
+     * Processes a request received after the session's Hello handshake. The response carries the request's
+     * requestId. A request that can't be processed, such as one missing a field it needs, is answered with a
+     * Failure rather than ending the session.
+     */
+    ResponseMessage handle(RequestMessage request) {
+        log.debug("Received a new message", "type", request.getType());
+        long start = System.nanoTime();
+
+        ResponseMessage response;
+        try {
+            response = apply(request);
+        } catch (RuntimeException e) {
+            log.log(AsyncLogger.Level.ERROR, "Request could not be processed", "type", request.getType(),
+                    "error", e);
+            response = ResponseMessage.makeServerErrorResponse();
+        }
+        response.setRequestId(request.getRequestId());
+
+        metrics.requestHandled(request.getType(), System.nanoTime() - start,
+                response.getStatus() != ResponseMessage.Status.Success);
+        return response;
+    }
+
+    private ResponseMessage apply(RequestMessage request) {
+        ResponseMessage response = null;
+        switch (request.getType()) {
+            case Hello: {
+                response = ResponseMessage.makeProtocolErrorResponse();
+                break;
+            }
+            case Goodbye: {
+                // Acknowledge the client's intention to close the session.
+                response = ResponseMessage.makeSuccessfulResponse();
+                break;
+            }
+            case Create: {
+                response = handleCreate(request);
+                break;
+            }
+            case Retrieve: {
+                response = handleRetrieve(request);
+                break;
+            }
+            case Update: {
+                response = handleUpdate(request);
+                break;
+            }
+            case ConditionalUpdate: {
+                response = handleConditionalUpdate(request);
+                break;
+            }
+            case Delete: {
+                response = handleDelete(request);
+                break;
+            }
+            case List: {
+                List<Concert> concertList = new ArrayList<>();
+                concerts.iterator(null).forEachRemaining(concertList::add);
+                response = ResponseMessage.makeListResponse(concertList);
+                break;
+            }
+            case Clear: {
+                clear();
+                response = ResponseMessage.makeSuccessfulResponse();
+                break;
+            }
+            case BatchCreate: {
+                response = handleBatchCreate(request);
+                break;
+            }
+            case BatchUpdate: {
+                response = handleBatchUpdate(request);
+                break;
+            }
+            case BatchDelete: {
+                response = handleBatchDelete(request);
+                break;
+            }
+            case ListPage: {
+                response = handleListPage(request);
+                break;
+            }
+            case ListStream: {
+                // Streamed responses are produced by streamList().
+                response = ResponseMessage.makeProtocolErrorResponse();
+                break;
+            }
+            case QueryByDate: {
+                List<Concert> matches = index == null
+                        ? ConcertIndex.scanByDate(
+                                concerts.iterator(null), request.getFrom(), request.getTo(), pageSize(request))
+                        : index.findByDate(request.getFrom(), request.getTo(), pageSize(request), this::isCurrent);
+                response = ResponseMessage.makeListResponse(matches);
+                break;
+            }
+            case QueryByTitle: {
+                List<Concert> matches = index == null
+                        ? ConcertIndex.scanByTitlePrefix(
+                                concerts.iterator(null), request.getTitlePrefix(), pageSize(request))
+                        : index.findByTitlePrefix(request.getTitlePrefix(), pageSize(request), this::isCurrent);
+                response = ResponseMessage.makeListResponse(matches);
+                break;
+            }
+            case Heartbeat: {
+                // Nothing to do; the engine has noted that the session is still active.
+                response = ResponseMessage.makeSuccessfulResponse();
+                break;
+            }
+            case Subscribe: {
+                // The engine subscribes the session to invalidations() before the request is handled.
+                response = ResponseMessage.makeSuccessfulResponse();
+                break;
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Produces the responses to a ListStream request: chunks of Concerts, in ascending order of id. Chunks are
+     * produced lazily as the caller iterates, so only one chunk need be held in memory at a time. Since the
+     * collection isn't locked, a Concert created or deleted while the stream is in progress may or may not be
+     * included.
+     */
+    Iterator<ResponseMessage> streamList(RequestMessage request) {
+        log.debug("Received a new message", "type", request.getType());
+        metrics.requestReceived(request.getType());
+        final int chunkSize = pageSize(request);
+        final Iterator<Concert> remaining = concerts.iterator(null);
+
+        return new Iterator<ResponseMessage>() {
+            private boolean finished;
+
+            @Override
+            public boolean hasNext() {
+                return !finished;
+            }
+
+            @Override
+            public ResponseMessage next() {
+                if (finished) {
+                    throw new NoSuchElementException();
+                }
+                List<Concert> chunk = nextPage(remaining, chunkSize);
+                finished = !remaining.hasNext();
+                Long nextCursor = finished ? null : chunk.get(chunk.size() - 1).getId();
+
+                ResponseMessage response = ResponseMessage.makeListPageResponse(chunk, nextCursor);
+                response.setRequestId(request.getRequestId());
+                return response;
+            }
+        };
+    }
+
+    /**
+     * Waits until the changes made so far by the calling thread are durable, so that responses acknowledging them
+     * can be sent. Returns immediately if Concerts are kept only in memory.
+     *
+     * @throws IOException if the changes could not be persisted.
+     */
+    void sync() throws IOException {
+        concerts.awaitDurable();
+    }
+
+    /**
+     * Returns a future that completes once the changes made so far by the calling thread are durable, for engines
+     * that mustn't block while they wait. The future may be completed on one of the store's threads.
+     */
+    CompletableFuture<Void> whenDurable() {
+        return concerts.whenDurable();
+    }
+
+    /**
+     * Returns the metrics that this handler, and the engine it serves, record.
+     */
+    ServerMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the publisher through which this handler announces changes to subscribed sessions.
+     */
+    InvalidationPublisher invalidations() {
+        return invalidations;
+    }
+
+    /**
+     * Stops reporting metrics, closes the store, persisting any outstanding changes, and writes out any buffered log
+     * events. Called once the engine has stopped processing requests.
+     */
+    @Override
+    public void close() throws IOException {
+        metrics.close();
+        invalidations.close();
+        try {
+            concerts.close();
+        } finally {
+            log.close();
+        }
+    }
+
+    private ResponseMessage handleListPage(RequestMessage request) {
+        Long cursor = request.getCursor();
+        Iterator<Concert> remaining = concerts.iterator(cursor);
+
+        List<Concert> page = nextPage(remaining, pageSize(request));
+        Long nextCursor = remaining.hasNext() ? page.get(page.size() - 1).getId() : null;
+        return ResponseMessage.makeListPageResponse(page, nextCursor);
+    }
+
+    private static List<Concert> nextPage(Iterator<Concert> remaining, int pageSize) {
+        List<Concert> page = new ArrayList<>(Math.min(pageSize, 64));
+        while (page.size() < pageSize && remaining.hasNext()) {
+            page.add(remaining.next());
+        }
+        return page;
+    }
+
+    /**
+     * Checks a batch before any of it is applied, so that a batch is never applied in part because of a bad item.
+     *
+     * @param requireIds whether every Concert must have an id.
+     */
+    private static boolean isValidBatch(List<Concert> batch, boolean requireIds) {
+        if (batch == null) {
+            return false;
+        }
+        for (Concert concert : batch) {
+            if (concert == null || (requireIds && concert.getId() == null)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int pageSize(RequestMessage request) {
+        return Math.max(1, Math.min(request.getLimit(), Config.MAX_PAGE_SIZE));
+    }
+
+    private ResponseMessage handleBatchDelete(RequestMessage request) {
+        if (request.getIds() == null || request.getIds().contains(null)) {
+            return ResponseMessage.makeInvalidBatchResponse();
+        }
+        List<Long> failedIds = new ArrayList<>();
+        for (Long uid : request.getIds()) {
+            if (!remove(uid)) {
+                failedIds.add(uid);
+            }
+        }
+        return ResponseMessage.makeBatchResponse(failedIds);
+    }
+
+    private ResponseMessage handleBatchUpdate(RequestMessage request) {
+        if (!isValidBatch(request.getConcerts(), true)) {
+            return ResponseMessage.makeInvalidBatchResponse();
+        }
+        List<Long> failedIds = new ArrayList<>();
+        for (Concert concert : request.getConcerts()) {
+            if (!replace(concert)) {
+                failedIds.add(concert.getId());
+            }
+        }
+        return ResponseMessage.makeBatchResponse(failedIds);
+    }
+
+    private ResponseMessage handleBatchCreate(RequestMessage request) {
+        List<Concert> batch = request.getConcerts();
+        if (!isValidBatch(batch, false)) {
+            return ResponseMessage.makeInvalidBatchResponse();
+        }
+        List<Concert> newConcerts = new ArrayList<>(batch.size());
+
+        // Reserve a contiguous range of ids for the whole batch.
+        long uid = concerts.allocateIds(batch.size());
+        for (Concert concert : batch) {
+            Concert newConcert = new Concert(uid, concert.getTitle(), concert.getDate());
+            insert(newConcert);
+            newConcerts.add(newConcert);
+            uid++;
+        }
+        return ResponseMessage.makeBatchCreateResponse(newConcerts);
+    }
+
+    private ResponseMessage handleDelete(RequestMessage request) {
+        ResponseMessage response;
+        Long uid = request.getId();
+
+        if (!remove(uid)) {
+            response = ResponseMessage.makeUnsuccessfulDeleteResponse();
+        } else {
+            response = ResponseMessage.makeSuccessfulResponse();
+        }
+        return response;
+    }
+
+    private ResponseMessage handleUpdate(RequestMessage request) {
+        ResponseMessage response;
+        Concert concert = request.getConcert();
+        if (!replace(concert)) {
+            response = ResponseMessage.makeUnsuccessfulUpdateResponse();
+        } else {
+            response = ResponseMessage.makeSuccessfulResponse();
+        }
+        return response;
+    }
+
+    private ResponseMessage handleConditionalUpdate(RequestMessage request) {
+        Concert concert = request.getConcert();
+        if (concert == null || concert.getId() == null) {
+            return ResponseMessage.makeUnsuccessfulUpdateResponse();
+        }
+        synchronized (locks.lockFor(concert.getId())) {
+            Concert current = concerts.get(concert.getId());
+            if (current == null) {
+                return ResponseMessage.makeUnsuccessfulUpdateResponse();
+            }
+            if (current.getVersion() != concert.getVersion()) {
+                return ResponseMessage.makeConflictResponse(current);
+            }
+            return ResponseMessage.makeSuccessfulUpdateResponse(update(current, concert));
+        }
+    }
+
+    private ResponseMessage handleRetrieve(RequestMessage request) {
+        ResponseMessage response;
+        Long uid = request.getId();
+        Concert concert = uid == null ? null : concerts.get(uid);
+        if (concert == null) {
+            response = ResponseMessage.makeUnsuccessfulRetrieveResponse();
+        } else {
+            response = ResponseMessage.makeSuccessfulRetrieveResponse(concert);
+        }
+        return response;
+    }
+
+    private ResponseMessage handleCreate(RequestMessage request) {
+        ResponseMessage response;
+        Concert concert = request.getConcert();
+
+        // Store the new Concert.
+        Long uid = concerts.allocateIds(1);
+        Concert newConcert = new Concert(uid, concert.getTitle(), concert.getDate());
+        insert(newConcert);
+
+        response = ResponseMessage.makeSuccessfulCreateResponse(newConcert);
+        return response;
+    }
+
+    /**
+     * Stores a new Concert.
+     */
+    private void insert(Concert concert) {
+        synchronized (locks.lockFor(concert.getId())) {
+            concerts.put(concert);
+            if (index != null) {
+                index.add(concert);
+            }
+        }
+    }
+
+    /**
+     * Replaces the stored Concert with the same id, returning false (and storing nothing) if there is none or the
+     * Concert has no id.
+     */
+    private boolean replace(Concert concert) {
+        if (concert == null || concert.getId() == null) {
+            return false;
+        }
+        synchronized (locks.lockFor(concert.getId())) {
+            Concert previous = concerts.get(concert.getId());
+            if (previous == null) {
+                return false;
+            }
+            update(previous, concert);
+            return true;
+        }
+    }
+
+    /**
+     * Stores a Concert's new title and date as its next version, returning the Concert stored. Called holding the
+     * Concert's lock, having read its current version.
+     */
+    private Concert update(Concert previous, Concert concert) {
+        Concert updated = new Concert(previous.getId(), concert.getTitle(), concert.getDate(),
+                previous.getVersion() + 1);
+        concerts.replace(updated);
+        if (index != null) {
+            index.remove(previous);
+            index.add(updated);
+        }
+        invalidations.invalidate(updated.getId());
+        return updated;
+    }
+
+    /**
+     * Removes the Concert with a given id, returning false if there is none or the id is null.
+     */
+    private boolean remove(Long uid) {
+        if (uid == null) {
+            return false;
+        }
+        synchronized (locks.lockFor(uid)) {
+            Concert previous = concerts.remove(uid);
+            if (previous == null) {
+                return false;
+            }
+            if (index != null) {
+                index.remove(previous);
+            }
+            invalidations.invalidate(uid);
+            return true;
+        }
+    }
+
+    /**
+     * Removes all Concerts. Every lock is held while doing so, making the Clear atomic with respect to other changes.
+     */
+    private void clear() {
+        locks.runHoldingAll(() -> {
+            concerts.clear();
+            if (index != null) {
+                index.clear();
+            }
+            invalidations.invalidateAll();
+        });
+    }
+
+    /**
+     * Returns true if a Concert found through the index is still the stored version, i.e. it hasn't been replaced
+     * or removed since the index was read.
+     */
+    private boolean isCurrent(Concert concert) {
+        return concerts.get(concert.getId()) == concert;
+    }
+}
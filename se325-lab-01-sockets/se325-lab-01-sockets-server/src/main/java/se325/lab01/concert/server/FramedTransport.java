@@ -0,0 +1,87 @@
+package se325.lab01.concert.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import se325.lab01.concert.common.Encoding;
+import se325.lab01.concert.common.MessageCodec;
+import se325.lab01.concert.common.MessageFrames;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResponseMessage;
+
+/**
+ * SessionTransport for the framed variant of the protocol, in which each message is sent as a self-contained,
+ * length-prefixed frame.
+ * <p>
+ * The time taken to decode each request, and to encode each response, is recorded against the type of the request
+ * most recently read; responses are always written before the next request is read. Pushed messages aren't timed.
+ */
+class FramedTransport implements SessionTransport {
+    private final InputStream in;
+    private final OutputStream out;
+    private final ServerMetrics metrics;
+    private volatile MessageCodec codec;
+    private RequestMessage.MessageType currentType;
+
+    // Whether responses have been written since the last flush.
+    private boolean buffered;
+
+    FramedTransport(InputStream in, OutputStream out, ServerMetrics metrics) {
+        this.in = in;
+        this.out = new HeldOutputStream(out);
+        this.metrics = metrics;
+        codec = Encoding.Serialization.getCodec();
+    }
+
+    @Override
+    public RequestMessage read() throws IOException {
+        byte[] payload = MessageFrames.readFrame(in);
+
+        long start = System.nanoTime();
+        RequestMessage request = codec.decodeRequest(payload);
+        currentType = request.getType();
+        metrics.serialized(currentType, System.nanoTime() - start);
+        return request;
+    }
+
+    @Override
+    public synchronized void write(ResponseMessage response) throws IOException {
+        long start = System.nanoTime();
+        byte[] payload = codec.encodeResponse(response);
+        if (currentType != null) {
+            metrics.serialized(currentType, System.nanoTime() - start);
+        }
+        MessageFrames.writeFrame(out, payload);
+        buffered = true;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+        buffered = false;
+    }
+
+    @Override
+    public synchronized void push(ResponseMessage message) throws IOException {
+        MessageFrames.writeFrame(out, codec.encodeResponse(message));
+        if (!buffered) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public boolean hasPendingInput() throws IOException {
+        return in.available() > 0;
+    }
+
+    @Override
+    public Encoding negotiate(Encoding requested) {
+        return requested == null ? Encoding.Serialization : requested;
+    }
+
+    @Override
+    public void setEncoding(Encoding encoding) {
+        codec = encoding.getCodec();
+    }
+}
@@ -0,0 +1,73 @@
+package se325.lab01.concert.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * An OutputStream that holds everything written to it until it's flushed, however much that is.
+ * <p>
+ * A BufferedOutputStream writes through once its buffer fills, which would let pipelined responses reach the client
+ * before the session has made their changes durable. Transports write responses through a HeldOutputStream instead,
+ * so that nothing is sent until the session flushes, which it does only after syncing.
+ * <p>
+ * The buffer grows to hold whatever is written between flushes. Once a flush has sent more than RETAINED_CAPACITY
+ * bytes, the buffer is dropped back to its initial size, so that one large response doesn't pin memory for the rest
+ * of the session.
+ */
+class HeldOutputStream extends OutputStream {
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+    private static final int RETAINED_CAPACITY = 256 * 1024;
+
+    private final OutputStream out;
+    private byte[] buffer;
+    private int count;
+
+    HeldOutputStream(OutputStream out) {
+        this.out = out;
+        buffer = new byte[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * Sends everything held to the underlying stream, and flushes it.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+            if (buffer.length > RETAINED_CAPACITY) {
+                buffer = new byte[INITIAL_CAPACITY];
+            }
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + extra));
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package se325.lab01.concert.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import se325.lab01.concert.store.ConcertStore;
+
+/**
+ * Announces changes to Concerts to the sessions that have subscribed to invalidations.
+ * <p>
+ * Changes are queued by the threads that make them and published by a background thread, so that a change never
+ * waits on a subscriber. The publisher coalesces whatever has been queued since it last ran into a single
+ * invalidation, and waits for those changes to be durable before announcing them, since announcing a change also
+ * sends any responses that the subscribed session has buffered. If the queue fills, or a Clear is queued, the next
+ * invalidation covers every Concert instead of listing ids, as it does if the changes can't be made durable.
+ * <p>
+ * Each subscriber has its own bounded set of pending ids, sent by a delivery thread one invalidation at a time, so
+ * a session that's slow to read its invalidations only delays its own. Ids that arrive while an invalidation is
+ * being sent are coalesced into the next, and if a subscriber's pending ids overflow they're replaced by an
+ * invalidation of every Concert.
+ */
+class InvalidationPublisher implements AutoCloseable {
+
+    /**
+     * A session subscribed to invalidations.
+     */
+    interface Subscriber {
+        /**
+         * Sends an invalidation to the session. Called by one delivery thread at a time, and may block.
+         *
+         * @param ids the ids of changed Concerts, or null if any Concert may have changed.
+         * @throws IOException if the session's connection has failed, in which case it's unsubscribed.
+         */
+        void invalidated(List<Long> ids) throws IOException;
+    }
+
+    // Number of changed ids that can be queued for the next invalidation.
+    private static final int QUEUE_CAPACITY = 64 * 1024;
+
+    // Number of changed ids that can be pending for a subscriber before it's sent an invalidation of every Concert.
+    private static final int PENDING_CAPACITY = 4 * 1024;
+
+    // Queued in place of an id when every Concert has changed. Concert ids are never negative.
+    private static final long ALL = -1;
+
+    private final ConcertStore<?> store;
+    private final Map<Subscriber, Subscription> subscriptions;
+    private final BlockingQueue<Long> changes;
+    private final AtomicBoolean overflowed;
+    private final ThreadPoolExecutor delivery;
+
+    private final Thread publisher;
+    private volatile boolean running;
+
+    /**
+     * Creates an InvalidationPublisher and starts its publisher thread. Delivery threads are started as subscribers
+     * have invalidations to send, and end once they've been idle for a minute.
+     *
+     * @param store the store whose changes must be durable before they're announced.
+     */
+    InvalidationPublisher(ConcertStore<?> store) {
+        this.store = store;
+        subscriptions = new ConcurrentHashMap<>();
+        changes = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        overflowed = new AtomicBoolean();
+        delivery = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "invalidation-delivery");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        running = true;
+        publisher = new Thread(this::publish, "invalidation-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    void subscribe(Subscriber subscriber) {
+        subscriptions.putIfAbsent(subscriber, new Subscription(subscriber));
+    }
+
+    void unsubscribe(Subscriber subscriber) {
+        subscriptions.remove(subscriber);
+    }
+
+    /**
+     * Queues an invalidation of the Concert with a given id. Called once the change has been made.
+     */
+    void invalidate(long id) {
+        queue(id);
+    }
+
+    /**
+     * Queues an invalidation of every Concert. Called once the change has been made.
+     */
+    void invalidateAll() {
+        queue(ALL);
+    }
+
+    /**
+     * Stops the publisher and delivery threads. Changes still queued are discarded.
+     */
+    @Override
+    public void close() {
+        running = false;
+        publisher.interrupt();
+        delivery.shutdownNow();
+        try {
+            publisher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void queue(long id) {
+        // Nobody is listening, and a session that subscribes later reloads what it caches anyway.
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        if (!changes.offer(id)) {
+            overflowed.set(true);
+        }
+    }
+
+    /**
+     * Run by the publisher thread: coalesces queued changes into invalidations and queues them for every subscriber.
+     */
+    private void publish() {
+        List<Long> drained = new ArrayList<>();
+        while (running) {
+            Long first;
+            try {
+                first = changes.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (first == null && !overflowed.get()) {
+                continue;
+            }
+
+            drained.clear();
+            if (first != null) {
+                drained.add(first);
+            }
+            changes.drainTo(drained);
+            boolean all = overflowed.getAndSet(false) || drained.contains(ALL);
+            List<Long> ids = all ? null : new ArrayList<>(new LinkedHashSet<>(drained));
+
+            try {
+                store.awaitAllDurable();
+            } catch (IOException e) {
+                // The changes may be lost, and sessions are failing as they try to acknowledge them. Whatever
+                // subscribers have cached of the changed Concerts may no longer match the store.
+                ids = null;
+            }
+
+            for (Subscription subscription : subscriptions.values()) {
+                subscription.queue(ids);
+            }
+        }
+    }
+
+    /**
+     * A subscriber and the ids it's yet to be sent.
+     */
+    private class Subscription {
+        private final Subscriber subscriber;
+        // Ids changed since the last invalidation was sent, in the order they were changed. Guarded by this.
+        private final LinkedHashSet<Long> pending;
+        // True if every Concert has changed since the last invalidation was sent. Guarded by this.
+        private boolean all;
+        // True while a delivery is queued or in progress. Guarded by this.
+        private boolean delivering;
+
+        Subscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+            pending = new LinkedHashSet<>();
+        }
+
+        /**
+         * Adds ids to those pending, and starts a delivery unless one is already in progress.
+         *
+         * @param ids the ids of changed Concerts, or null if any Concert may have changed.
+         */
+        synchronized void queue(List<Long> ids) {
+            if (!all) {
+                if (ids == null || pending.size() + ids.size() > PENDING_CAPACITY) {
+                    all = true;
+                    pending.clear();
+                } else {
+                    pending.addAll(ids);
+                }
+            }
+
+            if (!delivering) {
+                delivering = true;
+                try {
+                    delivery.execute(this::deliver);
+                } catch (RejectedExecutionException e) {
+                    // The publisher is closing.
+                    delivering = false;
+                }
+            }
+        }
+
+        /**
+         * Run by a delivery thread: sends invalidations until none are pending.
+         */
+        private void deliver() {
+            boolean finished = false;
+            try {
+                while (true) {
+                    List<Long> ids;
+                    synchronized (this) {
+                        if ((!all && pending.isEmpty()) || subscriptions.get(subscriber) != this) {
+                            delivering = false;
+                            finished = true;
+                            return;
+                        }
+                        ids = all ? null : new ArrayList<>(pending);
+                        all = false;
+                        pending.clear();
+                    }
+
+                    try {
+                        subscriber.invalidated(ids);
+                    } catch (IOException e) {
+                        subscriptions.remove(subscriber, this);
+                    }
+                }
+            } finally {
+                // A subscriber that failed unexpectedly is sent what's pending along with its next invalidation.
+                if (!finished) {
+                    synchronized (this) {
+                        delivering = false;
+                    }
+                }
+            }
+        }
+    }
+}
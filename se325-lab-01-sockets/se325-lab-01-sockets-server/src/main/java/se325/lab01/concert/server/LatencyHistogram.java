@@ -0,0 +1,99 @@
+package se325.lab01.concert.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A threadsafe histogram of durations, in the style of HdrHistogram: values are counted in buckets whose width
+ * grows with their magnitude, so that any percentile can be read off to within about 1.6% of the recorded value,
+ * using a fixed amount of memory and no allocation when recording.
+ * <p>
+ * Values below 128ns are counted exactly. Above that, each power of two is split into 64 equal sub-buckets. Values
+ * larger than MAX_VALUE are counted as MAX_VALUE.
+ */
+class LatencyHistogram {
+    // Largest value tracked, in nanoseconds (about 68 seconds).
+    static final long MAX_VALUE = (1L << 36) - 1;
+
+    private static final int SUB_BUCKETS = 64;
+    private static final int EXACT_VALUES = 2 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder total;
+    private final LongAccumulator max;
+
+    LatencyHistogram() {
+        counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+        total = new LongAdder();
+        max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Records a duration, in nanoseconds.
+     */
+    void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(indexOf(value));
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns a summary of the durations recorded so far. Durations recorded while the summary is being taken may or
+     * may not be included.
+     */
+    LatencySnapshot snapshot() {
+        long[] snapshot = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return new LatencySnapshot(0, 0, 0, 0, 0, 0, 0);
+        }
+        long largest = max.get();
+        return new LatencySnapshot(count,
+                total.sum() / count,
+                percentile(snapshot, count, 50.0, largest),
+                percentile(snapshot, count, 90.0, largest),
+                percentile(snapshot, count, 99.0, largest),
+                percentile(snapshot, count, 99.9, largest),
+                largest);
+    }
+
+    /**
+     * Returns the highest value equivalent to the recorded value at a given percentile, but no more than the
+     * largest value recorded.
+     */
+    private static long percentile(long[] counts, long count, double percentile, long largest) {
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), largest);
+            }
+        }
+        return largest;
+    }
+
+    private static int indexOf(long value) {
+        if (value < EXACT_VALUES) {
+            return (int) value;
+        }
+        // Keep the top 7 bits of the value: a leading 1 plus 6 bits selecting the sub-bucket.
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < EXACT_VALUES) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,657 @@
+package se325.lab01.concert.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import se325.lab01.concert.common.Config;
+import se325.lab01.concert.common.Encoding;
+import se325.lab01.concert.common.MessageCodec;
+import se325.lab01.concert.common.MessageFrames;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResponseMessage;
+
+/**
+ * Server engine that services the framed variant of the concert protocol (see MessageFrames) using non-blocking
+ * channels.
+ * <p>
+ * A small, fixed number of event loop threads each multiplex many connections with a Selector, so mostly idle
+ * sessions don't each tie up a blocked thread. The first event loop also accepts connections, distributing them
+ * round-robin across all event loops. Requests have the same semantics as with the blocking Server, since both
+ * engines apply them through a ConcertRequestHandler.
+ * <p>
+ * Each event loop also closes its own connections that have been idle for longer than the idle timeout, checking
+ * a few times per timeout period so that no separate reaper thread needs to touch a loop's connections.
+ * <p>
+ * Invalidations for subscribed sessions are handed to the session's event loop as tasks, so the handler's publisher
+ * thread never touches a connection directly. Likewise, a connection whose responses acknowledge changes that aren't
+ * yet durable stops reading and writing until the store's group commit hands it back to its event loop, so that no
+ * event loop blocks on the disk.
+ * <p>
+ * The object stream variant of the protocol can't be decoded incrementally, so clients of this engine must use the
+ * framed protocol.
+ */
+public class NioServer implements ServerEngine {
+    // Initial size of each connection's read buffer. Buffers grow to fit larger frames and shrink again once drained.
+    private static final int INITIAL_READ_BUFFER_SIZE = 4 * 1024;
+
+    // Number of ListStream chunks a connection may send before yielding to the event loop's other connections.
+    private static final int CHUNKS_PER_FLUSH = 16;
+
+    // How long to pause accepting after accept() fails, for instance because file descriptors have run out.
+    private static final long ACCEPT_RETRY_MILLIS = 100;
+
+    // Processes requests against the collection of Concerts shared by all sessions.
+    private final ConcertRequestHandler handler;
+
+    // Session limits.
+    private final int maxConnections;
+    private final int acceptBacklog;
+    private final long idleTimeoutMillis;
+    private final AtomicInteger connectionCount;
+
+    // Event loops; eventLoops[0] also accepts connections.
+    private final EventLoop[] eventLoops;
+    private int nextEventLoop;
+
+    private ServerSocketChannel serverChannel;
+    private SelectionKey acceptKey;
+
+    // Time at which to retry accepting after accept() failed, or 0 if it hasn't. Used only by eventLoops[0].
+    private long acceptRetryTime;
+    private volatile boolean running;
+
+    /**
+     * Creates a NioServer.
+     *
+     * @param eventLoops     the number of event loop threads.
+     * @param maxConnections the maximum number of client sessions to service concurrently.
+     * @param acceptBacklog  the maximum length of the queue of pending connection requests.
+     */
+    public NioServer(int eventLoops, int maxConnections, int acceptBacklog) {
+        this(new ConcertRequestHandler(), eventLoops, maxConnections, acceptBacklog, Config.IDLE_TIMEOUT * 1000L);
+    }
+
+    /**
+     * Creates a NioServer.
+     *
+     * @param idleTimeoutMillis how long a connection may go without reading or writing before it's closed, or 0 if
+     *                          connections never time out.
+     */
+    NioServer(ConcertRequestHandler handler, int eventLoops, int maxConnections, int acceptBacklog,
+              long idleTimeoutMillis) {
+        if (eventLoops < 1 || maxConnections < 1) {
+            throw new IllegalArgumentException("eventLoops and maxConnections must be positive");
+        }
+        this.handler = handler;
+        this.maxConnections = maxConnections;
+        this.acceptBacklog = acceptBacklog;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        connectionCount = new AtomicInteger();
+        this.eventLoops = new EventLoop[eventLoops];
+    }
+
+    /**
+     * Starts the server. The calling thread runs the first event loop, and so blocks until the server is shut down
+     * and every event loop has exited.
+     */
+    @Override
+    public void start() throws IOException {
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(Selector.open());
+        }
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(Config.SERVER_PORT), acceptBacklog);
+        serverChannel.configureBlocking(false);
+        acceptKey = serverChannel.register(eventLoops[0].selector, SelectionKey.OP_ACCEPT);
+
+        InetAddress serverHost = InetAddress.getLocalHost();
+        System.out.println("Server destination: " + serverHost.getHostAddress() + ", "
+                + serverChannel.socket().getLocalPort() + " (" + eventLoops.length + " event loops)");
+
+        running = true;
+        Thread[] threads = new Thread[eventLoops.length];
+        for (int i = 1; i < eventLoops.length; i++) {
+            threads[i] = new Thread(eventLoops[i], "nio-event-loop-" + i);
+            threads[i].start();
+        }
+        eventLoops[0].run();
+
+        try {
+            for (int i = 1; i < threads.length; i++) {
+                threads[i].join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the server. Each event loop closes its connections as it exits.
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+        for (EventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                eventLoop.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Accepts pending connections, up to the connection limit, and hands them to event loops. Runs on eventLoops[0].
+     * <p>
+     * A failure to set up an accepted connection closes only that connection. If accepting itself fails, typically
+     * because the process has run out of file descriptors, accepting pauses for ACCEPT_RETRY_MILLIS, or until a
+     * connection closes, rather than the event loop spinning on the failure.
+     */
+    private void accept() {
+        while (connectionCount.get() < maxConnections) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                e.printStackTrace();
+                acceptKey.interestOps(0);
+                acceptRetryTime = System.currentTimeMillis() + ACCEPT_RETRY_MILLIS;
+                return;
+            }
+            if (channel == null) {
+                break;
+            }
+
+            connectionCount.incrementAndGet();
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                closeQuietly(channel);
+                connectionClosed();
+                continue;
+            }
+
+            EventLoop eventLoop = eventLoops[nextEventLoop];
+            nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+            final SocketChannel accepted = channel;
+            eventLoop.execute(() -> eventLoop.register(accepted));
+        }
+
+        // At the limit, stop accepting and leave further connection requests in the backlog.
+        if (connectionCount.get() >= maxConnections) {
+            acceptKey.interestOps(0);
+        }
+    }
+
+    /**
+     * Resumes accepting connections after one has closed. Runs on eventLoops[0].
+     */
+    private void resumeAccepting() {
+        if (acceptKey.isValid() && connectionCount.get() < maxConnections) {
+            acceptRetryTime = 0;
+            acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+        }
+    }
+
+    /**
+     * A thread's worth of connections, multiplexed with a Selector. Other threads hand work to an EventLoop by
+     * queuing a task, which the EventLoop runs after its next wake up.
+     */
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks;
+
+        // Interval between scans for idle connections, and the time of the next scan.
+        private final long scanPeriodMillis;
+        private long nextScan;
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+            tasks = new ConcurrentLinkedQueue<>();
+            scanPeriodMillis = Math.max(1, idleTimeoutMillis / 4);
+            nextScan = System.currentTimeMillis() + scanPeriodMillis;
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(SocketChannel channel) {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(channel, key, this));
+            } catch (IOException e) {
+                closeQuietly(channel);
+                connectionClosed();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    long timeout = selectTimeout();
+                    if (timeout > 0) {
+                        selector.select(timeout);
+                    } else {
+                        selector.select();
+                    }
+                    if (this == eventLoops[0] && acceptRetryTime != 0
+                            && System.currentTimeMillis() >= acceptRetryTime) {
+                        resumeAccepting();
+                    }
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            e.printStackTrace();
+                        }
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        } catch (IOException e) {
+                            connection.close();
+                        } catch (RuntimeException e) {
+                            // Something this connection sent couldn't be handled. Close only this connection, so
+                            // that the loop carries on serving (and, for the first loop, accepting) the others.
+                            e.printStackTrace();
+                            connection.close();
+                        }
+                    }
+
+                    if (idleTimeoutMillis > 0 && System.currentTimeMillis() >= nextScan) {
+                        closeIdleConnections();
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection) key.attachment()).close();
+                    } else {
+                        closeQuietly(key.channel());
+                    }
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        /**
+         * Returns how long the next select may block for, or 0 if it may block until woken: until the next idle scan,
+         * or, for the first event loop, until accepting should be retried.
+         */
+        private long selectTimeout() {
+            long timeout = idleTimeoutMillis > 0 ? scanPeriodMillis : 0;
+            if (this == eventLoops[0] && acceptRetryTime != 0) {
+                long retry = Math.max(1, acceptRetryTime - System.currentTimeMillis());
+                timeout = timeout == 0 ? retry : Math.min(timeout, retry);
+            }
+            return timeout;
+        }
+
+        /**
+         * Closes each of this event loop's connections that has been idle for longer than the idle timeout.
+         */
+        private void closeIdleConnections() {
+            long now = System.currentTimeMillis();
+            nextScan = now + scanPeriodMillis;
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    Connection connection = (Connection) key.attachment();
+                    if (now - connection.lastActivity > idleTimeoutMillis) {
+                        handler.metrics().sessionReaped();
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * State of a single client session: the partially received frame, responses waiting to be written, and any
+     * ListStream in progress. While a stream is in progress, further requests wait in the read buffer so that
+     * responses stay in request order.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final EventLoop eventLoop;
+
+        private ByteBuffer readBuffer;
+        private final Deque<ByteBuffer> pendingWrites;
+        private MessageCodec codec;
+        private Iterator<ResponseMessage> activeStream;
+
+        // Type of the request being responded to, against which serialisation times are recorded.
+        private RequestMessage.MessageType currentType;
+
+        private boolean helloReceived;
+        private boolean closeWhenFlushed;
+        private boolean closed;
+
+        // Whether the connection is waiting for the changes its responses acknowledge to become durable, and whether
+        // they have, so that the responses queued meanwhile can be written.
+        private boolean awaitingDurability;
+        private boolean durabilityConfirmed;
+
+        // Time at which the connection last read or wrote any data.
+        private long lastActivity;
+
+        // Receives invalidations once the session has subscribed to them.
+        private InvalidationPublisher.Subscriber subscriber;
+
+        Connection(SocketChannel channel, SelectionKey key, EventLoop eventLoop) {
+            this.channel = channel;
+            this.key = key;
+            this.eventLoop = eventLoop;
+            readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+            pendingWrites = new ArrayDeque<>();
+            codec = Encoding.Serialization.getCodec();
+            lastActivity = System.currentTimeMillis();
+            handler.metrics().sessionOpened();
+        }
+
+        /**
+         * Reads whatever has arrived and processes each complete frame. Responses to requests that arrived together
+         * (e.g. because the client pipelines its requests) are sent together.
+         */
+        void onReadable() throws IOException {
+            int count = channel.read(readBuffer);
+            if (count < 0) {
+                close();
+                return;
+            }
+            handler.metrics().bytesRead(count);
+            lastActivity = System.currentTimeMillis();
+
+            processFrames();
+            flush();
+        }
+
+        void onWritable() throws IOException {
+            flush();
+        }
+
+        /**
+         * Processes each complete frame in the read buffer, stopping early if a ListStream is started.
+         */
+        private void processFrames() throws IOException {
+            readBuffer.flip();
+            int required = 0;
+            while (!closeWhenFlushed && activeStream == null
+                    && readBuffer.remaining() >= MessageFrames.HEADER_LENGTH) {
+                int length = readBuffer.getInt(readBuffer.position());
+                MessageFrames.checkLength(length);
+
+                if (readBuffer.remaining() < MessageFrames.HEADER_LENGTH + length) {
+                    // Wait for the rest of the frame.
+                    required = MessageFrames.HEADER_LENGTH + length;
+                    break;
+                }
+
+                readBuffer.position(readBuffer.position() + MessageFrames.HEADER_LENGTH);
+                byte[] payload = new byte[length];
+                readBuffer.get(payload);
+                process(payload);
+            }
+            readBuffer.compact();
+
+            if (required > readBuffer.capacity()) {
+                // Grow the buffer to fit the incoming frame.
+                ByteBuffer larger = ByteBuffer.allocate(required);
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            } else if (readBuffer.position() == 0 && readBuffer.capacity() > INITIAL_READ_BUFFER_SIZE) {
+                // Release a grown buffer once it's been drained.
+                readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+            }
+        }
+
+        private void process(byte[] payload) throws IOException {
+            RequestMessage request;
+            long start = System.nanoTime();
+            try {
+                request = codec.decodeRequest(payload);
+            } catch (IOException e) {
+                // Client sent something other than a RequestMessage.
+                closeWhenFlushed = true;
+                currentType = null;
+                send(ResponseMessage.makeProtocolErrorResponse());
+                return;
+            }
+            currentType = request.getType();
+            handler.metrics().serialized(currentType, System.nanoTime() - start);
+
+            if (helloReceived && request.getType() == RequestMessage.MessageType.ListStream) {
+                // Chunks are produced by flush() as the client consumes them.
+                activeStream = handler.streamList(request);
+            } else if (helloReceived) {
+                if (request.getType() == RequestMessage.MessageType.Subscribe && subscriber == null) {
+                    subscriber = ids -> eventLoop.execute(() -> push(ResponseMessage.makeInvalidation(ids)));
+                    handler.invalidations().subscribe(subscriber);
+                }
+                ResponseMessage response = handler.handle(request);
+                closeWhenFlushed = request.getType() == RequestMessage.MessageType.Goodbye;
+                send(response);
+            } else if (request.getType() == RequestMessage.MessageType.Hello) {
+                // Confirm the Encoding to use before switching to it.
+                helloReceived = true;
+                Encoding encoding = request.getEncoding() == null ? Encoding.Serialization : request.getEncoding();
+                ResponseMessage response = ResponseMessage.makeHelloResponse(encoding);
+                response.setRequestId(request.getRequestId());
+                send(response);
+                codec = encoding.getCodec();
+            } else {
+                // The first message isn't a Hello message - so terminate the connection.
+                closeWhenFlushed = true;
+                send(ResponseMessage.makeProtocolErrorResponse());
+            }
+        }
+
+        private void send(ResponseMessage response) throws IOException {
+            long start = System.nanoTime();
+            byte[] payload = codec.encodeResponse(response);
+            if (currentType != null) {
+                handler.metrics().serialized(currentType, System.nanoTime() - start);
+            }
+            queueFrame(payload);
+        }
+
+        /**
+         * Sends a message that doesn't answer a request, such as an invalidation. Runs on the event loop.
+         */
+        private void push(ResponseMessage message) {
+            if (closed) {
+                return;
+            }
+            try {
+                queueFrame(codec.encodeResponse(message));
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void queueFrame(byte[] payload) {
+            ByteBuffer frame = ByteBuffer.allocate(MessageFrames.HEADER_LENGTH + payload.length);
+            frame.putInt(payload.length).put(payload);
+            frame.flip();
+
+            pendingWrites.add(frame);
+        }
+
+        /**
+         * Writes as much pending output as the socket will take, waiting for OP_WRITE if some remains. All queued
+         * responses are handed to the socket in one gathering write, once any changes they acknowledge are durable
+         * (see awaitDurability()).
+         * While a ListStream is in progress, its next chunk is produced only once the previous one has been written.
+         */
+        private void flush() throws IOException {
+            int chunksSent = 0;
+            while (!closed) {
+                if (!pendingWrites.isEmpty()) {
+                    if (!awaitDurability()) {
+                        return;
+                    }
+                    long count = channel.write(pendingWrites.toArray(new ByteBuffer[pendingWrites.size()]));
+                    handler.metrics().bytesWritten(count);
+                    if (count > 0) {
+                        lastActivity = System.currentTimeMillis();
+                    }
+                    while (!pendingWrites.isEmpty() && !pendingWrites.peek().hasRemaining()) {
+                        pendingWrites.remove();
+                    }
+                    if (!pendingWrites.isEmpty()) {
+                        key.interestOps(SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+
+                if (activeStream == null) {
+                    break;
+                } else if (chunksSent == CHUNKS_PER_FLUSH) {
+                    // Let other connections have a turn; the socket is writable so OP_WRITE fires again promptly.
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                } else if (activeStream.hasNext()) {
+                    send(activeStream.next());
+                    chunksSent++;
+                } else {
+                    // The stream has finished - resume processing any requests that arrived in the meantime.
+                    activeStream = null;
+                    processFrames();
+                }
+            }
+
+            if (closed) {
+                return;
+            }
+            if (closeWhenFlushed) {
+                close();
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Returns true if the changes made so far on this event loop are durable, so that queued responses can be
+         * written. Otherwise stops reading and writing, and returns false; once the changes are durable, the event
+         * loop resumes flushing the connection.
+         */
+        private boolean awaitDurability() throws IOException {
+            if (awaitingDurability) {
+                return false;
+            }
+            if (durabilityConfirmed) {
+                durabilityConfirmed = false;
+                return true;
+            }
+
+            CompletableFuture<Void> durable = handler.whenDurable();
+            if (durable.isDone()) {
+                try {
+                    durable.join();
+                } catch (CompletionException e) {
+                    throw new IOException("Changes could not be stored", e.getCause());
+                }
+                return true;
+            }
+            awaitingDurability = true;
+            key.interestOps(0);
+            durable.whenComplete((ignored, failure) -> eventLoop.execute(() -> onDurable(failure)));
+            return false;
+        }
+
+        /**
+         * Resumes flushing once the changes that queued responses acknowledge are durable. Runs on the event loop.
+         */
+        private void onDurable(Throwable failure) {
+            awaitingDurability = false;
+            if (closed) {
+                return;
+            }
+            if (failure != null) {
+                close();
+                return;
+            }
+            try {
+                durabilityConfirmed = true;
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (subscriber != null) {
+                handler.invalidations().unsubscribe(subscriber);
+            }
+            handler.metrics().sessionClosed();
+            key.cancel();
+            closeQuietly(channel);
+
+            // Release any output and stream that were never sent.
+            pendingWrites.clear();
+            activeStream = null;
+            connectionClosed();
+        }
+    }
+
+    private void connectionClosed() {
+        if (connectionCount.getAndDecrement() >= maxConnections) {
+            eventLoops[0].execute(this::resumeAccepting);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Nothing further can be done.
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package se325.lab01.concert.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+
+import se325.lab01.concert.common.Encoding;
+import se325.lab01.concert.common.ResettingObjectOutputStream;
+import se325.lab01.concert.common.ResettingObjectOutputStream.ResetPolicy;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResponseMessage;
+
+/**
+ * SessionTransport for the original variant of the protocol, in which messages are exchanged over a single pair of
+ * ObjectInputStream and ObjectOutputStream that last for the whole session.
+ * <p>
+ * Only the time taken to encode responses is recorded as serialisation time, against the type of the request most
+ * recently read. Decoding a request can't be timed apart from waiting for it to arrive. Pushed messages aren't timed.
+ * <p>
+ * Responses are written through a ResettingObjectOutputStream, so that the handle tables at both ends stay bounded
+ * however long the session lasts. The handler never changes a Concert once it's stored, so back references sent
+ * between resets always refer to current data.
+ */
+class ObjectStreamTransport implements SessionTransport {
+    private final InputStream rawIn;
+    private final ObjectInputStream in;
+    private final ResettingObjectOutputStream out;
+    private final ServerMetrics metrics;
+    private RequestMessage.MessageType currentType;
+
+    // Whether responses have been written since the last flush.
+    private boolean buffered;
+
+    // Handle table size and reset count last recorded in the metrics.
+    private int recordedHandles;
+    private long recordedResets;
+
+    ObjectStreamTransport(InputStream in, OutputStream out, ServerMetrics metrics, ResetPolicy resetPolicy)
+            throws IOException {
+        this.out = new ResettingObjectOutputStream(new HeldOutputStream(out), resetPolicy);
+        this.out.flush();
+        rawIn = in;
+        this.in = new ObjectInputStream(in);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public RequestMessage read() throws IOException, ClassNotFoundException {
+        RequestMessage request = (RequestMessage) in.readObject();
+        currentType = request.getType();
+        return request;
+    }
+
+    @Override
+    public synchronized void write(ResponseMessage response) throws IOException {
+        long start = System.nanoTime();
+        out.writeMessage(response);
+        if (currentType != null) {
+            metrics.serialized(currentType, System.nanoTime() - start);
+        }
+        recordHandles();
+        buffered = true;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+        buffered = false;
+    }
+
+    @Override
+    public synchronized void push(ResponseMessage message) throws IOException {
+        out.writeMessage(message);
+        recordHandles();
+        if (!buffered) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Releases the session's share of the handle table metrics.
+     */
+    @Override
+    public synchronized void close() {
+        metrics.objectStreamWritten(-recordedHandles, 0, 0);
+        recordedHandles = 0;
+    }
+
+    private void recordHandles() {
+        int handles = out.getHandleCount();
+        long resets = out.getResetCount();
+        metrics.objectStreamWritten(handles - recordedHandles, resets - recordedResets, out.getMaxHandleCount());
+        recordedHandles = handles;
+        recordedResets = resets;
+    }
+
+    @Override
+    public boolean hasPendingInput() throws IOException {
+        return rawIn.available() > 0;
+    }
+
+    /**
+     * Object streams only carry serialised objects, so the Encoding is always Serialization.
+     */
+    @Override
+    public Encoding negotiate(Encoding requested) {
+        return Encoding.Serialization;
+    }
+
+    @Override
+    public void setEncoding(Encoding encoding) {
+        if (encoding != Encoding.Serialization) {
+            throw new IllegalArgumentException("Object streams can't use encoding " + encoding);
+        }
+    }
+}
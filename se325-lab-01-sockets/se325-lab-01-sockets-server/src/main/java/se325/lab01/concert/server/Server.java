@@ -1,21 +1,28 @@
 package se325.lab01.concert.server;
 
-import java.io.Console;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
 
 import se325.lab01.concert.common.Concert;
 import se325.lab01.concert.common.Config;
+import se325.lab01.concert.common.Encoding;
 import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResettingObjectOutputStream.ResetPolicy;
 import se325.lab01.concert.common.ResponseMessage;
+import se325.lab01.concert.store.ConcertStore;
+import se325.lab01.concert.store.ConcertStores;
 
 /**
  * Simple server that maintains a collection of Concerts, and which implements a protocol allowing clients to make
@@ -25,62 +32,133 @@ import se325.lab01.concert.common.ResponseMessage;
  * acknowledged, clients can then send further messages, as defined by class RequestMessage. At the end of a
  * communication session, clients should send a Goodbye message, informing the server that no further messages
  * will be sent.
+ * <p>
+ * Each accepted connection is serviced by its own thread drawn from a session pool, so a slow or idle client doesn't
+ * hold up other clients. The number of concurrent sessions is capped by maxConnections; connection requests beyond
+ * the cap wait in the listening socket's accept backlog. Sessions that receive no requests for longer than the idle
+ * timeout are closed by a SessionReaper, freeing their threads for other clients.
+ * <p>
+ * Clients may use either variant of the protocol: the original one, in which messages are exchanged over a pair of
+ * object streams, or the framed one (see MessageFrames). The variant is detected from the first bytes the client
+ * sends. NioServer is an alternative engine for the framed protocol; the engine is chosen at startup with the
+ * se325.engine system property ("blocking", the default, or "nio").
+ * <p>
+ * By default, Concerts are kept only in memory, on the heap. The ConcertStore that holds them is chosen at startup
+ * with system properties (see ConcertStores): se325.store can keep them off the heap, for catalogues large enough to
+ * strain the garbage collector, and se325.dataDir names a directory to journal them in, so that they survive a
+ * restart. Responses to changes are sent once the changes are durable, unless se325.journalSync is set to false.
+ * <p>
+ * Request counts and latencies, session counts and bytes transferred are recorded by a ServerMetrics, which is
+ * registered with JMX and printed to the console every se325.metricsInterval seconds (0 disables printing).
+ * <p>
+ * The idle timeout is set with the se325.idleTimeout system property, in seconds (0 disables it). Object stream
+ * sessions reset their output streams every se325.resetMessages responses or se325.resetBytes bytes, whichever
+ * comes first (0 disables a limit).
  */
-public class Server {
-    // List of Concerts.
-    private Map<Long, Concert> concerts;
+public class Server implements ServerEngine {
+    // Processes requests against the collection of Concerts shared by all sessions.
+    private final ConcertRequestHandler handler;
+
+    // Session limits.
+    private final int maxConnections;
+    private final int acceptBacklog;
+    private final long idleTimeoutMillis;
 
-    // Unique id of the next concert to create.
-    private long nextId;
+    // When object stream sessions reset their output streams.
+    private final ResetPolicy resetPolicy;
 
     // Network connection objects.
     private ServerSocket serverSocket;
-    private Socket clientConnection;
+    private final Set<Socket> clientConnections;
+
+    // Threads that run client sessions, and permits bounding the number of sessions.
+    private ExecutorService sessionPool;
+    private Semaphore connectionPermits;
+
+    // Closes idle sessions, or null if sessions never time out.
+    private SessionReaper reaper;
 
     public Server() {
-        concerts = new HashMap<>();
-        nextId = 1;
+        this(Config.MAX_CONNECTIONS, Config.ACCEPT_BACKLOG);
     }
 
     /**
-     * Starts the server, causing it to block while waiting for a connection request. Once a connection has been
-     * accepted, the server processes incoming messages coming over the connection.
+     * Creates a Server.
+     *
+     * @param maxConnections the maximum number of client sessions to service concurrently.
+     * @param acceptBacklog  the maximum length of the queue of pending connection requests.
      */
+    public Server(int maxConnections, int acceptBacklog) {
+        this(new ConcertRequestHandler(), maxConnections, acceptBacklog, Config.IDLE_TIMEOUT * 1000L,
+                ResetPolicy.DEFAULT);
+    }
+
+    /**
+     * Creates a Server.
+     *
+     * @param idleTimeoutMillis how long a session may go without receiving a request before it's closed, or 0 if
+     *                          sessions never time out.
+     * @param resetPolicy       when object stream sessions reset their output streams.
+     */
+    Server(ConcertRequestHandler handler, int maxConnections, int acceptBacklog, long idleTimeoutMillis,
+           ResetPolicy resetPolicy) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be positive");
+        }
+        this.handler = handler;
+        this.maxConnections = maxConnections;
+        this.acceptBacklog = acceptBacklog;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.resetPolicy = resetPolicy;
+        clientConnections = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Starts the server, causing it to block while waiting for connection requests. Each accepted connection is
+     * handed to a session thread, which processes incoming messages coming over the connection. This method returns
+     * once the server has been shut down.
+     */
+    @Override
     public void start() throws IOException {
-        serverSocket = new ServerSocket(Config.SERVER_PORT);
+        serverSocket = new ServerSocket(Config.SERVER_PORT, acceptBacklog);
+        sessionPool = Executors.newFixedThreadPool(maxConnections);
+        connectionPermits = new Semaphore(maxConnections);
+        if (idleTimeoutMillis > 0) {
+            reaper = new SessionReaper(idleTimeoutMillis, handler.metrics());
+        }
 
         InetAddress serverHost = InetAddress.getLocalHost();
         System.out.println("Server destination: " + serverHost.getHostAddress() + ", " + serverSocket.getLocalPort());
 
-        // Repeatedly handle requests for processing.
+        // Repeatedly accept connections, handing each one to a session thread.
         boolean quit = false;
 
-        while (!quit) {
-            try (Socket clientConnection = serverSocket.accept()) {
-                this.clientConnection = clientConnection;
-
-                ObjectOutputStream out = new ObjectOutputStream(clientConnection.getOutputStream());
-                out.flush();
-                ObjectInputStream in = new ObjectInputStream(clientConnection.getInputStream());
-
-                RequestMessage request = (RequestMessage) in.readObject();
-                ResponseMessage response = null;
-
-                if (request.getType() != RequestMessage.MessageType.Hello) {
-                    // Accepted a new connection, but the first message isn't a Hello message - so terminate the connection.
-                    response = ResponseMessage.makeProtocolErrorResponse();
-                    out.writeObject(response);
-                } else {
-                    // Accepted a new connection and received the initial Hello message.
-                    response = ResponseMessage.makeSuccessfulResponse();
-                    out.writeObject(response);
-                    manageSession(clientConnection, out, in);
+        try {
+            while (!quit) {
+                // Wait for a free session slot before accepting, leaving excess connections in the backlog.
+                connectionPermits.acquire();
+                try {
+                    Socket clientConnection = serverSocket.accept();
+                    clientConnections.add(clientConnection);
+                    try {
+                        sessionPool.execute(() -> runSession(clientConnection));
+                    } catch (RejectedExecutionException e) {
+                        // The server is shutting down.
+                        clientConnections.remove(clientConnection);
+                        clientConnection.close();
+                        throw new IOException(e);
+                    }
+                } catch (IOException e) {
+                    connectionPermits.release();
+                    quit = true;
                 }
-            } catch (IOException e) {
-                quit = true;
-            } catch (ClassNotFoundException e) {
-                // Server attempted to deserialise an object without having access to the corresponding class.
-                e.printStackTrace();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sessionPool.shutdown();
+            if (reaper != null) {
+                reaper.close();
             }
         }
     }
@@ -88,137 +166,181 @@ public class Server {
     /**
      * Stops the server.
      */
+    @Override
     public void shutdown() {
         try {
             // Closing the ServerSocket will cause any accept() call on it to abort and throw an IOException.
             serverSocket.close();
 
-            // Closing the Socket connection to the client will cause any IO methods to abort with an IOException.
-            if (clientConnection != null) {
+            // Closing the Socket connections to clients will cause any IO methods to abort with an IOException.
+            for (Socket clientConnection : clientConnections) {
                 clientConnection.close();
             }
+
+            sessionPool.shutdown();
+            sessionPool.awaitTermination(5, TimeUnit.SECONDS);
         } catch (IOException e) {
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Performs the Hello handshake on a newly accepted connection and, if successful, manages the session. The
+     * connection is closed, and its session slot released, when the session ends.
+     */
+    private void runSession(Socket clientConnection) {
+        handler.metrics().sessionOpened();
+        SessionReaper.Registration registration = reaper == null ? null : reaper.register(clientConnection);
+        SessionTransport transport = null;
+        try (Socket connection = clientConnection) {
+            transport = SessionTransport.open(connection, handler.metrics(), resetPolicy);
+
+            RequestMessage request = transport.read();
+            ResponseMessage response = null;
+
+            if (request.getType() != RequestMessage.MessageType.Hello) {
+                // Accepted a new connection, but the first message isn't a Hello message - so terminate the connection.
+                response = ResponseMessage.makeProtocolErrorResponse();
+                transport.write(response);
+                transport.flush();
+            } else {
+                // Accepted a new connection and received the initial Hello message. Confirm the Encoding to use
+                // before switching to it.
+                Encoding encoding = transport.negotiate(request.getEncoding());
+                response = ResponseMessage.makeHelloResponse(encoding);
+                response.setRequestId(request.getRequestId());
+                transport.write(response);
+                transport.flush();
+                transport.setEncoding(encoding);
+                manageSession(transport, registration);
+            }
+        } catch (IOException e) {
+            // Connection closed or broken - nothing further to do for this session.
+        } catch (ClassNotFoundException e) {
+            // Server attempted to deserialise an object without having access to the corresponding class.
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            // Something the client sent couldn't be handled - end only this session.
+            e.printStackTrace();
+        } finally {
+            if (transport != null) {
+                transport.close();
+            }
+            if (registration != null) {
+                registration.unregister();
+            }
+            handler.metrics().sessionClosed();
+            clientConnections.remove(clientConnection);
+            connectionPermits.release();
         }
     }
 
     /**
      * Processes incoming messages, generating and sending a response back to
      * the client.
+     * <p>
+     * Where a client pipelines requests, responses are buffered while further requests are waiting to be read, and
+     * are sent together once the client's input has been drained.
+     * <p>
+     * A session that subscribes to invalidations has them pushed by one of the publisher's delivery threads,
+     * interleaved with its responses.
+     *
+     * @param registration the session's registration with the reaper, touched as requests arrive and responses are
+     *                     sent, or null if sessions don't time out.
      */
-    private void manageSession(Socket clientConnection, ObjectOutputStream out, ObjectInputStream in) {
+    private void manageSession(SessionTransport transport, SessionReaper.Registration registration)
+            throws IOException, ClassNotFoundException {
         boolean sessionEnded = false;
-        ResponseMessage response = null;
+        InvalidationPublisher.Subscriber subscriber = null;
 
         try {
             while (!sessionEnded) {
                 // Read next request.
-                RequestMessage request = (RequestMessage) in.readObject();
-                System.out.println("Received a new message: " + request.getType());
+                RequestMessage request = transport.read();
+                if (registration != null) {
+                    registration.touch();
+                }
 
-                switch (request.getType()) {
-                    case Hello: {
-                        response = ResponseMessage.makeProtocolErrorResponse();
-                        break;
-                    }
-                    case Goodbye: {
-                        // Acknowledge the client's intention to close the session.
-                        response = ResponseMessage.makeSuccessfulResponse();
-                        sessionEnded = true;
-                        break;
-                    }
-                    case Create: {
-                        response = handleCreate(request);
-                        break;
-                    }
-                    case Retrieve: {
-                        response = handleRetrieve(request);
-                        break;
-                    }
-                    case Update: {
-                        response = handleUpdate(request);
-                        break;
-                    }
-                    case Delete: {
-                        response = handleDelete(request);
-                        break;
-                    }
-                    case List: {
-                        List<Concert> concertList = new ArrayList<>(
-                                concerts.values());
-                        response = ResponseMessage.makeListResponse(concertList);
-                        break;
-                    }
-                    case Clear: {
-                        concerts.clear();
-                        response = ResponseMessage.makeSuccessfulResponse();
+                if (request.getType() == RequestMessage.MessageType.Subscribe && subscriber == null) {
+                    subscriber = ids -> transport.push(ResponseMessage.makeInvalidation(ids));
+                    handler.invalidations().subscribe(subscriber);
+                }
+
+                if (request.getType() == RequestMessage.MessageType.ListStream) {
+                    // Send each chunk as it's produced. Writes block while the client isn't consuming the stream.
+                    // Responses to earlier pipelined requests are flushed with the first chunk, so their changes
+                    // must be durable first.
+                    handler.sync();
+                    Iterator<ResponseMessage> chunks = handler.streamList(request);
+                    while (chunks.hasNext()) {
+                        transport.write(chunks.next());
+                        transport.flush();
+                        if (registration != null) {
+                            registration.touch();
+                        }
                     }
+                    continue;
                 }
 
+                ResponseMessage response = handler.handle(request);
+                sessionEnded = request.getType() == RequestMessage.MessageType.Goodbye;
+
                 // Send response back to the client.
-                out.writeObject(response);
+                transport.write(response);
+                if (sessionEnded || !transport.hasPendingInput()) {
+                    handler.sync();
+                    transport.flush();
+                }
+            }
+        } finally {
+            if (subscriber != null) {
+                handler.invalidations().unsubscribe(subscriber);
             }
-
-        } catch (IOException e) {
-            sessionEnded = true;
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
         }
     }
 
-    private ResponseMessage handleDelete(RequestMessage request) {
-        ResponseMessage response;
-        Long uid = request.getId();
+    public static void main(String[] args) throws InterruptedException {
+        int acceptBacklog = Integer.getInteger("se325.acceptBacklog", Config.ACCEPT_BACKLOG);
 
-        Concert concert = concerts.get(uid);
-        if (concert == null) {
-            response = ResponseMessage.makeUnsuccessfulDeleteResponse();
-        } else {
-            concerts.remove(uid);
-            response = ResponseMessage.makeSuccessfulResponse();
+        final ConcertStore<Concert> store;
+        try {
+            store = ConcertStores.fromSystemProperties(ConcertStoreType.INSTANCE);
+        } catch (IOException e) {
+            System.out.println("Error restoring concerts");
+            e.printStackTrace();
+            return;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
         }
-        return response;
-    }
+        final ConcertRequestHandler handler = new ConcertRequestHandler(store);
 
-    private ResponseMessage handleUpdate(RequestMessage request) {
-        ResponseMessage response;
-        Concert concert = request.getConcert();
-        if (!concerts.containsKey(concert.getId())) {
-            response = ResponseMessage.makeUnsuccessfulUpdateResponse();
-        } else {
-            concerts.put(concert.getId(), concert);
-            response = ResponseMessage.makeSuccessfulResponse();
+        try {
+            handler.metrics().register();
+        } catch (JMException e) {
+            System.out.println("Error registering metrics with JMX");
         }
-        return response;
-    }
-
-    private ResponseMessage handleRetrieve(RequestMessage request) {
-        ResponseMessage response;
-        Long uid = request.getId();
-        Concert concert = concerts.get(uid);
-        if (concert == null) {
-            response = ResponseMessage.makeUnsuccessfulRetrieveResponse();
-        } else {
-            response = ResponseMessage.makeSuccessfulRetrieveResponse(concert);
+        long metricsInterval = Long.getLong("se325.metricsInterval", Config.METRICS_INTERVAL);
+        if (metricsInterval > 0) {
+            handler.metrics().startDump(metricsInterval);
         }
-        return response;
-    }
 
-    private ResponseMessage handleCreate(RequestMessage request) {
-        ResponseMessage response;
-        Concert concert = request.getConcert();
+        long idleTimeoutMillis = Integer.getInteger("se325.idleTimeout", Config.IDLE_TIMEOUT) * 1000L;
 
-        // Store the new Concert.
-        Long uid = nextId++;
-        Concert newConcert = new Concert(uid, concert.getTitle(), concert.getDate());
-        concerts.put(uid, newConcert);
-
-        response = ResponseMessage.makeSuccessfulCreateResponse(newConcert);
-        return response;
-    }
-
-    public static void main(String[] args) throws InterruptedException {
-        final Server server = new Server();
+        final ServerEngine server;
+        if ("nio".equals(System.getProperty("se325.engine"))) {
+            int eventLoops = Integer.getInteger("se325.eventLoops", Runtime.getRuntime().availableProcessors());
+            int maxConnections = Integer.getInteger("se325.maxConnections", Config.MAX_NIO_CONNECTIONS);
+            server = new NioServer(handler, eventLoops, maxConnections, acceptBacklog, idleTimeoutMillis);
+        } else {
+            int maxConnections = Integer.getInteger("se325.maxConnections", Config.MAX_CONNECTIONS);
+            ResetPolicy resetPolicy = new ResetPolicy(
+                    Integer.getInteger("se325.resetMessages", Config.OBJECT_STREAM_RESET_MESSAGES),
+                    Long.getLong("se325.resetBytes", Config.OBJECT_STREAM_RESET_BYTES));
+            server = new Server(handler, maxConnections, acceptBacklog, idleTimeoutMillis, resetPolicy);
+        }
 
         Thread serviceThread = new Thread(() -> {
             try {
@@ -236,5 +358,11 @@ public class Server {
         System.out.println("Server shutting down");
 
         serviceThread.join();
+
+        try {
+            handler.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 }
@@ -0,0 +1,20 @@
+package se325.lab01.concert.server;
+
+import java.io.IOException;
+
+/**
+ * A server engine accepts client connections and services concert protocol sessions over them. Engines differ in how
+ * they use threads to do so, but give requests the same semantics.
+ */
+public interface ServerEngine {
+
+    /**
+     * Starts the engine, blocking the calling thread until the engine has been shut down.
+     */
+    void start() throws IOException;
+
+    /**
+     * Stops the engine, closing any open client connections.
+     */
+    void shutdown();
+}
@@ -0,0 +1,332 @@
+package se325.lab01.concert.server;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import se325.lab01.concert.common.RequestMessage.MessageType;
+
+/**
+ * Counters and latency histograms describing a server's workload, shared by the ConcertRequestHandler, the session
+ * transports and the engine. Recording is threadsafe and cheap enough to leave on in production: counters are
+ * LongAdders and histograms don't allocate.
+ * <p>
+ * Metrics can be read over JMX, once register() has been called, and dumped to the console periodically with
+ * startDump().
+ */
+class ServerMetrics implements ServerMetricsMXBean {
+    // Name under which the metrics are registered with the platform MBeanServer.
+    static final String OBJECT_NAME = "se325.lab01.concert.server:type=ServerMetrics";
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private final LongAdder[] requests;
+    private final LongAdder[] errors;
+    private final LatencyHistogram[] handling;
+    private final LatencyHistogram[] serialization;
+
+    private final LongAdder activeSessions;
+    private final LongAdder sessionsReaped;
+    private final LongAdder objectStreamHandles;
+    private final LongAccumulator maxObjectStreamHandles;
+    private final LongAdder objectStreamResets;
+    private final LongAdder bytesIn;
+    private final LongAdder bytesOut;
+    private final LongSupplier storeSize;
+
+    private ScheduledExecutorService dumper;
+    private ObjectName registeredName;
+
+    /**
+     * Creates a ServerMetrics.
+     *
+     * @param storeSize supplies the number of Concerts currently stored.
+     */
+    ServerMetrics(LongSupplier storeSize) {
+        this.storeSize = storeSize;
+        requests = new LongAdder[TYPES.length];
+        errors = new LongAdder[TYPES.length];
+        handling = new LatencyHistogram[TYPES.length];
+        serialization = new LatencyHistogram[TYPES.length];
+        for (int i = 0; i < TYPES.length; i++) {
+            requests[i] = new LongAdder();
+            errors[i] = new LongAdder();
+            handling[i] = new LatencyHistogram();
+            serialization[i] = new LatencyHistogram();
+        }
+        activeSessions = new LongAdder();
+        sessionsReaped = new LongAdder();
+        objectStreamHandles = new LongAdder();
+        maxObjectStreamHandles = new LongAccumulator(Math::max, 0);
+        objectStreamResets = new LongAdder();
+        bytesIn = new LongAdder();
+        bytesOut = new LongAdder();
+    }
+
+    /**
+     * Records a request that has been handled, and how long handling it took.
+     */
+    void requestHandled(MessageType type, long nanos, boolean failed) {
+        requests[type.ordinal()].increment();
+        if (failed) {
+            errors[type.ordinal()].increment();
+        }
+        handling[type.ordinal()].record(nanos);
+    }
+
+    /**
+     * Records a request whose handling time isn't measured, such as a ListStream, whose responses are produced
+     * lazily.
+     */
+    void requestReceived(MessageType type) {
+        requests[type.ordinal()].increment();
+    }
+
+    /**
+     * Records the time taken to decode a request, or to encode a response to a request, of a given type.
+     */
+    void serialized(MessageType type, long nanos) {
+        serialization[type.ordinal()].record(nanos);
+    }
+
+    void sessionOpened() {
+        activeSessions.increment();
+    }
+
+    void sessionClosed() {
+        activeSessions.decrement();
+    }
+
+    void sessionReaped() {
+        sessionsReaped.increment();
+    }
+
+    /**
+     * Records a change in the size of an object stream session's handle table.
+     *
+     * @param handleChange the change in the number of objects held.
+     * @param resets       the number of resets since the last change was recorded.
+     * @param maxHandles   the largest number of objects that the session's handle table has held.
+     */
+    void objectStreamWritten(long handleChange, long resets, int maxHandles) {
+        objectStreamHandles.add(handleChange);
+        objectStreamResets.add(resets);
+        maxObjectStreamHandles.accumulate(maxHandles);
+    }
+
+    void bytesRead(long count) {
+        bytesIn.add(count);
+    }
+
+    void bytesWritten(long count) {
+        bytesOut.add(count);
+    }
+
+    /**
+     * Returns a stream that counts the bytes read from a connection's input.
+     */
+    InputStream meter(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesIn.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = super.read(b, off, len);
+                if (count > 0) {
+                    bytesIn.add(count);
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Returns a stream that counts the bytes written to a connection's output.
+     */
+    OutputStream meter(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesOut.increment();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytesOut.add(len);
+            }
+        };
+    }
+
+    @Override
+    public long getActiveSessions() {
+        return activeSessions.sum();
+    }
+
+    @Override
+    public long getSessionsReaped() {
+        return sessionsReaped.sum();
+    }
+
+    @Override
+    public long getObjectStreamHandles() {
+        return objectStreamHandles.sum();
+    }
+
+    @Override
+    public long getMaxObjectStreamHandles() {
+        return maxObjectStreamHandles.get();
+    }
+
+    @Override
+    public long getObjectStreamResets() {
+        return objectStreamResets.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getStoreSize() {
+        return storeSize.getAsLong();
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        return counts(requests);
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        return counts(errors);
+    }
+
+    @Override
+    public Map<String, LatencySnapshot> getHandlingLatencies() {
+        return snapshots(handling);
+    }
+
+    @Override
+    public Map<String, LatencySnapshot> getSerializationLatencies() {
+        return snapshots(serialization);
+    }
+
+    @Override
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Sessions: %d active, %d reaped; bytes in: %d, out: %d; concerts stored: %d%n",
+                getActiveSessions(), getSessionsReaped(), getBytesIn(), getBytesOut(), getStoreSize()));
+        report.append(String.format("Object streams: %d handles held (at most %d in a session); %d resets%n",
+                getObjectStreamHandles(), getMaxObjectStreamHandles(), getObjectStreamResets()));
+
+        Map<String, LatencySnapshot> handlingLatencies = getHandlingLatencies();
+        Map<String, LatencySnapshot> serializationLatencies = getSerializationLatencies();
+        for (int i = 0; i < TYPES.length; i++) {
+            long count = requests[i].sum();
+            if (count == 0) {
+                continue;
+            }
+            String type = TYPES[i].name();
+            report.append(String.format("%-12s requests=%d errors=%d%n", type, count, errors[i].sum()));
+            if (handlingLatencies.containsKey(type)) {
+                report.append("    handling:      ").append(handlingLatencies.get(type)).append(System.lineSeparator());
+            }
+            if (serializationLatencies.containsKey(type)) {
+                report.append("    serialization: ").append(serializationLatencies.get(type))
+                        .append(System.lineSeparator());
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Registers the metrics with the platform MBeanServer, under OBJECT_NAME.
+     */
+    void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        server.registerMBean(this, name);
+        registeredName = name;
+    }
+
+    /**
+     * Prints a report to the console at a fixed interval.
+     */
+    void startDump(long intervalSeconds) {
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> System.out.print(report()),
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops any periodic dump and unregisters from the MBeanServer.
+     */
+    void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+        }
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (JMException e) {
+                // Already unregistered.
+            }
+        }
+    }
+
+    private static Map<String, Long> counts(LongAdder[] adders) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            long count = adders[i].sum();
+            if (count > 0) {
+                counts.put(TYPES[i].name(), count);
+            }
+        }
+        return counts;
+    }
+
+    private static Map<String, LatencySnapshot> snapshots(LatencyHistogram[] histograms) {
+        Map<String, LatencySnapshot> snapshots = new LinkedHashMap<>();
+        for (int i = 0; i < TYPES.length; i++) {
+            LatencySnapshot snapshot = histograms[i].snapshot();
+            if (snapshot.getCount() > 0) {
+                snapshots.put(TYPES[i].name(), snapshot);
+            }
+        }
+        return snapshots;
+    }
+}
@@ -0,0 +1,61 @@
+package se325.lab01.concert.server;
+
+import java.util.Map;
+
+/**
+ * Management interface through which a server's metrics are exposed over JMX. Maps are keyed by request MessageType
+ * and omit types that haven't been received.
+ */
+public interface ServerMetricsMXBean {
+
+    long getActiveSessions();
+
+    /**
+     * Returns the number of sessions closed because they were idle for longer than the idle timeout.
+     */
+    long getSessionsReaped();
+
+    /**
+     * Returns the number of objects held in the handle tables of object stream sessions' output streams.
+     */
+    long getObjectStreamHandles();
+
+    /**
+     * Returns the largest number of objects that any object stream session's handle table has held.
+     */
+    long getMaxObjectStreamHandles();
+
+    /**
+     * Returns the number of times object stream sessions have reset their output streams.
+     */
+    long getObjectStreamResets();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getStoreSize();
+
+    Map<String, Long> getRequestCounts();
+
+    /**
+     * Returns the number of requests of each type whose response reported a failure.
+     */
+    Map<String, Long> getErrorCounts();
+
+    /**
+     * Returns the time taken to apply requests of each type to the store.
+     */
+    Map<String, LatencySnapshot> getHandlingLatencies();
+
+    /**
+     * Returns the time taken to decode requests of each type, and to encode their responses, with each decode and
+     * encode counted separately.
+     */
+    Map<String, LatencySnapshot> getSerializationLatencies();
+
+    /**
+     * Returns all metrics formatted as text, as written by the periodic dump.
+     */
+    String report();
+}
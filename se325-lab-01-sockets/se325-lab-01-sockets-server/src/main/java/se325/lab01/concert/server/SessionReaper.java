@@ -0,0 +1,107 @@
+package se325.lab01.concert.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closes the connections of sessions that have been idle for too long, so that the threads and buffers they hold
+ * are released. Used by the blocking Server, whose session threads would otherwise wait forever for a client that
+ * has gone quiet.
+ * <p>
+ * A session registers its connection when it starts, touches its registration whenever a message is received or a
+ * response is written, and unregisters when it ends. A background thread periodically closes the connection of
+ * every registration that hasn't been touched within the idle timeout, which makes the session's blocked read or
+ * write fail.
+ */
+class SessionReaper implements Closeable {
+    private final long idleTimeoutNanos;
+    private final ServerMetrics metrics;
+    private final Set<Registration> registrations;
+    private final ScheduledExecutorService scanner;
+
+    /**
+     * Creates a SessionReaper and starts its scanning thread.
+     *
+     * @param idleTimeoutMillis how long a session may go without activity before it's closed.
+     * @param metrics           where reaped sessions are counted.
+     */
+    SessionReaper(long idleTimeoutMillis, ServerMetrics metrics) {
+        if (idleTimeoutMillis < 1) {
+            throw new IllegalArgumentException("idleTimeoutMillis must be positive");
+        }
+        idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.metrics = metrics;
+        registrations = ConcurrentHashMap.newKeySet();
+
+        scanner = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "session-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Scanning a few times per timeout bounds how long past the timeout an idle session can survive.
+        long period = Math.max(1, idleTimeoutMillis / 4);
+        scanner.scheduleAtFixedRate(this::reap, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers a session's connection, treating the session as active from now.
+     */
+    Registration register(Closeable connection) {
+        Registration registration = new Registration(connection);
+        registrations.add(registration);
+        return registration;
+    }
+
+    @Override
+    public void close() {
+        scanner.shutdownNow();
+    }
+
+    private void reap() {
+        long now = System.nanoTime();
+        for (Registration registration : registrations) {
+            if (now - registration.lastActivity > idleTimeoutNanos) {
+                registrations.remove(registration);
+                metrics.sessionReaped();
+                try {
+                    registration.connection.close();
+                } catch (IOException e) {
+                    // Already closed.
+                }
+            }
+        }
+    }
+
+    /**
+     * A session's registration with the reaper.
+     */
+    final class Registration {
+        private final Closeable connection;
+        private volatile long lastActivity;
+
+        private Registration(Closeable connection) {
+            this.connection = connection;
+            lastActivity = System.nanoTime();
+        }
+
+        /**
+         * Notes that the session is active.
+         */
+        void touch() {
+            lastActivity = System.nanoTime();
+        }
+
+        /**
+         * Stops tracking the session, once it has ended.
+         */
+        void unregister() {
+            registrations.remove(this);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package se325.lab01.concert.server;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import se325.lab01.concert.common.Encoding;
+import se325.lab01.concert.common.RequestMessage;
+import se325.lab01.concert.common.ResettingObjectOutputStream.ResetPolicy;
+import se325.lab01.concert.common.ResponseMessage;
+
+/**
+ * A blocking connection to a client, over which a session's RequestMessages are received and its ResponseMessages
+ * are sent.
+ * <p>
+ * Requests are read, and responses written, by the session's own thread. Other threads may only push() messages.
+ */
+interface SessionTransport {
+
+    /**
+     * Blocks until the next request arrives and returns it.
+     */
+    RequestMessage read() throws IOException, ClassNotFoundException;
+
+    /**
+     * Writes a response to the client. The response is held until flush() is called, however many responses are
+     * written meanwhile, so that the session decides when responses to changes may be sent.
+     */
+    void write(ResponseMessage response) throws IOException;
+
+    /**
+     * Sends any buffered responses to the client.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Sends a message that doesn't answer a request, such as an invalidation. May be called by threads other than
+     * the session's; the message is sent between, never within, the session's responses. If responses are buffered,
+     * the message is buffered after them rather than flushing them early, and is sent by the session's next flush().
+     */
+    void push(ResponseMessage message) throws IOException;
+
+    /**
+     * Returns true if some or all of the client's next request has already arrived, in which case read() can
+     * proceed without waiting for the client.
+     */
+    boolean hasPendingInput() throws IOException;
+
+    /**
+     * Returns the Encoding to use for the rest of the session, given the one requested in the client's Hello (which
+     * may be null).
+     */
+    Encoding negotiate(Encoding requested);
+
+    /**
+     * Switches to a negotiated Encoding, once the reply to the client's Hello has been sent.
+     */
+    void setEncoding(Encoding encoding);
+
+    /**
+     * Called once the session has ended, to release anything the transport holds on to.
+     */
+    default void close() {
+    }
+
+    /**
+     * Opens a SessionTransport on a newly accepted connection. Clients using the object stream protocol begin by
+     * sending the Java serialisation stream header, whereas clients using the framed protocol begin with a frame
+     * length; the first two bytes received are examined to tell which variant the client is speaking.
+     *
+     * @param metrics     where the transport records bytes transferred and serialisation times.
+     * @param resetPolicy when an object stream session resets its output stream.
+     */
+    static SessionTransport open(Socket connection, ServerMetrics metrics, ResetPolicy resetPolicy)
+            throws IOException {
+        BufferedInputStream in = new BufferedInputStream(metrics.meter(connection.getInputStream()));
+        OutputStream out = metrics.meter(connection.getOutputStream());
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+
+        if (second < 0) {
+            throw new EOFException("Connection closed before the first message");
+        }
+        if (((first << 8) | second) == (ObjectStreamConstants.STREAM_MAGIC & 0xFFFF)) {
+            return new ObjectStreamTransport(in, out, metrics, resetPolicy);
+        }
+        return new FramedTransport(in, out, metrics);
+    }
+}
@@ -0,0 +1,94 @@
+package se325.lab01.concert.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import se325.lab01.concert.common.Concert;
+import se325.lab01.concert.common.Encoding;
+import se325.lab01.concert.common.MessageCodec;
+import se325.lab01.concert.common.MessageFrames;
+import se325.lab01.concert.common.ResettingObjectOutputStream.ResetPolicy;
+import se325.lab01.concert.common.ResponseMessage;
+
+/**
+ * Tests that SessionTransports hold responses until the session flushes them, however many are pipelined, since the
+ * session only flushes once the changes being acknowledged are durable.
+ */
+public class SessionTransportTest {
+
+    // Enough responses to overflow an 8 KB output buffer several times over.
+    private static final int PIPELINE_LENGTH = 200;
+
+    @Test
+    public void testFramedTransportHoldsPipelinedResponses() throws IOException {
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        FramedTransport transport = new FramedTransport(new ByteArrayInputStream(new byte[0]), sent, newMetrics());
+        transport.setEncoding(Encoding.Binary);
+
+        writePipeline(transport);
+        assertEquals(0, sent.size());
+
+        transport.flush();
+        assertTrue(sent.size() > 8 * 1024);
+
+        MessageCodec codec = Encoding.Binary.getCodec();
+        InputStream in = new ByteArrayInputStream(sent.toByteArray());
+        for (long i = 0; i < PIPELINE_LENGTH; i++) {
+            assertEquals(Long.valueOf(i), codec.decodeResponse(MessageFrames.readFrame(in)).getRequestId());
+        }
+        assertEquals(Collections.singletonList(1L),
+                codec.decodeResponse(MessageFrames.readFrame(in)).getInvalidatedIds());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testObjectStreamTransportHoldsPipelinedResponses() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        new ObjectOutputStream(header).flush();
+
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        ObjectStreamTransport transport = new ObjectStreamTransport(new ByteArrayInputStream(header.toByteArray()),
+                sent, newMetrics(), ResetPolicy.DEFAULT);
+        int headerLength = sent.size();
+
+        writePipeline(transport);
+        assertEquals(headerLength, sent.size());
+
+        transport.flush();
+        assertTrue(sent.size() - headerLength > 8 * 1024);
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(sent.toByteArray()));
+        for (long i = 0; i < PIPELINE_LENGTH; i++) {
+            assertEquals(Long.valueOf(i), ((ResponseMessage) in.readObject()).getRequestId());
+        }
+        assertEquals(Collections.singletonList(1L), ((ResponseMessage) in.readObject()).getInvalidatedIds());
+    }
+
+    /**
+     * Writes a pipeline of Create responses, then pushes an invalidation as the publisher would meanwhile.
+     */
+    private static void writePipeline(SessionTransport transport) throws IOException {
+        for (long i = 0; i < PIPELINE_LENGTH; i++) {
+            Concert concert = new Concert(i + 1, "Pipelined concert " + i, LocalDateTime.of(2018, 1, 25, 20, 0));
+            ResponseMessage response = ResponseMessage.makeSuccessfulCreateResponse(concert);
+            response.setRequestId(i);
+            transport.write(response);
+        }
+        transport.push(ResponseMessage.makeInvalidation(Collections.singletonList(1L)));
+    }
+
+    private static ServerMetrics newMetrics() {
+        return new ServerMetrics(() -> 0);
+    }
+}
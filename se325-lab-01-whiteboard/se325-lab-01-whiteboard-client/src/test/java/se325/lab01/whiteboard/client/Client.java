@@ -4,10 +4,16 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.Arrays;
 import java.util.List;
 
 import se325.lab01.whiteboard.common.Config;
@@ -85,4 +91,41 @@ public class Client {
             fail();
         }
     }
+
+    /**
+     * Test that a Graphic survives serialisation with every field intact, as
+     * it must to be passed to and returned from remote Shapes. Graphic writes
+     * its own fields, so a field left out of writeExternal() or
+     * readExternal() would otherwise go unnoticed. This test doesn't need the
+     * server.
+     */
+    @Test
+    public void testGraphicRoundTrip() throws IOException, ClassNotFoundException {
+        List<Graphic> graphics = Arrays.asList(
+                new Graphic(10, 10, 250, 20, true),
+                new Graphic(35, 60, 100, 50, false),
+                new Graphic(-5, Integer.MIN_VALUE, 0, Integer.MAX_VALUE, true),
+                new Graphic());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(graphics);
+        }
+
+        List<?> copies;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copies = (List<?>) in.readObject();
+        }
+
+        assertEquals(graphics.size(), copies.size());
+        for (int i = 0; i < graphics.size(); i++) {
+            Graphic original = graphics.get(i);
+            Graphic copy = (Graphic) copies.get(i);
+            assertEquals(original.getX(), copy.getX());
+            assertEquals(original.getY(), copy.getY());
+            assertEquals(original.getWidth(), copy.getWidth());
+            assertEquals(original.getHeight(), copy.getHeight());
+            assertEquals(original.isFilled(), copy.isFilled());
+        }
+    }
 }
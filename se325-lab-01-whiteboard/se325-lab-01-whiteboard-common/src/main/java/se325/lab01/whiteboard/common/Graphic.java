@@ -1,15 +1,23 @@
 package se325.lab01.whiteboard.common;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 
 /**
  * Class to represent the state of a Shape object. Graphic instances are
  * intended to be passed between clients and servers and so Graphic necessarily
  * implements the Serializable interface.
+ * <p>
+ * Graphic is Externalizable, writing its fields directly, so that each RMI
+ * call returning a Graphic doesn't describe and reflect over its fields.
  */
-public class Graphic implements Serializable {
+public class Graphic implements Externalizable {
 
-    private static final long serialVersionUID = 1L;
+    // Changed from 1 when Graphic became Externalizable, so that a peer with
+    // the old form fails fast.
+    private static final long serialVersionUID = 2L;
 
     private int x;
     private int y;
@@ -35,6 +43,12 @@ public class Graphic implements Serializable {
         this.isFilled = isFilled;
     }
 
+    /**
+     * Creates an empty Graphic, for deserialisation only.
+     */
+    public Graphic() {
+    }
+
     public int getX() {
         return x;
     }
@@ -55,6 +69,24 @@ public class Graphic implements Serializable {
         return isFilled;
     }
 
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(x);
+        out.writeInt(y);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeBoolean(isFilled);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        x = in.readInt();
+        y = in.readInt();
+        width = in.readInt();
+        height = in.readInt();
+        isFilled = in.readBoolean();
+    }
+
     public String toString() {
         StringBuffer buffer = new StringBuffer();
         buffer.append(getClass().getName());